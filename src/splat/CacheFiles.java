@@ -0,0 +1,78 @@
+package splat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * What ProgramCache and OutputCache have in common: keys that hash the
+ * source, and entries that other processes only ever see whole.
+ */
+final class CacheFiles {
+
+    interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private CacheFiles() {
+    }
+
+    /**
+     * Returns a SHA-256 hash of the stamp and the source, from its
+     * position to its limit, in hex.  The source's position is unchanged.
+     */
+    static String sourceHash(ByteBuffer source, String stamp) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(stamp.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source.duplicate());
+
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Writes an entry to a temporary file in the same directory and then
+     * renames it into place, replacing any entry already there.  When two
+     * processes do this at once, the last rename wins.
+     */
+    static void writeAtomically(Path entry, Writer writer) throws IOException {
+        Path directory = entry.getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writer.writeTo(out);
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Leave it; it doesn't look like an entry
+                }
+            }
+        }
+    }
+}
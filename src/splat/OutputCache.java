@@ -0,0 +1,255 @@
+package splat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import splat.executor.ExecutionException;
+import splat.executor.StackExhaustedException;
+
+/**
+ * A directory of program results.  A SPLAT program reads no input, so
+ * running the same source always prints the same text and ends the same
+ * way, either normally or with the same ExecutionException.  Both are
+ * saved, and a later run of that source just replays them.
+ *
+ * Only results of runs that took at least the threshold to execute are
+ * saved, since replaying a quick program saves nothing.  The directory is kept
+ * under a size limit by deleting the least recently used entries (each
+ * hit touches its entry's modification time).  Entries are keyed and
+ * written the same way as ProgramCache's, and a damaged one reads as a
+ * miss.
+ */
+public class OutputCache {
+
+    /**
+     * Part of every key.  Change it whenever the compiler or the executor
+     * change what a program prints or how it fails.
+     */
+    public static final String EXECUTOR_VERSION = ProgramCache.COMPILER_VERSION + "/output-2";
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MIN_MILLIS = 100;
+
+    private static final int MAGIC = 0x53504C4F;   // "SPLO"
+    private static final String SUFFIX = ".splato";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long minNanos;
+
+    public OutputCache(File directory) {
+        this(directory, DEFAULT_MAX_BYTES, DEFAULT_MIN_MILLIS);
+    }
+
+    /**
+     * maxBytes bounds the size of the whole directory, and minMillis is
+     * how long a run has to take for its result to be saved.
+     */
+    public OutputCache(File directory, long maxBytes, long minMillis) {
+        this.directory = directory.toPath();
+        this.maxBytes = maxBytes;
+        this.minNanos = minMillis * 1_000_000;
+    }
+
+    /**
+     * A saved result.
+     */
+    public static class Result {
+
+        private final String output;
+        private final ExecutionException error;
+
+        Result(String output, ExecutionException error) {
+            this.output = output;
+            this.error = error;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * The exception the run ended with, or null if it ended normally.
+         */
+        public ExecutionException getError() {
+            return error;
+        }
+
+        /**
+         * Prints the output again, then throws the exception, if any.
+         */
+        public void replay() throws ExecutionException {
+            System.out.print(output);
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Returns the key for a source, given as the bytes that are then
+     * lexed, so that what is saved under it is the result of exactly that
+     * source even if the file changes during the run.
+     */
+    public String key(ByteBuffer source) {
+        return CacheFiles.sourceHash(source, EXECUTOR_VERSION);
+    }
+
+    /**
+     * The most output, in characters, that an entry can hold and still fit
+     * in the directory.
+     */
+    long maxChars() {
+        return maxBytes / 3;
+    }
+
+    /**
+     * Returns the result saved under the key, or null.
+     */
+    public Result load(String key) {
+        Path entry = entry(key);
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            return null;
+        }
+
+        Result result = read(in);
+        if (result != null) {
+            try {
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                // It may have just been evicted; it was read whole anyway
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Saves the result of a run whose execution took elapsedNanos, if that
+     * is long enough, then evicts entries until the directory fits.  Returns
+     * whether it was saved.
+     */
+    public boolean store(String key, String output, ExecutionException error, long elapsedNanos) {
+        if (elapsedNanos < minNanos || error instanceof StackExhaustedException) {
+            return false;
+        }
+        byte[] entry = write(output, error);
+        if (entry.length > maxBytes) {
+            return false;
+        }
+        try {
+            CacheFiles.writeAtomically(entry(key), out -> out.write(entry));
+            evict();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /*
+     * An entry is a magic number, a CRC-32 of the rest, whether the run
+     * ended with an error, the line and column of the error, then the
+     * error message and the output, each a length and UTF-8 bytes.
+     */
+    private static byte[] write(String output, ExecutionException error) {
+        byte[] message = error == null ? new byte[0] : error.getMessage().getBytes(StandardCharsets.UTF_8);
+        byte[] text = output.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer body = ByteBuffer.allocate(17 + message.length + text.length);
+        body.put((byte) (error == null ? 0 : 1));
+        body.putInt(error == null ? -1 : error.getLine());
+        body.putInt(error == null ? -1 : error.getColumn());
+        body.putInt(message.length).put(message);
+        body.putInt(text.length).put(text);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+
+        ByteBuffer entry = ByteBuffer.allocate(8 + body.capacity());
+        entry.putInt(MAGIC).putInt((int) crc.getValue()).put(body.array());
+        return entry.array();
+    }
+
+    private static Result read(ByteBuffer in) {
+        if (in.remaining() < 25 || in.getInt() != MAGIC) {
+            return null;
+        }
+        int checksum = in.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        try {
+            boolean failed = in.get() != 0;
+            int line = in.getInt();
+            int column = in.getInt();
+            byte[] message = new byte[in.getInt()];
+            in.get(message);
+            byte[] text = new byte[in.getInt()];
+            in.get(text);
+
+            ExecutionException error = !failed ? null
+                    : new ExecutionException(new String(message, StandardCharsets.UTF_8), line, column);
+            return new Result(new String(text, StandardCharsets.UTF_8), error);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        final Path path;
+        final FileTime lastUsed;
+        final long size;
+
+        Entry(Path path, FileTime lastUsed, long size) {
+            this.path = path;
+            this.lastUsed = lastUsed;
+            this.size = size;
+        }
+    }
+
+    // Deletes the least recently used entries until the rest fit
+    private void evict() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                try {
+                    Entry entry = new Entry(path, Files.getLastModifiedTime(path), Files.size(path));
+                    entries.add(entry);
+                    total += entry.size;
+                } catch (IOException e) {
+                    // Evicted by another process in the meantime
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparing(entry -> entry.lastUsed));
+        for (Entry entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Files.deleteIfExists(entry.path);
+            total -= entry.size;
+        }
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+}
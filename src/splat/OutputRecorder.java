@@ -0,0 +1,73 @@
+package splat;
+
+import java.io.PrintStream;
+
+/**
+ * Stands in for System.out while a program runs, passing everything on
+ * to the real stream and keeping a copy of the text for the OutputCache.
+ *
+ * Print statements only ever use print(String) and println(), so those
+ * are what gets recorded.  Output that reaches the stream any other way,
+ * or more text than the cache would keep, makes the copy incomplete, and
+ * an incomplete copy is never cached.
+ */
+class OutputRecorder extends PrintStream {
+
+    private final PrintStream target;
+    private final long maxChars;
+    private StringBuilder text = new StringBuilder();
+
+    OutputRecorder(PrintStream target, long maxChars) {
+        super(target, false);
+        this.target = target;
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public void print(String s) {
+        target.print(s);
+        record(String.valueOf(s));
+    }
+
+    @Override
+    public void println() {
+        target.println();
+        record(System.lineSeparator());
+    }
+
+    // Everything else comes down to these
+    @Override
+    public void write(int b) {
+        text = null;
+        target.write(b);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        text = null;
+        target.write(buf, off, len);
+    }
+
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    private void record(String s) {
+        if (text != null) {
+            if (text.length() + s.length() > maxChars) {
+                text = null;
+            } else {
+                text.append(s);
+            }
+        }
+    }
+
+    boolean isComplete() {
+        return text != null;
+    }
+
+    String getText() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package splat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import splat.parser.compact.CompactAST;
+
+/**
+ * A directory of programs that have already been parsed and analyzed,
+ * saved as CompactASTs so that later runs of the same source can go
+ * straight to execution.
+ *
+ * An entry is named after a SHA-256 hash of COMPILER_VERSION and the
+ * source bytes, so an edited source, or a compiler that would read it
+ * differently, simply misses.  Entries are renamed into place once they
+ * are written, so other processes never see a partly written entry; when
+ * two of them save the same program at once, both write the same bytes
+ * anyway.  Each entry also carries a checksum, which read() verifies.
+ *
+ * The cache never makes a run fail: if it can't be read or written, the
+ * program is compiled as if there were no cache.
+ */
+public class ProgramCache {
+
+    /**
+     * Part of every key.  Change it whenever the lexer, parser or semantic
+     * analyzer change what a source compiles to, or which sources they
+     * accept, so that older entries stop being used.
+     */
+    public static final String COMPILER_VERSION = "splat-2/ast-" + CompactAST.FORMAT_VERSION;
+
+    private static final String SUFFIX = ".splatc";
+
+    private final Path directory;
+
+    public ProgramCache(File directory) {
+        this.directory = directory.toPath();
+    }
+
+    /**
+     * Returns the key for a source, given as the bytes that are then
+     * lexed, so that what is saved under it is compiled from exactly that
+     * source even if the file changes during the run.
+     */
+    public String key(ByteBuffer source) {
+        return CacheFiles.sourceHash(source, COMPILER_VERSION);
+    }
+
+    /**
+     * Returns the program saved under the key, or null if there is none
+     * (or it is damaged, or from another format version).
+     */
+    public CompactAST load(String key) {
+        try (FileChannel channel = FileChannel.open(entry(key), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return CompactAST.read(mapped);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves a program under the key.  Returns whether it was saved.
+     */
+    public boolean store(String key, CompactAST ast) {
+        try {
+            CacheFiles.writeAtomically(entry(key), ast::writeTo);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+}
@@ -1,14 +1,25 @@
 package splat;
 
 import java.io.File;
-import java.util.List;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import splat.lexer.Lexer;
-import splat.lexer.Token;
+import splat.lexer.ParallelLexer;
+import splat.lexer.PipelinedTokenSource;
+import splat.lexer.TokenBuffer;
 
+import splat.parser.ParallelParser;
 import splat.parser.Parser;
+import splat.parser.compact.CompactAST;
 import splat.parser.elements.*;
 
+import splat.optimizer.Optimizer;
+
 import splat.semanticanalyzer.*;
 
 import splat.executor.*;
@@ -16,31 +27,493 @@ import splat.executor.*;
 
 public class Splat {
 
+	/**
+	 * The size of the stack main() and the SplatTester run programs on,
+	 * and of the threads in workerPool().  Parsing, analysis, optimization
+	 * and the tree-walking executor recurse once per level of nesting, and
+	 * the executor once per call, so this has to hold Parser.MAX_NESTING
+	 * levels and CallDepth.LIMIT.  The memory is reserved up front, but
+	 * only used as deep as a program goes.
+	 */
+	public static final long STACK_SIZE = 64L * 1024 * 1024;
+
+	private static ExecutorService workerPool;
+
 	private File progFile;
 	
+	private boolean memoryMappedLexing;
+	private boolean streaming;
+	private boolean pipelined;
+	private boolean parallelLexing;
+	private boolean swarScanning;
+	private boolean parallelParsing;
+	private boolean parallelAnalysis;
+	private boolean lazyFunctionBodies;
+	private boolean strictSyntax;
+	private boolean compactAST;
+	private boolean explicitStack;
+	private long stackBudget = Executor.DEFAULT_STACK_BUDGET;
+	private boolean memoization;
+	private int optimizationLevel;
+	private File cacheDirectory;
+	private OutputCache outputCache;
+	
 	public Splat(File progFile) {
 		this.progFile = progFile;
 	}
 	
+	/**
+	 * Runs a program, given as the last argument, on a thread with a stack
+	 * of STACK_SIZE.  Options before it are those of setOption().
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Thread thread = new Thread(null, () -> run(args), "splat", STACK_SIZE);
+		thread.start();
+		thread.join();
+	}
+	
+	private static void run(String[] args) {
+		if (args.length == 0) {
+			System.err.println("Usage: java splat.Splat [-O<level>] [--<mode>...] program.splat");
+			System.exit(2);
+		}
+		
+		Splat splat = new Splat(new File(args[args.length - 1]));
+		for (int i = 0; i < args.length - 1; i++) {
+			if (!splat.setOption(args[i])) {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		try {
+			splat.processFileAndExecute();
+		} catch (SplatException ex) {
+			System.out.flush();
+			System.err.println(ex.getClass().getSimpleName() + ": " + ex);
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * The pool that parallel parsing and analysis run on: one thread per
+	 * processor, each with a stack of STACK_SIZE.  (The threads of a
+	 * ForkJoinPool can't be given a stack size.)
+	 */
+	public static synchronized ExecutorService workerPool() {
+		if (workerPool == null) {
+			workerPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+				Thread thread = new Thread(null, task, "splat-worker", STACK_SIZE);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return workerPool;
+	}
+	
+	/**
+	 * The level an -O<level> option asks for, or -1 if the argument isn't
+	 * one.
+	 */
+	public static int parseOptimizationLevel(String arg) {
+		if (arg.equals("-O")) {
+			return Optimizer.MAX_LEVEL;
+		}
+		if (arg.matches("-O[0-9]")) {
+			int level = arg.charAt(2) - '0';
+			return level <= Optimizer.MAX_LEVEL ? level : -1;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Applies a command-line option, and returns false if the argument
+	 * isn't one.  -O<level> sets the optimization level (see
+	 * parseOptimizationLevel()), and each of the others turns on a mode:
+	 *
+	 *   --memory-mapped         setMemoryMappedLexing()
+	 *   --streaming             setStreaming()
+	 *   --pipelined             setPipelined()
+	 *   --parallel-lexing       setParallelLexing()
+	 *   --swar                  setSwarScanning(), with memory-mapped lexing
+	 *   --parallel-parsing      setParallelParsing()
+	 *   --lazy                  setLazyFunctionBodies()
+	 *   --strict                setStrictSyntax(), with lazy function bodies
+	 *   --compact               setCompactAST()
+	 *   --parallel-analysis     setParallelAnalysis()
+	 *   --explicit-stack        setExplicitStack()
+	 *   --memoization           setMemoization()
+	 *   --program-cache=<dir>   setCacheDirectory()
+	 *   --output-cache=<dir>    setOutputCache(), with the default limits
+	 */
+	public boolean setOption(String arg) {
+		int level = parseOptimizationLevel(arg);
+		if (level >= 0) {
+			setOptimizationLevel(level);
+			return true;
+		}
+		if (arg.startsWith("--program-cache=")) {
+			setCacheDirectory(new File(arg.substring(arg.indexOf('=') + 1)));
+			return true;
+		}
+		if (arg.startsWith("--output-cache=")) {
+			setOutputCache(new OutputCache(new File(arg.substring(arg.indexOf('=') + 1))));
+			return true;
+		}
+		switch (arg) {
+			case "--memory-mapped":
+				setMemoryMappedLexing(true);
+				break;
+			case "--streaming":
+				setStreaming(true);
+				break;
+			case "--pipelined":
+				setPipelined(true);
+				break;
+			case "--parallel-lexing":
+				setParallelLexing(true);
+				break;
+			case "--swar":
+				setMemoryMappedLexing(true);
+				setSwarScanning(true);
+				break;
+			case "--parallel-parsing":
+				setParallelParsing(true);
+				break;
+			case "--lazy":
+				setLazyFunctionBodies(true);
+				break;
+			case "--strict":
+				setLazyFunctionBodies(true);
+				setStrictSyntax(true);
+				break;
+			case "--compact":
+				setCompactAST(true);
+				break;
+			case "--parallel-analysis":
+				setParallelAnalysis(true);
+				break;
+			case "--explicit-stack":
+				setExplicitStack(true);
+				break;
+			case "--memoization":
+				setMemoization(true);
+				break;
+			default:
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Lex the source through a memory mapping instead of a Reader.  This
+	 * is faster on very large programs and produces the same tokens.
+	 */
+	public void setMemoryMappedLexing(boolean memoryMappedLexing) {
+		this.memoryMappedLexing = memoryMappedLexing;
+	}
+	
+	/**
+	 * Have the parser pull tokens from the lexer as it goes, instead of
+	 * lexing the whole program first.  Only a few tokens are held in
+	 * memory at any time.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	/**
+	 * Run the lexer on its own thread, handing tokens to the parser in
+	 * chunks as it goes, so that lexing and parsing overlap.  Takes
+	 * precedence over streaming.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+	
+	/**
+	 * Split large sources at line breaks and lex the pieces on several
+	 * threads.  Only used when the whole program is lexed before parsing,
+	 * i.e. when neither streaming nor pipelining is on.
+	 */
+	public void setParallelLexing(boolean parallelLexing) {
+		this.parallelLexing = parallelLexing;
+	}
+	
+	/**
+	 * Have the memory-mapped lexer scan eight bytes at a time for the
+	 * ends of lines and tokens, instead of one byte at a time.  This pays
+	 * off on sources with long runs, such as long string literals, deep
+	 * indentation or long names (see ScannerBenchmark), and makes no
+	 * difference on short tokens.
+	 */
+	public void setSwarScanning(boolean swarScanning) {
+		this.swarScanning = swarScanning;
+	}
+	
+	/**
+	 * Parse the function declarations on several threads.  Like parallel
+	 * lexing, only used when the whole program is lexed before parsing.
+	 */
+	public void setParallelParsing(boolean parallelParsing) {
+		this.parallelParsing = parallelParsing;
+	}
+	
+	/**
+	 * Analyze the function declarations on several threads.  Errors are
+	 * the same as with sequential analysis.
+	 */
+	public void setParallelAnalysis(boolean parallelAnalysis) {
+		this.parallelAnalysis = parallelAnalysis;
+	}
+	
+	/**
+	 * Only parse and analyze a function body when the function is first
+	 * called, which cuts the start-up time of programs that declare many
+	 * more functions than they call.  An error in a body then only shows
+	 * up if the body is reached.  The bodies' tokens have to be kept, so
+	 * the whole program is lexed before parsing: this takes precedence
+	 * over streaming, pipelining and parallel parsing.
+	 */
+	public void setLazyFunctionBodies(boolean lazyFunctionBodies) {
+		this.lazyFunctionBodies = lazyFunctionBodies;
+	}
+	
+	/**
+	 * With lazy function bodies, still parse every body before anything
+	 * runs, so that syntax errors are always reported.  Only the semantic
+	 * analysis of the bodies waits until they are called.
+	 */
+	public void setStrictSyntax(boolean strictSyntax) {
+		this.strictSyntax = strictSyntax;
+	}
+	
+	/**
+	 * Keep the parsed program packed in a CompactAST, and only build the
+	 * object tree for a function body while it is analyzed and once it is
+	 * first called.  Has no effect with lazy function bodies, which keep
+	 * bodies out of memory in their own way.
+	 */
+	public void setCompactAST(boolean compactAST) {
+		this.compactAST = compactAST;
+	}
+	
+	/**
+	 * Execute the program with its calls on a stack in the heap, so that
+	 * recursion can go much deeper than the CallDepth.LIMIT of the Java
+	 * stack: it fails with a StackExhaustedException once the stack
+	 * budget is used up instead.
+	 */
+	public void setExplicitStack(boolean explicitStack) {
+		this.explicitStack = explicitStack;
+	}
+	
+	/**
+	 * The most memory, in bytes, the call stack may take with an explicit
+	 * stack.  The default is Executor.DEFAULT_STACK_BUDGET.
+	 */
+	public void setStackBudget(long stackBudget) {
+		this.stackBudget = stackBudget;
+	}
+	
+	/**
+	 * Remember the values returned by calls to pure functions, ones that
+	 * only compute a value from their arguments, and reuse them for calls
+	 * with the same arguments.
+	 */
+	public void setMemoization(boolean memoization) {
+		this.memoization = memoization;
+	}
+	
+	/**
+	 * Optimize the analyzed program at the given level (see Optimizer)
+	 * before running it.  0, the default, runs it as it was written.
+	 */
+	public void setOptimizationLevel(int optimizationLevel) {
+		this.optimizationLevel = optimizationLevel;
+	}
+	
+	/**
+	 * Save analyzed programs in the given directory, and run a program
+	 * saved there before without lexing, parsing or analyzing it again.
+	 * Programs parsed with lazy function bodies aren't saved, since saving
+	 * them would mean parsing every body.
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+	
+	/**
+	 * Save what programs print, and how they end, in the given cache, and
+	 * replay a saved result instead of running the same source again.
+	 * The cache's threshold is compared with the time the program took to
+	 * run, not to compile.  Results of runs with lazy function bodies are
+	 * replayed but not saved, since such a run can succeed where compiling
+	 * every body would fail.
+	 */
+	public void setOutputCache(OutputCache outputCache) {
+		this.outputCache = outputCache;
+	}
+	
+	/**
+	 * Compiles and runs the program on the calling thread, which needs a
+	 * stack of STACK_SIZE for programs that nest or recurse deeply.
+	 */
 	public void processFileAndExecute() throws SplatException {
 		
-		// Step 1.  Tokenize
-		Lexer lexer = new Lexer(progFile);
-		List<Token> tokens = lexer.tokenize();
+		// The caches' keys hash exactly the bytes that are compiled, so
+		// that nothing is ever saved under a version of the file it
+		// didn't come from
+		ByteBuffer source = outputCache != null || cacheDirectory != null ? readSource() : null;
+		if (outputCache == null || source == null) {
+			execute(compile(source));
+			return;
+		}
+		String outputKey = outputCache.key(source);
+		
+		OutputCache.Result result = outputCache.load(outputKey);
+		if (result != null) {
+			result.replay();
+			return;
+		}
+		
+		// Run the program, keeping a copy of what it prints.  Runs that
+		// fail before execution aren't saved
+		ProgramAST progAST = compile(source);
+		PrintStream out = System.out;
+		OutputRecorder recorder = new OutputRecorder(out, outputCache.maxChars());
+		ExecutionException error = null;
+		long start = System.nanoTime();
+		System.setOut(recorder);
+		try {
+			execute(progAST);
+		} catch (ExecutionException ex) {
+			error = ex;
+		} finally {
+			System.setOut(out);
+		}
+		if (recorder.isComplete() && !lazyFunctionBodies) {
+			outputCache.store(outputKey, recorder.getText(), error, System.nanoTime() - start);
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+	
+	/*
+	 * Reads the whole source, or returns null if it can't be read (the
+	 * lexer then reports why).
+	 */
+	private ByteBuffer readSource() {
+		try {
+			return ByteBuffer.wrap(Files.readAllBytes(progFile.toPath()));
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+	
+	/*
+	 * Steps 0 to 3: the analyzed program, ready for the executor.  The
+	 * source is lexed from the given bytes if there are any, and read
+	 * from the file otherwise, in which case the program cache isn't used.
+	 */
+	private ProgramAST compile(ByteBuffer source) throws SplatException {
 		
-		// Step 2.  Parse
-		Parser parser = new Parser(tokens);
-		ProgramAST progAST = parser.parse();
+		// Step 0.  A program that was compiled before goes straight to
+		// the executor
+		ProgramCache cache = null;
+		String cacheKey = null;
+		if (cacheDirectory != null && source != null) {
+			cache = new ProgramCache(cacheDirectory);
+			cacheKey = cache.key(source);
+		}
+		if (cacheKey != null) {
+			CompactAST cached = cache.load(cacheKey);
+			if (cached != null) {
+				// Nothing is checked again, but memoization and the
+				// optimizer need the rest of what analysis works out
+				ProgramAST progAST = cached.decodeLazily();
+				try {
+					new SemanticAnalyzer(progAST).restoreAnalysis();
+				} catch (BodyLoadException ex) {
+					throw ex.getError();
+				}
+				return progAST;
+			}
+		}
 		
-		// Step 3.  Semantic Analysis
-		SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
-		analyzer.analyze();
+		// Steps 1 and 2.  Tokenize and parse
+		Lexer lexer = source != null ? new Lexer(source) : new Lexer(progFile, memoryMappedLexing);
+		lexer.setSwarScanning(swarScanning);
+		ProgramAST progAST;
+		if (pipelined && !lazyFunctionBodies) {
+			progAST = new Parser(new PipelinedTokenSource(lexer)).parse();
+		} else if (streaming && !lazyFunctionBodies) {
+			progAST = new Parser(lexer).parse();
+		} else {
+			TokenBuffer tokens;
+			if (parallelLexing) {
+				ParallelLexer parallelLexer = source != null ? new ParallelLexer(source) : new ParallelLexer(progFile);
+				parallelLexer.setSwarScanning(swarScanning);
+				tokens = parallelLexer.tokenize();
+			} else {
+				tokens = lexer.tokenize();
+			}
+			if (lazyFunctionBodies) {
+				Parser parser = new Parser(tokens);
+				parser.setLazyFunctionBodies(true);
+				parser.setStrictSyntax(strictSyntax);
+				progAST = parser.parse();
+			} else if (parallelParsing) {
+				progAST = new ParallelParser(tokens, workerPool()).parse();
+			} else {
+				progAST = new Parser(tokens).parse();
+			}
+		}
 		
-		// Step 4.  Executor
-		Executor executor = new Executor(progAST);
-		executor.runProgram();
+		boolean compact = compactAST && !lazyFunctionBodies;
+		CompactAST compactForm = null;
+		if (compact) {
+			compactForm = CompactAST.encode(progAST);
+			progAST = compactForm.decodeLazily();
+		}
 		
-		// THE END!
+		try {
+			// Step 3.  Semantic Analysis
+			SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+			analyzer.setAnalyzeUnloadedBodies(compact);
+			if (parallelAnalysis) {
+				analyzer.setPool(workerPool());
+			}
+			analyzer.analyze();
+			
+		// A lazily parsed function body failed to parse or analyze when
+		// it was first called
+		} catch (BodyLoadException ex) {
+			throw ex.getError();
+		}
+		
+		if (cacheKey != null && !lazyFunctionBodies) {
+			cache.store(cacheKey, compactForm != null ? compactForm : CompactAST.encode(progAST));
+		}
+		return progAST;
+	}
+	
+	private void execute(ProgramAST progAST) throws SplatException {
+		try {
+			// Step 4.  Executor
+			new Optimizer(optimizationLevel).optimize(progAST);
+			
+			Executor executor = new Executor(progAST);
+			executor.setExplicitStack(explicitStack);
+			executor.setStackBudget(stackBudget);
+			executor.setMemoCapacity(memoization ? MemoTable.DEFAULT_CAPACITY : 0);
+			executor.runProgram();
+			
+			// THE END!
+		} catch (BodyLoadException ex) {
+			throw ex.getError();
+		}
 	}
 
 }
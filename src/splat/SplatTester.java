@@ -1,6 +1,16 @@
 package splat;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.executor.ExecutionException;
+import splat.executor.StackExhaustedException;
+import splat.lexer.LexException;
+import splat.parser.ParseException;
+import splat.semanticanalyzer.SemanticAnalysisException;
 
 public class  SplatTester {
 
@@ -21,10 +31,67 @@ public class  SplatTester {
 	private int[] resCodeCount;
 	private int[] falseThrows;
 
+	// Options to run every test with (see Splat.setOption()), and the
+	// modes they name.  tests/<mode>, if there is one, holds tests that
+	// only pass in that mode, which are run as well.  One named after a
+	// test in tests plus its result in the mode, such as
+	// lazy/999_00_badsemantics_goodexecution.splat, replaces that test
+	private final List<String> options = new ArrayList<>();
+	private final List<String> modes = new ArrayList<>();
+
+	// Temporary directories, for --program-cache and --output-cache.
+	// Every test is then run twice, and only the second run, which reads
+	// the cache, is checked
+	private File programCacheDir;
+	private File outputCacheDir;
+	private OutputCache outputCache;
+
 	public static void main(String[] args) throws Exception {
 
 		SplatTester tester = new SplatTester();
-		tester.runTests();
+		for (String arg : args) {
+			if (arg.equals("--program-cache")) {
+				tester.programCacheDir = Files.createTempDirectory("splat-tester-").toFile();
+			} else if (arg.equals("--output-cache")) {
+				tester.outputCacheDir = Files.createTempDirectory("splat-tester-").toFile();
+				// Save every result, however quickly it ran
+				tester.outputCache = new OutputCache(tester.outputCacheDir, OutputCache.DEFAULT_MAX_BYTES, 0);
+			} else if (!new Splat(null).setOption(arg)) {
+				System.out.println("Unknown option: " + arg);
+				return;
+			} else {
+				tester.options.add(arg);
+			}
+			if (arg.startsWith("--")) {
+				tester.modes.add(arg.substring(2));
+			}
+		}
+
+		// Run the tests on as deep a stack as Splat.main() runs programs on
+		Exception[] failure = new Exception[1];
+		Thread thread = new Thread(null, () -> {
+			try {
+				tester.runTests();
+			} catch (Exception ex) {
+				failure[0] = ex;
+			}
+		}, "splat-tester", Splat.STACK_SIZE);
+		thread.start();
+		thread.join();
+		deleteDir(tester.programCacheDir);
+		deleteDir(tester.outputCacheDir);
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+	}
+
+	private static void deleteDir(File dir) {
+		if (dir != null) {
+			for (File entry : dir.listFiles()) {
+				entry.delete();
+			}
+			dir.delete();
+		}
 	}
 
 	public SplatTester() {
@@ -52,10 +119,24 @@ public class  SplatTester {
 
 		System.out.println("success");
 
-		File[] testFiles = testDir.listFiles((dir, name) -> name.endsWith(".splat"));
+		List<File> testFiles = new ArrayList<>();
+		addTests(testDir, testFiles);
+		for (String mode : modes) {
+			List<File> modeTests = new ArrayList<>();
+			addTests(new File(testDir, mode), modeTests);
+			for (File test : modeTests) {
+				String name = test.getName();
+				String replaced = name.substring(0, name.lastIndexOf('_')) + ".splat";
+				testFiles.removeIf(file -> file.getName().equals(replaced));
+				testFiles.add(test);
+			}
+		}
 
-		totalTests = testFiles.length;
+		totalTests = testFiles.size();
 		System.out.println("Number of tests found: " + totalTests);
+		if (!modes.isEmpty()) {
+			System.out.println("Modes: " + String.join(" ", modes));
+		}
 
 		// Now, we run the tests
 
@@ -100,12 +181,62 @@ public class  SplatTester {
 		System.out.println("  Execution Success:   " + scoreString(4));
 	}
 
+	private void addTests(File dir, List<File> testFiles) {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".splat"));
+		if (files != null) {
+			for (File file : files) {
+				testFiles.add(file);
+			}
+		}
+	}
+
+	private Splat newSplat(File testFile) {
+		Splat splat = new Splat(testFile);
+		for (String option : options) {
+			splat.setOption(option);
+		}
+		if (programCacheDir != null) {
+			splat.setCacheDirectory(programCacheDir);
+		}
+		if (outputCache != null) {
+			splat.setOutputCache(outputCache);
+		}
+		return splat;
+	}
+
+	/*
+	 * Whether a run that ended this way saves its result in the output
+	 * cache (see Splat.setOutputCache()).
+	 */
+	private boolean isSavedResult(Exception error) {
+		if (modes.contains("lazy") || modes.contains("strict")) {
+			return false;
+		}
+		return error == null || (error instanceof ExecutionException && !(error instanceof StackExhaustedException));
+	}
+
 	private String scoreString(int resCode) {
 		double percent = 100.0 * successCount[resCode] / resCodeCount[resCode];
 		return successCount[resCode] + " / " + resCodeCount[resCode] + " ("
 				+ String.format("%.1f", percent) + " %)";
 	}
 
+	/*
+	 * A bad test may have a .out file, whose first line is the error it
+	 * must fail with, for when which of its errors comes first matters.
+	 */
+	private boolean errorMatchesExpected(String errorText, File testFile) throws IOException {
+		String testFilePath = testFile.getAbsolutePath();
+		File expected = new File(testFilePath.substring(0, testFilePath.length() - 5) + "out");
+		if (!expected.exists()) {
+			return true;
+		}
+		try (BufferedReader reader = new BufferedReader(new FileReader(expected))) {
+			String line = reader.readLine();
+			return line != null && line.trim().equals(errorText.trim());
+		}
+	}
+
 	private int getExpectedResultCode(String filename) throws Exception {
 
 		if (filename.endsWith("badlex.splat")) {
@@ -125,15 +256,13 @@ public class  SplatTester {
 
 	private int getActualResultCode(SplatException ex) throws Exception {
 
-		String exType = ex.getClass().getName();
-
-		if (exType.equals("splat.lexer.LexException")) {
+		if (ex instanceof LexException) {
 			return 0;
-		} else if (exType.equals("splat.parser.ParseException")) {
+		} else if (ex instanceof ParseException) {
 			return 1;
-		} else if (exType.equals("splat.semanticanalyzer.SemanticAnalysisException")) {
+		} else if (ex instanceof SemanticAnalysisException) {
 			return 2;
-		} else if (exType.equals("splat.executor.ExecutionException")) {
+		} else if (ex instanceof ExecutionException) {
 			return 3;
 		}
 
@@ -145,7 +274,7 @@ public class  SplatTester {
 		totalTestsRun++;
 		System.out.print("Test Case " + totalTestsRun + ": " + testFile.getName() + "...");
 
-		Splat splat = new Splat(testFile);
+		Splat splat = newSplat(testFile);
 
 		// The expected result code is determined by the .splat filename
 		int expectedResultCode = getExpectedResultCode(testFile.getName());
@@ -154,8 +283,34 @@ public class  SplatTester {
 		// Used to show exception messages in verbase mode
 		String execptMsg = "";
 
+		// The error a bad test failed with, checked against its .out file
+		// if it has one
+		String errorText = "";
+
 		// Redirect the program output to a file, instead of the console window
 		PrintStream originalOut = new PrintStream(System.out);
+
+		// Fill the cache; whatever this run does is repeated by the next
+		if (programCacheDir != null || outputCache != null) {
+			Exception firstError = null;
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+			try {
+				newSplat(testFile).processFileAndExecute();
+			} catch (Exception ex) {
+				// Checked on the second run
+				firstError = ex;
+			} finally {
+				System.setOut(originalOut);
+			}
+
+			// A run that got to the end of execution must have saved its
+			// result, or the second run wouldn't replay it
+			if (outputCache != null && isSavedResult(firstError)
+					&& outputCache.load(outputCache.key(ByteBuffer.wrap(Files.readAllBytes(testFile.toPath())))) == null) {
+				System.out.println("failed (result wasn't saved in the output cache)");
+				return;
+			}
+		}
 		File progOutput = new File(testDir, "temp-out.txt");
 		PrintStream outs = new PrintStream(progOutput);
 		System.setOut(outs);
@@ -171,6 +326,7 @@ public class  SplatTester {
 
 			int ind = ex.getClass().getName().lastIndexOf('.');
 			execptMsg = " >>> " + ex.getClass().getName().substring(ind + 1) + ": " + ex.toString();
+			errorText = ex.toString();
 
 			// Get the error code from the exception thrown
 			actualResultCode = getActualResultCode(ex);
@@ -194,7 +350,9 @@ public class  SplatTester {
 		// it has been thrown in that exact phase
 		if (expectedResultCode < 4) {
 
-			if (expectedResultCode == actualResultCode) {
+			if (expectedResultCode == actualResultCode && !errorMatchesExpected(errorText, testFile)) {
+				System.out.println("failed (exception does not match the one expected in the .out file)");
+			} else if (expectedResultCode == actualResultCode) {
 				System.out.println("passed (proper SplatException thrown during Phase "+ (expectedResultCode+1) + ")");
 				successCount[expectedResultCode]++;
 			} else {
@@ -0,0 +1,43 @@
+package splat.bench;
+
+import java.io.File;
+
+import splat.lexer.Lexer;
+import splat.parser.Parser;
+import splat.parser.elements.ProgramAST;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+/**
+ * Times semantic analysis on generated programs from 1k up to 100k
+ * functions.  With linear label checks the time per function stays flat
+ * as the program grows.  The largest size may need more than the default
+ * heap (e.g. -Xmx2g).
+ *
+ * Usage: java splat.bench.AnalysisScalingBenchmark [maxFunctions]
+ */
+public class AnalysisScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int maxFunctions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        System.out.println(" functions   analyze ms    us/function");
+        for (int functions = 1_000; functions <= maxFunctions; functions *= 10) {
+            File source = ProgramGenerator.write(functions);
+            ProgramAST progAST = new Parser(new Lexer(source, true).tokenize()).parse();
+
+            // Small inputs get more runs so that warm-up doesn't dominate
+            int runs = Math.max(3, Math.min(50, 200_000 / functions));
+            long[] times = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+                long start = System.nanoTime();
+                analyzer.analyze();
+                times[run] = System.nanoTime() - start;
+            }
+
+            double best = BenchUtil.best(times);
+            System.out.printf("%10d %12.2f %14.2f%n", functions, best, best * 1_000.0 / functions);
+            source.delete();
+        }
+    }
+}
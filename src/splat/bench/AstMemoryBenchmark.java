@@ -0,0 +1,62 @@
+package splat.bench;
+
+import java.io.File;
+import java.lang.ref.Reference;
+
+import splat.lexer.Lexer;
+import splat.lexer.TokenBuffer;
+import splat.parser.Parser;
+import splat.parser.compact.CompactAST;
+import splat.parser.elements.ProgramAST;
+
+/**
+ * Compares the heap retained by the object tree of a generated program
+ * with that of the same program packed in a CompactAST, and with the
+ * declarations-only tree CompactAST.decodeLazily() builds on top of it.
+ * Also times encoding and decoding.
+ *
+ * Usage: java splat.bench.AstMemoryBenchmark [functions]
+ */
+public class AstMemoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        File source = ProgramGenerator.write(functions);
+        TokenBuffer tokens = new Lexer(source, true).tokenize();
+        System.out.printf("%d functions, %d tokens%n", functions, tokens.size());
+
+        long base = BenchUtil.usedHeap();
+        ProgramAST progAST = new Parser(tokens).parse();
+        long objectTree = BenchUtil.usedHeap() - base;
+
+        long start = System.nanoTime();
+        CompactAST compact = CompactAST.encode(progAST);
+        double encodeTime = BenchUtil.millis(System.nanoTime() - start);
+
+        progAST = null;
+        long compactSize = BenchUtil.usedHeap() - base;
+
+        start = System.nanoTime();
+        compact.decode();
+        double decodeTime = BenchUtil.millis(System.nanoTime() - start);
+
+        ProgramAST skeleton = compact.decodeLazily();
+        long withSkeleton = BenchUtil.usedHeap() - base;
+
+        System.out.printf("Object tree:          %8.1f MB  (%.1f bytes/token)%n",
+                mb(objectTree), (double) objectTree / tokens.size());
+        System.out.printf("CompactAST:           %8.1f MB  (%.1f bytes/token, %.1f MB of arenas)%n",
+                mb(compactSize), (double) compactSize / tokens.size(), mb(compact.arenaBytes()));
+        System.out.printf("  + lazy declarations: %7.1f MB%n", mb(withSkeleton));
+        System.out.printf("Encode %.1f ms, decode %.1f ms%n", encodeTime, decodeTime);
+
+        // Keep everything reachable until the readings are done
+        Reference.reachabilityFence(tokens);
+        Reference.reachabilityFence(compact);
+        Reference.reachabilityFence(skeleton);
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
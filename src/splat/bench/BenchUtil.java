@@ -0,0 +1,57 @@
+package splat.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Small helpers shared by the benchmarks.
+ */
+public class BenchUtil {
+
+    /**
+     * Returns the heap in use after a few rounds of garbage collection, so
+     * that two readings taken around an allocation give its retained size.
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * Returns the time spent in garbage collection so far, in
+     * milliseconds, so that two readings taken around a run give the
+     * part of it that was collection.
+     */
+    public static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    public static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Returns the best (lowest) of the given timings in milliseconds.
+     */
+    public static double best(long[] nanos) {
+        long best = Long.MAX_VALUE;
+        for (long n : nanos) {
+            best = Math.min(best, n);
+        }
+        return millis(best);
+    }
+}
@@ -0,0 +1,123 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.Splat;
+
+/**
+ * Times two programs that do little besides calling functions and reading
+ * their parameters, and reports how many bytes each run allocates per
+ * call: a doubly recursive Fibonacci, and a linear recursion that goes
+ * depth calls deep, repeated 100 times.  Each SPLAT call nests several
+ * Java calls, so the runs happen on a thread with a large stack.
+ *
+ * Usage: java splat.bench.CallBenchmark [n] [depth]
+ */
+public class CallBenchmark {
+
+    private static final int REPEATS = 100;
+
+    public static void main(String[] args) throws Exception {
+        Exception[] error = new Exception[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                benchmark(args);
+            } catch (Exception e) {
+                error[0] = e;
+            }
+        }, "benchmark", 512L * 1024 * 1024);
+        thread.start();
+        thread.join();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    private static void benchmark(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 22;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        // fib(n) makes 2 * fib(n + 1) - 1 calls
+        long a = 0, b = 1;
+        for (int i = 0; i <= n; i++) {
+            long next = a + b;
+            a = b;
+            b = next;
+        }
+        run(String.format("fib(%d)", n), fibonacci(n), 2 * a - 1);
+
+        run(String.format("%d x depth %d", REPEATS, depth), deep(depth), (long) REPEATS * (depth + 1));
+    }
+
+    private static void run(String name, String program, long calls) throws Exception {
+        File source = File.createTempFile("splat-call-bench-", ".splat");
+        Files.write(source.toPath(), program.getBytes(StandardCharsets.UTF_8));
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        PrintStream out = System.out;
+        long[] times = new long[7];
+        long allocated = 0;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int run = 0; run < times.length; run++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                new Splat(source).processFileAndExecute();
+                times[run] = System.nanoTime() - start;
+                allocated = threads.getThreadAllocatedBytes(thread) - before;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        System.out.printf("%s, %d calls%n", name, calls);
+        System.out.printf("  Time:      %8.1f ms%n", BenchUtil.best(times));
+        System.out.printf("  Allocated: %8.1f bytes per call%n", (double) allocated / calls);
+
+        source.delete();
+    }
+
+    private static String fibonacci(int n) {
+        return "program\n"
+                + "    fib(n : Integer) : Integer is\n"
+                + "    begin\n"
+                + "        if (n < 2) then\n"
+                + "            return n;\n"
+                + "        end if;\n"
+                + "        return (fib((n - 1)) + fib((n - 2)));\n"
+                + "    end;\n"
+                + "begin\n"
+                + "    print fib(" + n + ");\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+
+    private static String deep(int depth) {
+        return "program\n"
+                + "    sum(n : Integer) : Integer is\n"
+                + "    begin\n"
+                + "        if (n == 0) then\n"
+                + "            return 0;\n"
+                + "        end if;\n"
+                + "        return (n + sum((n - 1)));\n"
+                + "    end;\n"
+                + "    i : Integer;\n"
+                + "    total : Integer;\n"
+                + "begin\n"
+                + "    while (i < " + REPEATS + ") do\n"
+                + "        total := (total + sum(" + depth + "));\n"
+                + "        i := (i + 1);\n"
+                + "    end while;\n"
+                + "    print total;\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+}
@@ -0,0 +1,144 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.Splat;
+
+/**
+ * Times shallow programs on the tree-walking executor and on the explicit
+ * stack, which should stay within 10% of it: a loop with no calls, a loop
+ * that calls a small function, and a doubly recursive Fibonacci.  Then
+ * runs a recursion depth calls deep on the explicit stack, which the Java
+ * stack couldn't hold.
+ *
+ * Usage: java splat.bench.ExplicitStackBenchmark [iterations] [depth]
+ */
+public class ExplicitStackBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        System.out.println("                     tree-walking ms   explicit stack ms    ratio");
+        compare("loop", loop(iterations));
+        compare("calls in a loop", callsInLoop(iterations));
+        compare("fib(22)", fibonacci(22));
+
+        File source = write(deep(depth));
+        long start = System.nanoTime();
+        run(source, true);
+        System.out.printf("%nDepth %d on the explicit stack: %.1f ms%n", depth, BenchUtil.millis(System.nanoTime() - start));
+        source.delete();
+    }
+
+    private static void compare(String name, String program) throws Exception {
+        File source = write(program);
+        long[] treeWalking = new long[9];
+        long[] explicitStack = new long[9];
+        // Alternate, so that both see the same state of the JIT and heap
+        for (int run = 0; run < treeWalking.length; run++) {
+            treeWalking[run] = run(source, false);
+            explicitStack[run] = run(source, true);
+        }
+        double tree = BenchUtil.best(treeWalking);
+        double stack = BenchUtil.best(explicitStack);
+        System.out.printf("%-20s %16.1f %19.1f %8.2f%n", name, tree, stack, stack / tree);
+        source.delete();
+    }
+
+    private static long run(File source, boolean explicitStack) throws Exception {
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Splat splat = new Splat(source);
+            splat.setExplicitStack(explicitStack);
+            splat.setStackBudget(1L << 30);
+            long start = System.nanoTime();
+            splat.processFileAndExecute();
+            return System.nanoTime() - start;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static File write(String program) throws Exception {
+        File source = File.createTempFile("splat-stack-bench-", ".splat");
+        Files.write(source.toPath(), program.getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+
+    private static String loop(int iterations) {
+        return "program\n"
+                + "    i : Integer;\n"
+                + "    acc : Integer;\n"
+                + "begin\n"
+                + "    while (i < " + iterations + ") do\n"
+                + "        if ((i % 3) == 0) then\n"
+                + "            acc := (acc + (i * 2));\n"
+                + "        else\n"
+                + "            acc := (acc - 1);\n"
+                + "        end if;\n"
+                + "        i := (i + 1);\n"
+                + "    end while;\n"
+                + "    print acc;\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+
+    private static String callsInLoop(int iterations) {
+        return "program\n"
+                + "    step(acc : Integer, i : Integer) : Integer is\n"
+                + "        next : Integer;\n"
+                + "    begin\n"
+                + "        next := (acc + (i * 2));\n"
+                + "        if (next > 1000000) then\n"
+                + "            next := (next % 1000);\n"
+                + "        end if;\n"
+                + "        return next;\n"
+                + "    end;\n"
+                + "    i : Integer;\n"
+                + "    acc : Integer;\n"
+                + "begin\n"
+                + "    while (i < " + iterations + ") do\n"
+                + "        acc := step(acc, i);\n"
+                + "        i := (i + 1);\n"
+                + "    end while;\n"
+                + "    print acc;\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+
+    private static String fibonacci(int n) {
+        return "program\n"
+                + "    fib(n : Integer) : Integer is\n"
+                + "    begin\n"
+                + "        if (n < 2) then\n"
+                + "            return n;\n"
+                + "        end if;\n"
+                + "        return (fib((n - 1)) + fib((n - 2)));\n"
+                + "    end;\n"
+                + "begin\n"
+                + "    print fib(" + n + ");\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+
+    private static String deep(int depth) {
+        return "program\n"
+                + "    sum(n : Integer) : Integer is\n"
+                + "    begin\n"
+                + "        if (n == 0) then\n"
+                + "            return 0;\n"
+                + "        end if;\n"
+                + "        return (n + sum((n - 1)));\n"
+                + "    end;\n"
+                + "begin\n"
+                + "    print sum(" + depth + ");\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+}
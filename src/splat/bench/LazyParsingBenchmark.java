@@ -0,0 +1,51 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import splat.Splat;
+
+/**
+ * Times a whole run (lex, parse, analyze, execute) of a generated program
+ * with thousands of functions, only ten of which are called, with
+ * function bodies parsed eagerly, lazily, and lazily with strict syntax.
+ *
+ * Usage: java splat.bench.LazyParsingBenchmark [functions]
+ */
+public class LazyParsingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        File source = ProgramGenerator.write(functions);
+
+        System.out.printf("%d functions, 10 called%n", functions);
+
+        double eager = time(source, false, false);
+        System.out.printf("Eager:          %8.1f ms%n", eager);
+        double lazy = time(source, true, false);
+        System.out.printf("Lazy:           %8.1f ms  (%.2fx)%n", lazy, eager / lazy);
+        double strict = time(source, true, true);
+        System.out.printf("Lazy, strict:   %8.1f ms  (%.2fx)%n", strict, eager / strict);
+    }
+
+    private static double time(File source, boolean lazy, boolean strict) throws Exception {
+        PrintStream out = System.out;
+        long[] times = new long[7];
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int run = 0; run < times.length; run++) {
+                Splat splat = new Splat(source);
+                splat.setMemoryMappedLexing(true);
+                splat.setLazyFunctionBodies(lazy);
+                splat.setStrictSyntax(strict);
+                long start = System.nanoTime();
+                splat.processFileAndExecute();
+                times[run] = System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return BenchUtil.best(times);
+    }
+}
@@ -0,0 +1,49 @@
+package splat.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import splat.lexer.Lexer;
+
+/**
+ * Reports how many bytes the lexer allocates per token, in reader mode
+ * and in memory-mapped mode.  Tokens are pulled one at a time through
+ * the Lexer's TokenSource interface and dropped straight away, so only
+ * the lexer's own allocations are counted, not a growing TokenBuffer.
+ *
+ * Usage: java splat.bench.LexerAllocationBenchmark [functions]
+ */
+public class LexerAllocationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        File source = ProgramGenerator.write(functions);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (boolean mapped : new boolean[] { false, true }) {
+            // Warm up first, so that the JIT's own work isn't counted
+            for (int run = 0; run < 3; run++) {
+                lex(source, mapped);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            long tokens = lex(source, mapped);
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            System.out.printf("%-7s %d tokens, %.1f bytes allocated per token%n",
+                    mapped ? "Mapped:" : "Reader:", tokens, (double) allocated / tokens);
+        }
+    }
+
+    private static long lex(File source, boolean mapped) throws Exception {
+        Lexer lexer = new Lexer(source, mapped);
+        long tokens = 0;
+        while (!lexer.atEnd()) {
+            lexer.advance();
+            tokens++;
+        }
+        lexer.finish();
+        return tokens;
+    }
+}
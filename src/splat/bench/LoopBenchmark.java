@@ -0,0 +1,75 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.Splat;
+
+/**
+ * Times a while loop that does nothing but integer arithmetic, comparisons
+ * and assignments, and reports how many bytes the run allocates per
+ * iteration.
+ *
+ * Usage: java splat.bench.LoopBenchmark [iterations]
+ */
+public class LoopBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File source = write(iterations);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        PrintStream out = System.out;
+        long[] times = new long[7];
+        long allocated = 0;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int run = 0; run < times.length; run++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                new Splat(source).processFileAndExecute();
+                times[run] = System.nanoTime() - start;
+                allocated = threads.getThreadAllocatedBytes(thread) - before;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        double best = BenchUtil.best(times);
+        System.out.printf("%d iterations%n", iterations);
+        System.out.printf("Time:      %8.1f ms  (%.1f ns per iteration)%n", best, best * 1_000_000 / iterations);
+        System.out.printf("Allocated: %8.1f bytes per iteration%n", (double) allocated / iterations);
+
+        source.delete();
+    }
+
+    private static File write(int iterations) throws Exception {
+        String program = "program\n"
+                + "    i : Integer;\n"
+                + "    acc : Integer;\n"
+                + "    even : Boolean;\n"
+                + "begin\n"
+                + "    while (i < " + iterations + ") do\n"
+                + "        even := ((i % 2) == 0);\n"
+                + "        if (even and (i >= 10)) then\n"
+                + "            acc := ((acc + (i * 3)) - (i / 7));\n"
+                + "        else\n"
+                + "            acc := (acc - 1);\n"
+                + "        end if;\n"
+                + "        i := (i + 1);\n"
+                + "    end while;\n"
+                + "    print acc;\n"
+                + "    print_line;\n"
+                + "end;\n";
+        File source = File.createTempFile("splat-loop-bench-", ".splat");
+        Files.write(source.toPath(), program.getBytes(StandardCharsets.UTF_8));
+        return source;
+    }
+}
@@ -0,0 +1,101 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.Splat;
+
+/**
+ * Times nested loops whose inner bodies work out the same row offsets and
+ * write the same subexpressions more than once, at -O1 and -O2, and then
+ * the nested-loop programs of the test suite, each run many times.
+ *
+ * Usage: java splat.bench.LoopOptimizationBenchmark [size] [repeats]
+ */
+public class LoopOptimizationBenchmark {
+
+    private static final String[] TEST_PROGRAMS = {
+        "tests/my_1_goodexecution.splat",
+        "tests/my_4_goodexecution.splat",
+        "tests/my_6_goodexecution.splat",
+        "tests/ye_05_goodexecution.splat",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        File source = File.createTempFile("splat-loop-bench-", ".splat");
+        Files.write(source.toPath(), program(size).getBytes(StandardCharsets.UTF_8));
+        compare("nested loops " + size + "x" + size, source, 1);
+        source.delete();
+
+        for (String path : TEST_PROGRAMS) {
+            File test = new File(path);
+            if (test.exists()) {
+                compare(test.getName() + " x" + repeats, test, repeats);
+            }
+        }
+    }
+
+    private static void compare(String name, File source, int repeats) throws Exception {
+        // Warm both levels up first, so neither is timed while compiling
+        time(source, 1, repeats);
+        time(source, 2, repeats);
+        double o1 = time(source, 1, repeats);
+        double o2 = time(source, 2, repeats);
+        System.out.printf("%-36s -O1 %8.1f ms  -O2 %8.1f ms  (%.2fx)%n", name, o1, o2, o1 / o2);
+    }
+
+    private static double time(File source, int level, int repeats) throws Exception {
+        long[] times = new long[7];
+        for (int run = 0; run < times.length; run++) {
+            long total = 0;
+            for (int i = 0; i < repeats; i++) {
+                total += run(source, level);
+            }
+            times[run] = total;
+        }
+        return BenchUtil.best(times);
+    }
+
+    private static long run(File source, int level) throws Exception {
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Splat splat = new Splat(source);
+            splat.setOptimizationLevel(level);
+            long start = System.nanoTime();
+            splat.processFileAndExecute();
+            return System.nanoTime() - start;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static String program(int size) {
+        return "program\n"
+                + "    n : Integer;\n"
+                + "    i : Integer;\n"
+                + "    j : Integer;\n"
+                + "    acc : Integer;\n"
+                + "begin\n"
+                + "    n := " + size + ";\n"
+                + "    while (i < n) do\n"
+                + "        j := 0;\n"
+                + "        while (j < n) do\n"
+                + "            acc := ((acc + (((i * n) + j) % ((i * i) + 7))) % 1000003);\n"
+                + "            if ((((i * n) + j) % ((n / 2) + 1)) == 0) then\n"
+                + "                acc := ((acc + ((j * j) - (j * j))) + ((i * n) / (n + 1)));\n"
+                + "            end if;\n"
+                + "            j := (j + 1);\n"
+                + "        end while;\n"
+                + "        i := (i + 1);\n"
+                + "    end while;\n"
+                + "    print acc;\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+}
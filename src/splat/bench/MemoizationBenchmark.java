@@ -0,0 +1,102 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.executor.Executor;
+import splat.executor.MemoTable;
+import splat.lexer.Lexer;
+import splat.parser.Parser;
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.ProgramAST;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+/**
+ * Times a doubly recursive Fibonacci, which makes exponentially many calls,
+ * with and without memoization of pure functions, for a few n.  With it,
+ * each fib(k) runs once, and the rest of the calls are table hits.  Also
+ * reports the table's hits, misses and evictions.
+ *
+ * Usage: java splat.bench.MemoizationBenchmark [largest n]
+ */
+public class MemoizationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 26;
+
+        System.out.println("  n     plain ms   memoized ms      hits    misses  evictions");
+        for (int n = largest - 6; n <= largest; n += 2) {
+            File source = File.createTempFile("splat-memo-bench-", ".splat");
+            Files.write(source.toPath(), fibonacci(n).getBytes(StandardCharsets.UTF_8));
+
+            long[] plain = new long[5];
+            long[] memoized = new long[5];
+            MemoTable table = null;
+            for (int run = 0; run < plain.length; run++) {
+                plain[run] = run(source, 0).time;
+                Run memoizedRun = run(source, MemoTable.DEFAULT_CAPACITY);
+                memoized[run] = memoizedRun.time;
+                table = memoizedRun.table;
+            }
+            System.out.printf("%3d %12.1f %13.2f %9d %9d %10d%n", n, BenchUtil.best(plain), BenchUtil.best(memoized),
+                    table.getHits(), table.getMisses(), table.getEvictions());
+            source.delete();
+        }
+    }
+
+    private static final class Run {
+        final long time;
+        final MemoTable table;
+
+        Run(long time, MemoTable table) {
+            this.time = time;
+            this.table = table;
+        }
+    }
+
+    private static Run run(File source, int memoCapacity) throws Exception {
+        ProgramAST progAST = new Parser(new Lexer(source, false).tokenize()).parse();
+        new SemanticAnalyzer(progAST).analyze();
+        Executor executor = new Executor(progAST);
+        executor.setMemoCapacity(memoCapacity);
+
+        PrintStream out = System.out;
+        long start;
+        long time;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            start = System.nanoTime();
+            executor.runProgram();
+            time = System.nanoTime() - start;
+        } finally {
+            System.setOut(out);
+        }
+
+        MemoTable table = null;
+        for (Declaration decl : progAST.getDecls()) {
+            if (decl instanceof FunctionDecl) {
+                table = ((FunctionDecl) decl).getMemoTable();
+            }
+        }
+        return new Run(time, table);
+    }
+
+    private static String fibonacci(int n) {
+        return "program\n"
+                + "    fib(n : Integer) : Integer is\n"
+                + "    begin\n"
+                + "        if (n < 2) then\n"
+                + "            return n;\n"
+                + "        end if;\n"
+                + "        return (fib((n - 1)) + fib((n - 2)));\n"
+                + "    end;\n"
+                + "begin\n"
+                + "    print fib(" + n + ");\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+}
@@ -0,0 +1,73 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.Splat;
+import splat.optimizer.Optimizer;
+
+/**
+ * Times a loop full of constant subexpressions and branches that never
+ * run, at each optimization level.
+ *
+ * Usage: java splat.bench.OptimizerBenchmark [iterations]
+ */
+public class OptimizerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File source = File.createTempFile("splat-optimizer-bench-", ".splat");
+        Files.write(source.toPath(), program(iterations).getBytes(StandardCharsets.UTF_8));
+
+        double unoptimized = 0;
+        for (int level = 0; level <= Optimizer.MAX_LEVEL; level++) {
+            long[] times = new long[7];
+            for (int run = 0; run < times.length; run++) {
+                times[run] = run(source, level);
+            }
+            double best = BenchUtil.best(times);
+            if (level == 0) {
+                unoptimized = best;
+            }
+            System.out.printf("-O%d: %8.1f ms  (%.2fx)%n", level, best, unoptimized / best);
+        }
+        source.delete();
+    }
+
+    private static long run(File source, int level) throws Exception {
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            Splat splat = new Splat(source);
+            splat.setOptimizationLevel(level);
+            long start = System.nanoTime();
+            splat.processFileAndExecute();
+            return System.nanoTime() - start;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static String program(int iterations) {
+        return "program\n"
+                + "    i : Integer;\n"
+                + "    acc : Integer;\n"
+                + "begin\n"
+                + "    while (i < (" + iterations + " * 1)) do\n"
+                + "        acc := ((acc + ((3 * 4) - (10 / 5))) % (1000 * 1000));\n"
+                + "        if ((2 * 2) == 5) then\n"
+                + "            acc := 0;\n"
+                + "        end if;\n"
+                + "        if ((not false) and (1 < 2)) then\n"
+                + "            acc := (acc + (60 * 60));\n"
+                + "        end if;\n"
+                + "        i := (i + 1);\n"
+                + "    end while;\n"
+                + "    print acc;\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+}
@@ -0,0 +1,50 @@
+package splat.bench;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import splat.lexer.Lexer;
+import splat.parser.Parser;
+import splat.parser.elements.ProgramAST;
+import splat.semanticanalyzer.SemanticAnalyzer;
+
+/**
+ * Times parallel semantic analysis against sequential analysis on a
+ * generated program, with pools of 1 up to 16 threads.  The program is
+ * parsed once; analyzing it again only redoes the same work.
+ *
+ * Usage: java splat.bench.ParallelAnalysisBenchmark [functions]
+ */
+public class ParallelAnalysisBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        File source = ProgramGenerator.write(functions);
+        ProgramAST progAST = new Parser(new Lexer(source, true).tokenize()).parse();
+
+        System.out.printf("%d functions, %d cores%n", functions,
+                Runtime.getRuntime().availableProcessors());
+
+        double sequential = time(progAST, null);
+        System.out.printf("Sequential:  %8.1f ms%n", sequential);
+
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double best = time(progAST, pool);
+            pool.shutdown();
+            System.out.printf("%2d threads:  %8.1f ms  (%.2fx)%n", threads, best, sequential / best);
+        }
+    }
+
+    private static double time(ProgramAST progAST, ForkJoinPool pool) throws Exception {
+        long[] times = new long[7];
+        for (int run = 0; run < times.length; run++) {
+            SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+            analyzer.setPool(pool);
+            long start = System.nanoTime();
+            analyzer.analyze();
+            times[run] = System.nanoTime() - start;
+        }
+        return BenchUtil.best(times);
+    }
+}
@@ -0,0 +1,45 @@
+package splat.bench;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import splat.lexer.Lexer;
+import splat.lexer.ParallelLexer;
+
+/**
+ * Times ParallelLexer against the sequential mapped Lexer on a generated
+ * program, with pools of 1 up to 16 threads.
+ *
+ * Usage: java splat.bench.ParallelLexerBenchmark [functions]
+ */
+public class ParallelLexerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        File source = ProgramGenerator.write(functions);
+
+        System.out.printf("Source: %.1f MB, %d cores%n", source.length() / (1024.0 * 1024),
+                Runtime.getRuntime().availableProcessors());
+
+        long[] times = new long[7];
+        for (int run = 0; run < times.length; run++) {
+            long start = System.nanoTime();
+            new Lexer(source, true).tokenize();
+            times[run] = System.nanoTime() - start;
+        }
+        double sequential = BenchUtil.best(times);
+        System.out.printf("Sequential:  %8.1f ms%n", sequential);
+
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (int run = 0; run < times.length; run++) {
+                long start = System.nanoTime();
+                new ParallelLexer(source, pool).tokenize();
+                times[run] = System.nanoTime() - start;
+            }
+            pool.shutdown();
+            double best = BenchUtil.best(times);
+            System.out.printf("%2d threads:  %8.1f ms  (%.2fx)%n", threads, best, sequential / best);
+        }
+    }
+}
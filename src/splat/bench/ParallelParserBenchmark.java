@@ -0,0 +1,49 @@
+package splat.bench;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import splat.lexer.Lexer;
+import splat.lexer.TokenBuffer;
+import splat.parser.ParallelParser;
+import splat.parser.Parser;
+
+/**
+ * Times ParallelParser against the sequential Parser on a generated
+ * program with tens of thousands of functions, with pools of 1 up to 16
+ * threads.
+ *
+ * Usage: java splat.bench.ParallelParserBenchmark [functions]
+ */
+public class ParallelParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        File source = ProgramGenerator.write(functions);
+        TokenBuffer tokens = new Lexer(source, true).tokenize();
+
+        System.out.printf("%d functions, %d tokens, %d cores%n", functions, tokens.size(),
+                Runtime.getRuntime().availableProcessors());
+
+        long[] times = new long[7];
+        for (int run = 0; run < times.length; run++) {
+            long start = System.nanoTime();
+            new Parser(tokens).parse();
+            times[run] = System.nanoTime() - start;
+        }
+        double sequential = BenchUtil.best(times);
+        System.out.printf("Sequential:  %8.1f ms%n", sequential);
+
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (int run = 0; run < times.length; run++) {
+                long start = System.nanoTime();
+                new ParallelParser(tokens, pool).parse();
+                times[run] = System.nanoTime() - start;
+            }
+            pool.shutdown();
+            double best = BenchUtil.best(times);
+            System.out.printf("%2d threads:  %8.1f ms  (%.2fx)%n", threads, best, sequential / best);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package splat.bench;
+
+import java.io.File;
+
+import splat.lexer.Lexer;
+import splat.lexer.TokenBuffer;
+import splat.parser.Parser;
+
+/**
+ * Times the parser on generated programs from 1k up to 10M tokens.  With
+ * a linear parser the time per token stays flat as the program grows.
+ *
+ * The AST of the largest program is over a GB, all of it live until the
+ * parse ends.  If the heap has to grow, or fills up, during a run, the
+ * collector copies that AST over and over, and the time per token climbs
+ * with the size of the program.  So run with a fixed heap of a few GB
+ * (e.g. -Xms4g -Xmx4g).  Each run starts from a collected heap, and the
+ * time the collector took during the best run is reported beside it, with
+ * the time per token left once that is taken out.
+ *
+ * Usage: java splat.bench.ParserScalingBenchmark [maxTokens]
+ */
+public class ParserScalingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int maxTokens = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        System.out.printf("Heap: %d MB max%n", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        System.out.println("    tokens     parse ms      gc ms   ns/token  without gc");
+        for (int target = 1_000; target <= maxTokens; target *= 10) {
+            File source = ProgramGenerator.writeForTokens(target);
+            TokenBuffer tokens = new Lexer(source, true).tokenize();
+
+            // Small inputs get more runs so that warm-up doesn't dominate
+            int runs = Math.max(3, Math.min(200, 2_000_000 / target));
+            long best = Long.MAX_VALUE;
+            long bestGc = 0;
+            for (int run = 0; run < runs; run++) {
+                // Don't make this run collect what the last one left
+                BenchUtil.usedHeap();
+                long gcBefore = BenchUtil.gcMillis();
+                long start = System.nanoTime();
+                new Parser(tokens).parse();
+                long time = System.nanoTime() - start;
+                long gc = BenchUtil.gcMillis() - gcBefore;
+                if (time < best) {
+                    best = time;
+                    bestGc = gc;
+                }
+            }
+
+            double millis = BenchUtil.millis(best);
+            System.out.printf("%10d %12.2f %10d %10.1f %11.1f%n", tokens.size(), millis, bestGc,
+                    millis * 1_000_000.0 / tokens.size(), (millis - bestGc) * 1_000_000.0 / tokens.size());
+            source.delete();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package splat.bench;
+
+import java.io.File;
+
+import splat.lexer.Lexer;
+import splat.lexer.PipelinedTokenSource;
+import splat.parser.Parser;
+
+/**
+ * Times lexing plus parsing of multi-megabyte generated programs three
+ * ways: lexing everything before parsing, pulling tokens from the lexer
+ * on the parser's thread, and running the lexer on its own thread.  The
+ * pipelined mode can only come out ahead with at least two cores free.
+ *
+ * Usage: java splat.bench.PipelineBenchmark [functions]
+ */
+public class PipelineBenchmark {
+
+    private interface Run {
+        void run(File source) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        File source = ProgramGenerator.write(functions);
+
+        System.out.printf("Source: %.1f MB, %d cores%n", source.length() / (1024.0 * 1024),
+                Runtime.getRuntime().availableProcessors());
+        time("Lex, then parse", source, f -> new Parser(new Lexer(f, true).tokenize()).parse());
+        time("Streaming", source, f -> new Parser(new Lexer(f, true)).parse());
+        time("Pipelined", source,
+                f -> new Parser(new PipelinedTokenSource(new Lexer(f, true))).parse());
+    }
+
+    private static void time(String name, File source, Run run) throws Exception {
+        long[] times = new long[7];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            run.run(source);
+            times[i] = System.nanoTime() - start;
+        }
+        System.out.printf("%-16s %8.1f ms (best of %d)%n", name + ":", BenchUtil.best(times),
+                times.length);
+    }
+}
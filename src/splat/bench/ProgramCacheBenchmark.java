@@ -0,0 +1,65 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import splat.OutputCache;
+import splat.Splat;
+
+/**
+ * Times a whole run of a generated program without any cache, warm runs
+ * that load the analyzed program from a ProgramCache, and warm runs that
+ * replay its output from an OutputCache.
+ *
+ * Usage: java splat.bench.ProgramCacheBenchmark [functions]
+ */
+public class ProgramCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        File source = ProgramGenerator.write(functions);
+        File cacheDirectory = Files.createTempDirectory("splat-cache-").toFile();
+
+        System.out.printf("%d functions, 10 called%n", functions);
+
+        double cold = time(source, null, null);
+        System.out.printf("No cache:      %8.1f ms%n", cold);
+
+        // The first run fills the cache
+        time(source, cacheDirectory, null);
+        double warm = time(source, cacheDirectory, null);
+        System.out.printf("Program cache: %8.1f ms  (%.2fx)%n", warm, cold / warm);
+
+        OutputCache outputCache = new OutputCache(cacheDirectory, OutputCache.DEFAULT_MAX_BYTES, 0);
+        time(source, null, outputCache);
+        double replay = time(source, null, outputCache);
+        System.out.printf("Output cache:  %8.1f ms  (%.2fx)%n", replay, cold / replay);
+
+        for (File entry : cacheDirectory.listFiles()) {
+            entry.delete();
+        }
+        cacheDirectory.delete();
+    }
+
+    private static double time(File source, File cacheDirectory, OutputCache outputCache) throws Exception {
+        PrintStream out = System.out;
+        long[] times = new long[7];
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int run = 0; run < times.length; run++) {
+                Splat splat = new Splat(source);
+                splat.setMemoryMappedLexing(true);
+                splat.setCacheDirectory(cacheDirectory);
+                splat.setOutputCache(outputCache);
+                long start = System.nanoTime();
+                splat.processFileAndExecute();
+                times[run] = System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return BenchUtil.best(times);
+    }
+}
@@ -0,0 +1,67 @@
+package splat.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes large, valid SPLAT programs for the benchmarks.  Every function
+ * has the same shape (a couple of locals, a while loop with an if/else
+ * inside, and a return), so the size of a program grows linearly with the
+ * number of functions.  The main body calls a handful of them.
+ */
+public class ProgramGenerator {
+
+    // Roughly how many tokens one generated function takes up
+    public static final int TOKENS_PER_FUNCTION = 88;
+
+    public static File write(int functions) throws IOException {
+        File file = File.createTempFile("splat-bench-", ".splat");
+        file.deleteOnExit();
+        write(file, functions);
+        return file;
+    }
+
+    public static File writeForTokens(int tokens) throws IOException {
+        return write(Math.max(1, tokens / TOKENS_PER_FUNCTION));
+    }
+
+    public static void write(File file, int functions) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+            out.write("program\n\n");
+            for (int f = 0; f < functions; f++) {
+                writeFunction(out, f);
+            }
+            out.write("  total : Integer ;\n\n");
+            out.write("begin\n");
+            out.write("  total := 0 ;\n");
+            for (int f = 0; f < Math.min(functions, 10); f++) {
+                out.write("  total := ( total + f" + f + " ( 25 , \"call " + f + "\" ) ) ;\n");
+            }
+            out.write("  print \"total: \" ;\n");
+            out.write("  print total ;\n");
+            out.write("  print_line ;\n");
+            out.write("end ;\n");
+        }
+    }
+
+    private static void writeFunction(BufferedWriter out, int f) throws IOException {
+        out.write("f" + f + " ( n : Integer , label : String ) : Integer is\n");
+        out.write("  i : Integer ;\n");
+        out.write("  acc : Integer ;\n");
+        out.write("begin\n");
+        out.write("  i := 0 ;\n");
+        out.write("  acc := " + f % 97 + " ;\n");
+        out.write("  while ( i < n ) do\n");
+        out.write("    if ( ( i % 3 ) == 0 ) then\n");
+        out.write("      acc := ( acc + ( i * 2 ) ) ;\n");
+        out.write("    else\n");
+        out.write("      acc := ( acc - 1 ) ;\n");
+        out.write("    end if ;\n");
+        out.write("    i := ( i + 1 ) ;\n");
+        out.write("  end while ;\n");
+        out.write("  return acc ;\n");
+        out.write("end ;\n\n");
+    }
+}
@@ -0,0 +1,77 @@
+package splat.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import splat.lexer.Lexer;
+
+/**
+ * Compares the scalar and SWAR scanners of the memory-mapped lexer on
+ * machine-generated sources with long runs, where SWAR pays off: long
+ * string literals (generated messages and tables), deep indentation
+ * (generated nested code), and long identifiers (generated names).  Then,
+ * for reference, on a ProgramGenerator program, whose tokens and gaps are
+ * mostly shorter than the eight bytes SWAR reads at a time, so the two
+ * come out about even.
+ *
+ * Usage: java splat.bench.ScannerBenchmark [lines]
+ */
+public class ScannerBenchmark {
+
+    private static final String TEXT =
+            "The quick brown fox jumps over the lazy dog, again and again. ".repeat(4);
+    private static final String INDENT = " ".repeat(48);
+    private static final String NAME = "generated_accumulator_for_row_and_column_";
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        compare("Long string literals", write(lines, i -> "  print \"" + TEXT + i + "\" ;"));
+        compare("Deep indentation", write(lines, i -> INDENT + "print_line ;"));
+        compare("Long identifiers", write(lines, i -> "  print " + NAME + i + " ;"));
+        compare("Generated program", ProgramGenerator.write(lines / 16));
+    }
+
+    private interface Line {
+        String at(int i);
+    }
+
+    private static File write(int lines, Line line) throws IOException {
+        File file = File.createTempFile("splat-bench-", ".splat");
+        file.deleteOnExit();
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+            out.write("program\nbegin\n");
+            for (int i = 0; i < lines; i++) {
+                out.write(line.at(i));
+                out.write('\n');
+            }
+            out.write("end ;\n");
+        }
+        return file;
+    }
+
+    private static void compare(String name, File source) throws Exception {
+        System.out.printf("%s (%.1f MB):%n", name, source.length() / (1024.0 * 1024));
+        // Alternate the two so that both see the same GC and JIT state
+        long[] scalarTimes = new long[11];
+        long[] swarTimes = new long[11];
+        for (int run = 0; run < scalarTimes.length; run++) {
+            scalarTimes[run] = time(source, false);
+            swarTimes[run] = time(source, true);
+        }
+        double scalar = BenchUtil.best(scalarTimes);
+        double swar = BenchUtil.best(swarTimes);
+        System.out.printf("  Scalar: %8.1f ms%n", scalar);
+        System.out.printf("  SWAR:   %8.1f ms  (%.2fx)%n", swar, scalar / swar);
+    }
+
+    private static long time(File source, boolean swar) throws Exception {
+        Lexer lexer = new Lexer(source, true);
+        lexer.setSwarScanning(swar);
+        long start = System.nanoTime();
+        lexer.tokenize();
+        return System.nanoTime() - start;
+    }
+}
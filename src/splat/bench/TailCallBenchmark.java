@@ -0,0 +1,98 @@
+package splat.bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import splat.Splat;
+
+/**
+ * Times recursions that go depth calls deep through tail calls, on the
+ * default thread stack, and reports how many bytes each run allocates per
+ * call: an accumulator-style sum that calls itself, and a pair of
+ * functions that call each other.
+ *
+ * Usage: java splat.bench.TailCallBenchmark [depth]
+ */
+public class TailCallBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        run(String.format("sum, depth %d", depth), sum(depth), depth + 1L);
+        run(String.format("even/odd, depth %d", depth), evenOdd(depth), depth + 1L);
+    }
+
+    private static void run(String name, String program, long calls) throws Exception {
+        File source = File.createTempFile("splat-tail-call-bench-", ".splat");
+        Files.write(source.toPath(), program.getBytes(StandardCharsets.UTF_8));
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        PrintStream out = System.out;
+        long[] times = new long[7];
+        long allocated = 0;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int run = 0; run < times.length; run++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                new Splat(source).processFileAndExecute();
+                times[run] = System.nanoTime() - start;
+                allocated = threads.getThreadAllocatedBytes(thread) - before;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        double best = BenchUtil.best(times);
+        System.out.printf("%s, %d calls%n", name, calls);
+        System.out.printf("  Time:      %8.1f ms  (%.1f ns per call)%n", best, best * 1_000_000 / calls);
+        System.out.printf("  Allocated: %8.1f bytes per call%n", (double) allocated / calls);
+
+        source.delete();
+    }
+
+    private static String sum(int depth) {
+        return "program\n"
+                + "    sum(n : Integer, acc : Integer) : Integer is\n"
+                + "    begin\n"
+                + "        if (n == 0) then\n"
+                + "            return acc;\n"
+                + "        else\n"
+                + "            return sum((n - 1), ((acc + n) % 1000));\n"
+                + "        end if;\n"
+                + "    end;\n"
+                + "begin\n"
+                + "    print sum(" + depth + ", 0);\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+
+    private static String evenOdd(int depth) {
+        return "program\n"
+                + "    even(n : Integer) : Boolean is\n"
+                + "    begin\n"
+                + "        if (n == 0) then\n"
+                + "            return true;\n"
+                + "        end if;\n"
+                + "        return odd((n - 1));\n"
+                + "    end;\n"
+                + "    odd(n : Integer) : Boolean is\n"
+                + "    begin\n"
+                + "        if (n == 0) then\n"
+                + "            return false;\n"
+                + "        end if;\n"
+                + "        return even((n - 1));\n"
+                + "    end;\n"
+                + "begin\n"
+                + "    print even(" + depth + ");\n"
+                + "    print_line;\n"
+                + "end;\n";
+    }
+}
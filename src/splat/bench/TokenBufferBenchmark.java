@@ -0,0 +1,156 @@
+package splat.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.lexer.Lexer;
+import splat.lexer.Token;
+import splat.lexer.TokenBuffer;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenSequence;
+import splat.parser.Parser;
+
+/**
+ * Compares the memory held by a packed TokenBuffer with the same tokens
+ * stored as one Token object each, and times parsing from both.
+ *
+ * Both are read by index, so the times compare only how the tokens are
+ * stored; dropping the parser's remove(0) is another change (see
+ * ParserScalingBenchmark).  Picking out statement keywords by TokenKind
+ * is timed against doing it by comparing text, as the parser used to.
+ *
+ * Usage: java splat.bench.TokenBufferBenchmark [tokens]
+ */
+public class TokenBufferBenchmark {
+
+    private static final int RUNS = 7;
+
+    // Token objects, read by index like the buffer
+    private static class TokenList implements TokenSequence {
+        private final List<Token> tokens;
+
+        TokenList(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public int size() {
+            return tokens.size();
+        }
+
+        @Override
+        public TokenKind kind(int i) {
+            return tokens.get(i).getKind();
+        }
+
+        @Override
+        public String lexeme(int i) {
+            return tokens.get(i).getLexeme();
+        }
+
+        @Override
+        public int line(int i) {
+            return tokens.get(i).getLine();
+        }
+
+        @Override
+        public int column(int i) {
+            return tokens.get(i).getColumn();
+        }
+
+        @Override
+        public Token token(int i) {
+            return tokens.get(i);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int targetTokens = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        File source = ProgramGenerator.writeForTokens(targetTokens);
+
+        long before = BenchUtil.usedHeap();
+        TokenBuffer buffer = new Lexer(source, true).tokenize();
+        long packedBytes = BenchUtil.usedHeap() - before;
+        int count = buffer.size();
+
+        before = BenchUtil.usedHeap();
+        List<Token> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            objects.add(buffer.token(i));
+        }
+        long objectBytes = BenchUtil.usedHeap() - before;
+
+        double perMillion = 1_000_000.0 / count / (1024 * 1024);
+        System.out.println("Tokens:                 " + count);
+        System.out.printf("Token objects:          %.1f MB per million tokens (%.1f bytes/token)%n",
+                objectBytes * perMillion, (double) objectBytes / count);
+        System.out.printf("Packed TokenBuffer:     %.1f MB per million tokens (%.1f bytes/token)%n",
+                packedBytes * perMillion, (double) packedBytes / count);
+        System.out.printf("Saved:                  %.1f MB per million tokens%n",
+                (objectBytes - packedBytes) * perMillion);
+
+        TokenList list = new TokenList(objects);
+        long[] listTimes = new long[RUNS];
+        long[] bufferTimes = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            new Parser(list).parse();
+            listTimes[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new Parser(buffer).parse();
+            bufferTimes[run] = System.nanoTime() - start;
+        }
+        System.out.printf("Parse from Token list:  %.1f ms (best of %d)%n", BenchUtil.best(listTimes), RUNS);
+        System.out.printf("Parse from TokenBuffer: %.1f ms (best of %d)%n", BenchUtil.best(bufferTimes), RUNS);
+
+        long[] textTimes = new long[RUNS];
+        long[] kindTimes = new long[RUNS];
+        int found = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            found += countStatementsByText(objects);
+            textTimes[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            found -= countStatementsByKind(buffer);
+            kindTimes[run] = System.nanoTime() - start;
+        }
+        if (found != 0) {
+            throw new IllegalStateException("Text and kind disagree on the statements");
+        }
+        System.out.printf("Keywords by text:       %.1f ms (best of %d)%n", BenchUtil.best(textTimes), RUNS);
+        System.out.printf("Keywords by TokenKind:  %.1f ms (best of %d)%n", BenchUtil.best(kindTimes), RUNS);
+    }
+
+    private static int countStatementsByText(List<Token> tokens) {
+        int count = 0;
+        for (Token token : tokens) {
+            String value = token.getValue();
+            if (value.equals("if") || value.equals("while") || value.equals("print")
+                    || value.equals("print_line") || value.equals("return")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countStatementsByKind(TokenBuffer tokens) {
+        int count = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            switch (tokens.kind(i)) {
+                case IF:
+                case WHILE:
+                case PRINT:
+                case PRINT_LINE:
+                case RETURN:
+                    count++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,115 @@
+package splat.executor;
+
+import java.util.List;
+
+import splat.parser.elements.*;
+
+/**
+ * Keeps count of how much of the Java stack the calls being made by the
+ * tree-walking executor take, so that recursion too deep for a thread of
+ * Splat.STACK_SIZE fails with a StackExhaustedException at the call that
+ * goes too deep, instead of overflowing the stack.
+ *
+ * A call is counted as the Java calls it takes to make it, plus as many
+ * as the most deeply nested part of the callee's body takes to run: one
+ * per operator or statement, and two per call or block.  The Executor
+ * works that out once per body, and gives every function the CallDepth
+ * of the run.
+ */
+public final class CallDepth {
+
+	/**
+	 * How deep calls may go, counted as above.  This takes about half of
+	 * Splat.STACK_SIZE, so that the rest holds the program body, and the
+	 * parsing and analysis of a lazily loaded body (see Parser.MAX_NESTING)
+	 * at the deepest point.
+	 */
+	public static final int LIMIT = 150_000;
+
+	// evaluate() or execute() on the call, and Statement.execute() on
+	// the body
+	private static final int CALL_COST = 2;
+
+	private int depth;
+
+	/**
+	 * Counts a call to callee, made at site.  The callee's body must be
+	 * loaded.
+	 */
+	public void enter(FunctionDecl callee, ASTElement site) throws ExecutionException {
+		depth += callee.getCallCost();
+		if (depth > LIMIT) {
+			throw new StackExhaustedException("Recursion too deep: calls would nest more than "
+					+ LIMIT + " levels", site.getLine(), site.getColumn());
+		}
+	}
+
+	/**
+	 * Counts a call to callee as over.
+	 */
+	public void leave(FunctionDecl callee) {
+		depth -= callee.getCallCost();
+	}
+
+	/**
+	 * What a call to a function with the given body is counted as.
+	 */
+	static int cost(List<Statement> stmts) {
+		return CALL_COST + nesting(stmts);
+	}
+
+	private static int nesting(List<Statement> stmts) {
+		int nesting = 0;
+		if (stmts != null) {
+			for (Statement stmt : stmts) {
+				nesting = Math.max(nesting, nesting(stmt));
+			}
+		}
+		return nesting;
+	}
+
+	private static int nesting(Statement stmt) {
+		if (stmt instanceof AssignmentStatement) {
+			return 1 + nesting(((AssignmentStatement) stmt).getExpression());
+		} else if (stmt instanceof PrintStatement) {
+			return 1 + nesting(((PrintStatement) stmt).getExpression());
+		} else if (stmt instanceof ReturnStatement) {
+			Expression returnValue = ((ReturnStatement) stmt).getReturnValue();
+			return 1 + (returnValue == null ? 0 : nesting(returnValue));
+		} else if (stmt instanceof FunctionCallStatement) {
+			return 2 + nesting(((FunctionCallStatement) stmt).getArguments());
+		} else if (stmt instanceof IfStatement) {
+			IfStatement ifStmt = (IfStatement) stmt;
+			int branches = Math.max(nesting(ifStmt.getThenBranch()), nesting(ifStmt.getElseBranch()));
+			return 2 + Math.max(nesting(ifStmt.getCondition()), branches);
+		} else if (stmt instanceof WhileStatement) {
+			WhileStatement whileStmt = (WhileStatement) stmt;
+			return 2 + Math.max(nesting(whileStmt.getCondition()), nesting(whileStmt.getBody()));
+		}
+		return 1;
+	}
+
+	private static int nesting(Iterable<Expression> exprs) {
+		int nesting = 0;
+		for (Expression expr : exprs) {
+			nesting = Math.max(nesting, nesting(expr));
+		}
+		return nesting;
+	}
+
+	private static int nesting(Expression expr) {
+		if (expr instanceof FunctionCallExpression) {
+			return 2 + nesting(((FunctionCallExpression) expr).getArguments());
+		} else if (expr instanceof BinaryOpExpression) {
+			BinaryOpExpression binary = (BinaryOpExpression) expr;
+			return 1 + Math.max(nesting(binary.getLeft()), nesting(binary.getRight()));
+		} else if (expr instanceof UnaryOpExpression) {
+			return 1 + nesting(((UnaryOpExpression) expr).getOperand());
+		} else if (expr instanceof SharedExpression) {
+			return 1 + nesting(((SharedExpression) expr).getExpression());
+		} else if (expr instanceof InvariantExpression) {
+			return 1 + nesting(((InvariantExpression) expr).getExpression());
+		}
+		return 1;
+	}
+}
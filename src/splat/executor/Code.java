@@ -0,0 +1,24 @@
+package splat.executor;
+
+import splat.parser.elements.FunctionDecl;
+
+/**
+ * A function body, or the program body, compiled for the StackMachine.
+ */
+final class Code {
+
+	// null for the program body
+	final FunctionDecl function;
+
+	final Instruction[] instructions;
+
+	// The slots of the function's own frame (see FunctionDecl), then the
+	// slots the instructions keep values in while calls are made
+	final int frameSize;
+
+	Code(FunctionDecl function, Instruction[] instructions, int frameSize) {
+		this.function = function;
+		this.instructions = instructions;
+		this.frameSize = frameSize;
+	}
+}
@@ -0,0 +1,318 @@
+package splat.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.parser.elements.*;
+
+/**
+ * Compiles a resolved body into Code for the StackMachine.
+ *
+ * A statement with no calls in it becomes a single EXECUTE, so it runs
+ * exactly as it does in the tree-walking executor.  Elsewhere each call
+ * becomes instructions that evaluate its arguments into slots and then
+ * make it, putting its value into another slot.  The expression around
+ * the call is then evaluated as usual, over a copy of it that reads the
+ * slot (see SlotExpression).  Anything that is evaluated before a call is
+ * also put into a slot first, so that everything happens in the same
+ * order as before, errors included.
+ */
+final class CodeGenerator {
+
+	private final List<Instruction> instructions = new ArrayList<>();
+	private final int firstSlot;
+	private int nextSlot;
+	private int frameSize;
+
+	private CodeGenerator(int firstSlot) {
+		this.firstSlot = firstSlot;
+		this.frameSize = firstSlot;
+	}
+
+	/**
+	 * Compiles the statements of a body whose own frame has frameSize
+	 * slots.  function is null for the program body.
+	 */
+	static Code generate(FunctionDecl function, List<Statement> stmts, int frameSize) {
+		CodeGenerator generator = new CodeGenerator(frameSize);
+		generator.statements(stmts);
+		generator.emit(Instruction.END);
+		return new Code(function, generator.instructions.toArray(new Instruction[0]), generator.frameSize);
+	}
+
+	private void statements(List<Statement> stmts) {
+		if (stmts == null) {
+			return;
+		}
+		for (Statement stmt : stmts) {
+			statement(stmt);
+		}
+	}
+
+	private void statement(Statement stmt) {
+		// Slots only hold values while a statement runs, so every
+		// statement can use them again
+		nextSlot = firstSlot;
+
+		if (!hasCall(stmt)) {
+			emit(Instruction.EXECUTE).statement = stmt;
+		} else if (stmt instanceof AssignmentStatement) {
+			AssignmentStatement assignment = (AssignmentStatement) stmt;
+			if (assignment.getSlot() >= 0 && assignment.getExpression() instanceof FunctionCallExpression) {
+				// The CALL assigns what the call returns itself
+				Instruction call = callExpression((FunctionCallExpression) assignment.getExpression());
+				if (call != null) {
+					call.assignment = assignment;
+					return;
+				}
+			}
+			Expression expression = expression(assignment.getExpression());
+			emit(Instruction.EXECUTE).statement = assignment.withExpression(expression);
+		} else if (stmt instanceof PrintStatement) {
+			PrintStatement print = (PrintStatement) stmt;
+			Expression expression = expression(print.getExpression());
+			emit(Instruction.EXECUTE).statement = print.withExpression(expression);
+		} else if (stmt instanceof ReturnStatement) {
+			returnStatement((ReturnStatement) stmt);
+		} else if (stmt instanceof FunctionCallStatement) {
+			callStatement((FunctionCallStatement) stmt);
+		} else if (stmt instanceof IfStatement) {
+			ifStatement((IfStatement) stmt);
+		} else if (stmt instanceof WhileStatement) {
+			whileStatement((WhileStatement) stmt);
+		} else {
+			throw new IllegalArgumentException("Statement with calls couldn't be compiled: " + stmt);
+		}
+	}
+
+	private void returnStatement(ReturnStatement ret) {
+		FunctionCallExpression tailCall = ret.getTailCall();
+		if (tailCall == null) {
+			Expression returnValue = expression(ret.getReturnValue());
+			emit(Instruction.EXECUTE).statement = ret.withReturnValue(returnValue);
+			return;
+		}
+
+		int slot = arguments(tailCall, null, tailCall.getArguments());
+		Instruction instruction = emit(Instruction.TAIL_CALL);
+		instruction.call = tailCall;
+		instruction.function = tailCall.getCallee();
+		instruction.slot = slot;
+		instruction.count = tailCall.getArguments().size();
+	}
+
+	private void callStatement(FunctionCallStatement callStatement) {
+		FunctionDecl callee = callStatement.getCallee();
+		if (callee == null || callee.getParameters().size() != callStatement.getArguments().size()) {
+			// The statement fails before it evaluates anything
+			emit(Instruction.EXECUTE).statement = callStatement;
+			return;
+		}
+
+		Instruction instruction = call(null, callStatement, callStatement.getArguments());
+		instruction.function = callee;
+	}
+
+	private void ifStatement(IfStatement ifStmt) {
+		Expression condition = expression(ifStmt.getCondition());
+		Instruction branch = emit(Instruction.IF_FALSE);
+		branch.ifStatement = condition == ifStmt.getCondition() ? ifStmt : ifStmt.withCondition(condition);
+
+		statements(ifStmt.getThenBranch());
+		if (ifStmt.getElseBranch() == null) {
+			branch.target = instructions.size();
+			return;
+		}
+
+		Instruction jump = emit(Instruction.JUMP);
+		branch.target = instructions.size();
+		statements(ifStmt.getElseBranch());
+		jump.target = instructions.size();
+	}
+
+	// The condition goes after the body, so that each time round the loop
+	// takes one branch
+	private void whileStatement(WhileStatement whileStmt) {
+		Instruction jump = emit(Instruction.JUMP);
+		int body = instructions.size();
+		statements(whileStmt.getBody());
+
+		jump.target = instructions.size();
+		nextSlot = firstSlot;
+		Expression condition = expression(whileStmt.getCondition());
+		Instruction branch = emit(Instruction.WHILE_TRUE);
+		branch.whileStatement = condition == whileStmt.getCondition() ? whileStmt : whileStmt.withCondition(condition);
+		branch.target = body;
+	}
+
+	/*
+	 * Emits the instructions that make the calls in the expression, and
+	 * returns what to evaluate after them in its place.
+	 */
+	private Expression expression(Expression expr) {
+		if (!hasCall(expr)) {
+			return expr;
+		}
+
+		if (expr instanceof FunctionCallExpression) {
+			FunctionCallExpression call = (FunctionCallExpression) expr;
+			Instruction instruction = callExpression(call);
+			if (instruction == null) {
+				return call;
+			}
+			instruction.resultSlot = allocate(1);
+			return new SlotExpression(call, instruction.resultSlot, call.getResolvedType());
+		}
+
+		if (expr instanceof BinaryOpExpression) {
+			BinaryOpExpression binary = (BinaryOpExpression) expr;
+			Expression left = expression(binary.getLeft());
+			if (hasCall(binary.getRight())) {
+				left = evaluateFirst(left);
+			}
+			Expression right = expression(binary.getRight());
+			return binary.withOperands(left, right);
+		}
+
+		if (expr instanceof UnaryOpExpression) {
+			UnaryOpExpression unary = (UnaryOpExpression) expr;
+			return unary.withOperand(expression(unary.getOperand()));
+		}
+
+		throw new IllegalArgumentException("Expression with calls couldn't be compiled: " + expr);
+	}
+
+	/*
+	 * Emits the CALL for a call in an expression, or returns null if it
+	 * is to be left to the expression, as a call that fails before it
+	 * evaluates anything.
+	 */
+	private Instruction callExpression(FunctionCallExpression call) {
+		FunctionDecl callee = call.getCallee();
+		if (callee == null || callee.getParameters().size() != call.getArguments().size()) {
+			return null;
+		}
+		Instruction instruction = call(call, null, call.getArguments());
+		instruction.function = callee;
+		return instruction;
+	}
+
+	/*
+	 * Emits a CALL.  Arguments with no calls in them are left for the CALL
+	 * to evaluate straight into the callee's frame.
+	 */
+	private Instruction call(FunctionCallExpression call, FunctionCallStatement callStatement,
+			List<Expression> arguments) {
+		Instruction instruction;
+		if (hasCall(arguments)) {
+			int slot = arguments(call, callStatement, arguments);
+			instruction = emit(Instruction.CALL);
+			instruction.slot = slot;
+		} else {
+			instruction = emit(Instruction.CALL);
+			instruction.arguments = arguments.toArray(new Expression[0]);
+		}
+		instruction.call = call;
+		instruction.callStatement = callStatement;
+		instruction.count = arguments.size();
+		return instruction;
+	}
+
+	/*
+	 * Evaluates each argument into the slots for them, and returns the
+	 * first of those slots.
+	 */
+	private int arguments(FunctionCallExpression call, FunctionCallStatement callStatement,
+			List<Expression> arguments) {
+		int slot = allocate(arguments.size());
+		for (int i = 0; i < arguments.size(); i++) {
+			Expression argument = expression(arguments.get(i));
+			Instruction instruction = emit(Instruction.ARGUMENT);
+			instruction.call = call;
+			instruction.callStatement = callStatement;
+			instruction.expression = argument;
+			instruction.index = i;
+			instruction.slot = slot + i;
+		}
+		return slot;
+	}
+
+	/*
+	 * Evaluates an operand now, before the calls in the operands after it.
+	 */
+	private Expression evaluateFirst(Expression expr) {
+		if (expr instanceof SlotExpression) {
+			return expr;
+		}
+		Instruction instruction = emit(Instruction.EVALUATE);
+		instruction.expression = expr;
+		instruction.slot = allocate(1);
+		return new SlotExpression(expr, instruction.slot, expr.getResolvedType());
+	}
+
+	private int allocate(int count) {
+		int slot = nextSlot;
+		nextSlot += count;
+		frameSize = Math.max(frameSize, nextSlot);
+		return slot;
+	}
+
+	private Instruction emit(int op) {
+		Instruction instruction = new Instruction(op);
+		instructions.add(instruction);
+		return instruction;
+	}
+
+	private static boolean hasCall(List<Statement> stmts) {
+		if (stmts != null) {
+			for (Statement stmt : stmts) {
+				if (hasCall(stmt)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasCall(Iterable<Expression> exprs) {
+		for (Expression expr : exprs) {
+			if (hasCall(expr)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasCall(Statement stmt) {
+		if (stmt instanceof FunctionCallStatement) {
+			return true;
+		} else if (stmt instanceof AssignmentStatement) {
+			return hasCall(((AssignmentStatement) stmt).getExpression());
+		} else if (stmt instanceof PrintStatement) {
+			return hasCall(((PrintStatement) stmt).getExpression());
+		} else if (stmt instanceof ReturnStatement) {
+			Expression returnValue = ((ReturnStatement) stmt).getReturnValue();
+			return returnValue != null && hasCall(returnValue);
+		} else if (stmt instanceof IfStatement) {
+			IfStatement ifStmt = (IfStatement) stmt;
+			return hasCall(ifStmt.getCondition()) || hasCall(ifStmt.getThenBranch())
+					|| hasCall(ifStmt.getElseBranch());
+		} else if (stmt instanceof WhileStatement) {
+			WhileStatement whileStmt = (WhileStatement) stmt;
+			return hasCall(whileStmt.getCondition()) || hasCall(whileStmt.getBody());
+		}
+		return false;
+	}
+
+	private static boolean hasCall(Expression expr) {
+		if (expr instanceof FunctionCallExpression) {
+			return true;
+		} else if (expr instanceof BinaryOpExpression) {
+			BinaryOpExpression binary = (BinaryOpExpression) expr;
+			return hasCall(binary.getLeft()) || hasCall(binary.getRight());
+		} else if (expr instanceof UnaryOpExpression) {
+			return hasCall(((UnaryOpExpression) expr).getOperand());
+		}
+		return false;
+	}
+}
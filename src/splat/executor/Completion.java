@@ -0,0 +1,18 @@
+package splat.executor;
+
+/**
+ * How a statement finished.  NORMAL means execution goes on with the next
+ * statement.  RETURN means a return statement ran, and the enclosing
+ * statements stop at once and hand RETURN up to the call.  The function's
+ * return value is in its frame's return slot.
+ *
+ * TAIL_CALL is a RETURN whose value is the result of a call that the
+ * return statement left for the caller to make: the frame's return slot
+ * holds the call.  The caller runs it in place of the function that
+ * returned, so a chain of such calls runs in constant stack.
+ */
+public enum Completion {
+	NORMAL,
+	RETURN,
+	TAIL_CALL
+}
@@ -1,37 +1,81 @@
 package splat.executor;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import splat.parser.elements.*;
 
 public class Executor {
 
+	/**
+	 * The default memory budget for the explicit call stack, 64 MB.
+	 */
+	public static final long DEFAULT_STACK_BUDGET = 64L * 1024 * 1024;
+
 	private ProgramAST progAST;
+	private boolean explicitStack;
+	private long stackBudget = DEFAULT_STACK_BUDGET;
+	private int memoCapacity;
 	
 	private Map<String, FunctionDecl> funcMap;
-	private Map<String, Value> progVarMap;
+	private Value[] progFrame;
 	
 	public Executor(ProgramAST progAST) {
 		this.progAST = progAST;
 	}
+	
+	/**
+	 * Run the program on a StackMachine, which keeps calls on a stack in
+	 * the heap, so that deep recursion is limited by the stack budget
+	 * rather than by the size of the Java stack.
+	 */
+	public void setExplicitStack(boolean explicitStack) {
+		this.explicitStack = explicitStack;
+	}
+	
+	/**
+	 * The most memory, in bytes, that the explicit call stack may take.
+	 * A call that would need more fails with a StackExhaustedException.
+	 */
+	public void setStackBudget(long stackBudget) {
+		this.stackBudget = stackBudget;
+	}
+	
+	/**
+	 * Remember what calls to each pure function return, in a MemoTable of
+	 * about capacity entries, and give repeated calls the same value
+	 * without running the function again.  0, the default, memoizes
+	 * nothing.
+	 */
+	public void setMemoCapacity(int memoCapacity) {
+		this.memoCapacity = memoCapacity;
+	}
 
 	public void runProgram() throws ExecutionException {
 
-		// This sets the maps that will be needed for executing function 
-		// calls and storing the values of the program variables
+		// This sets the map that will be needed for binding function 
+		// calls and the frame that stores the values of the program
+		// variables
 		setMaps();
 		
-		try {
-			
-			// Go through and execute each of the statements
-			for (Statement stmt : progAST.getStmts()) {
-				stmt.execute(funcMap, progVarMap);
-			}
-			
-		// We should never have to catch this exception here, since the
-		// main program body cannot have returns
-		} catch (ReturnFromCall ex) {
+		// The semantic analyzer resolves what it analyzes, but a program
+		// from a cache skips analysis
+		resolve();
+		
+		setMemoTables();
+		
+		setCallDepth();
+		
+		// Go through and execute each of the statements.  They should
+		// never return, since the main program body cannot have returns
+		Completion completion;
+		if (explicitStack) {
+			completion = new StackMachine(stackBudget).run(progAST.getStmts(), progFrame);
+		} else {
+			completion = Statement.execute(progAST.getStmts(), progFrame);
+		}
+		if (completion != Completion.NORMAL) {
 			System.out.println("Internal error!!! The main program body "
 					+ "cannot have a return statement -- this should have "
 					+ "been caught during semantic analysis!");
@@ -44,7 +88,8 @@ public class Executor {
 
 	private void setMaps() {
 		funcMap = new HashMap<>();
-		progVarMap = new HashMap<>();
+		progFrame = new Value[progAST.getFrameSize()];
+		int slot = 0;
 	
 		for (Declaration decl : progAST.getDecls()) {
 			String label = decl.getLabel();
@@ -54,12 +99,12 @@ public class Executor {
 			} else if (decl instanceof VariableDecl) {
 				VariableDecl varDecl = (VariableDecl) decl;
 	
-				if (varDecl.getType().equals(Type.INTEGER)) {
-					progVarMap.put(label, new IntegerValue(0));
-				} else if (varDecl.getType().equals(Type.BOOLEAN)) {
-					progVarMap.put(label, new BooleanValue(false));
-				} else if (varDecl.getType().equals(Type.STRING)) {
-					progVarMap.put(label, new StringValue(""));
+				if (varDecl.getType() == Type.INTEGER) {
+					progFrame[slot++] = IntegerValue.of(0);
+				} else if (varDecl.getType() == Type.BOOLEAN) {
+					progFrame[slot++] = BooleanValue.FALSE;
+				} else if (varDecl.getType() == Type.STRING) {
+					progFrame[slot++] = new StringValue("");
 				} else {
 					throw new IllegalArgumentException("Variable type couldn't be resolved: " + varDecl.getType());
 				}
@@ -67,6 +112,66 @@ public class Executor {
 		}
 	}
 	
+	/*
+	 * Resolves whatever hasn't been yet.  Bodies that haven't been loaded
+	 * are resolved when they are.
+	 */
+	private void resolve() {
+		for (FunctionDecl funcDecl : funcMap.values()) {
+			if (funcDecl.isResolved()) {
+				continue;
+			}
+			if (funcDecl.isBodyLoaded()) {
+				funcDecl.resolve(funcDecl.getStmts(), funcMap);
+			} else {
+				FunctionDecl.BodyLoader loader = funcDecl.getBodyLoader();
+				funcDecl.setBodyLoader(() -> {
+					List<Statement> stmts = loader.load();
+					if (!funcDecl.isResolved()) {
+						funcDecl.resolve(stmts, funcMap);
+					}
+					return stmts;
+				});
+			}
+		}
+		
+		if (!progAST.isResolved()) {
+			progAST.resolve(funcMap);
+		}
+	}
+	
+	/*
+	 * Gives every function the CallDepth of this run, and the cost of a
+	 * call to it, which needs its body.  Bodies that haven't been loaded
+	 * get their cost when they are.
+	 */
+	private void setCallDepth() {
+		CallDepth callDepth = new CallDepth();
+		for (FunctionDecl funcDecl : funcMap.values()) {
+			funcDecl.setCallDepth(callDepth);
+			if (funcDecl.isBodyLoaded()) {
+				funcDecl.setCallCost(CallDepth.cost(funcDecl.getStmts()));
+			} else {
+				FunctionDecl.BodyLoader loader = funcDecl.getBodyLoader();
+				funcDecl.setBodyLoader(() -> {
+					List<Statement> stmts = loader.load();
+					funcDecl.setCallCost(CallDepth.cost(stmts));
+					return stmts;
+				});
+			}
+		}
+	}
+	
+	private void setMemoTables() {
+		for (FunctionDecl funcDecl : funcMap.values()) {
+			MemoTable memoTable = null;
+			if (memoCapacity > 0 && funcDecl.isPure()) {
+				memoTable = MemoTable.forFunction(funcDecl, memoCapacity);
+			}
+			funcDecl.setMemoTable(memoTable);
+		}
+	}
+	
 
 
 }
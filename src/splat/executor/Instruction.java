@@ -0,0 +1,97 @@
+package splat.executor;
+
+import splat.parser.elements.*;
+
+/**
+ * One step of a body compiled for the StackMachine.  Which of the fields
+ * are set depends on the op.
+ */
+final class Instruction {
+
+	// Runs statement, which has no calls in it, as the tree-walking
+	// executor would.  A return there ends the function
+	static final int EXECUTE = 0;
+
+	// Evaluates expression, which has no calls in it, into slot
+	static final int EVALUATE = 1;
+
+	// Evaluates expression as argument number index of the call (or call
+	// statement) into slot, and checks it
+	static final int ARGUMENT = 2;
+
+	// Makes the call, with its count arguments in the slots from slot on,
+	// or, if they have no calls in them, evaluating the arguments, and
+	// puts the value into resultSlot or has assignment assign it (neither
+	// for a call statement)
+	static final int CALL = 3;
+
+	// Makes the call, with its count arguments in the slots from slot on,
+	// in place of the function that is running
+	static final int TAIL_CALL = 4;
+
+	// Goes on at target
+	static final int JUMP = 5;
+
+	// Goes on at target if the condition of ifStatement is false
+	static final int IF_FALSE = 6;
+
+	// Goes on at target if the condition of whileStatement is true
+	static final int WHILE_TRUE = 7;
+
+	// Ends the function (or the program body) without a return
+	static final int END = 8;
+
+	final int op;
+
+	Statement statement;
+	Expression expression;
+	Expression[] arguments;
+	IfStatement ifStatement;
+	WhileStatement whileStatement;
+	FunctionCallExpression call;
+	FunctionCallStatement callStatement;
+	AssignmentStatement assignment;
+	FunctionDecl function;
+	int slot = -1;
+	int resultSlot = -1;
+	int count;
+	int index;
+	int target;
+
+	// The code of the function a call reaches, once it has been made
+	Code callee;
+
+	Instruction(int op) {
+		this.op = op;
+	}
+
+	void checkArgument(Value argumentValue) throws ExecutionException {
+		checkArgument(index, argumentValue);
+	}
+
+	/**
+	 * Evaluates arguments into the first slots of calleeFrame.
+	 */
+	void evaluateArguments(Value[] frame, Value[] calleeFrame) throws ExecutionException {
+		for (int i = 0; i < arguments.length; i++) {
+			Value argumentValue = arguments[i].evaluate(frame);
+			checkArgument(i, argumentValue);
+			calleeFrame[i] = argumentValue;
+		}
+	}
+
+	private void checkArgument(int index, Value argumentValue) throws ExecutionException {
+		if (call != null) {
+			call.checkArgument(index, argumentValue);
+		} else {
+			callStatement.checkArgument(index, argumentValue);
+		}
+	}
+
+	/**
+	 * The node that errors about the call are reported at.
+	 */
+	ASTElement site() {
+		return call != null ? call : callStatement;
+	}
+}
@@ -0,0 +1,130 @@
+package splat.executor;
+
+import java.util.List;
+
+import splat.parser.elements.*;
+
+/**
+ * The values a pure function (see FunctionDecl.isPure()) has returned,
+ * keyed by its arguments.  The Integer and Boolean arguments of a call are
+ * packed into one long, so looking a call up allocates nothing; functions
+ * whose parameters don't fit in 64 bits, such as those that take a String,
+ * don't get a table.
+ *
+ * The table has a fixed number of entries, and each key has one place in
+ * it, so an entry is evicted when another key that goes in the same place
+ * is stored.
+ */
+public final class MemoTable {
+
+	/**
+	 * The default number of entries in a table.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 12;
+
+	// For each parameter, whether it is an Integer rather than a Boolean
+	private final boolean[] integer;
+
+	private final long[] keys;
+	private final Value[] values;
+	private final int shift;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private MemoTable(boolean[] integer, int capacity) {
+		this.integer = integer;
+		int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+		this.keys = new long[size];
+		this.values = new Value[size];
+		this.shift = 64 - Integer.numberOfTrailingZeros(size);
+	}
+
+	/**
+	 * A table of about capacity entries (rounded up to a power of two) for
+	 * a function, or null if the function returns nothing or its arguments
+	 * can't be packed into a key.
+	 */
+	public static MemoTable forFunction(FunctionDecl function, int capacity) {
+		if (function.getReturnType() == Type.VOID) {
+			return null;
+		}
+
+		List<VariableDecl> parameters = function.getParameters();
+		boolean[] integer = new boolean[parameters.size()];
+		int bits = 0;
+		for (int i = 0; i < integer.length; i++) {
+			Type type = parameters.get(i).getType();
+			if (type == Type.INTEGER) {
+				integer[i] = true;
+				bits += 32;
+			} else if (type == Type.BOOLEAN) {
+				bits += 1;
+			} else {
+				return null;
+			}
+		}
+		return bits <= 64 ? new MemoTable(integer, capacity) : null;
+	}
+
+	/**
+	 * The key for the arguments in the first slots of a callee's frame,
+	 * which have been checked against the parameter types.
+	 */
+	public long key(Value[] calleeFrame) {
+		long key = 0;
+		for (int i = 0; i < integer.length; i++) {
+			if (integer[i]) {
+				key = (key << 32) | (((IntegerValue) calleeFrame[i]).getValue() & 0xFFFFFFFFL);
+			} else {
+				key = (key << 1) | (((BooleanValue) calleeFrame[i]).getValue() ? 1 : 0);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * The value stored for the key, or null.
+	 */
+	public Value get(long key) {
+		int index = index(key);
+		Value value = values[index];
+		if (value != null && keys[index] == key) {
+			hits++;
+			return value;
+		}
+		misses++;
+		return null;
+	}
+
+	public void put(long key, Value value) {
+		int index = index(key);
+		if (values[index] != null && keys[index] != key) {
+			evictions++;
+		}
+		keys[index] = key;
+		values[index] = value;
+	}
+
+	// Fibonacci hashing, so that keys that differ in any bits spread out
+	private int index(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	public int getCapacity() {
+		return values.length;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,23 @@
+package splat.executor;
+
+import splat.parser.elements.ASTElement;
+
+/**
+ * An ExecutionException for a call that would go deeper than the run
+ * allows: past the stack budget of the explicit stack (see
+ * Executor.setStackBudget()), or past CallDepth.LIMIT on the Java stack.
+ * Either way it is reported at the call.  Unlike other failures, it
+ * depends on how the program was run, so the same program may finish
+ * when run with the other executor or a larger budget.
+ */
+public class StackExhaustedException extends ExecutionException {
+
+	public StackExhaustedException(String msg, ASTElement elem) {
+		super(msg, elem);
+	}
+	
+	public StackExhaustedException(String msg, int line, int column) {
+		super(msg, line, column);
+	}
+	
+}
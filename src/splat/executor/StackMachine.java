@@ -0,0 +1,259 @@
+package splat.executor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.parser.elements.*;
+
+/**
+ * Runs the program body with the calls kept on a stack of its own, in
+ * the heap, instead of on the Java stack.  Each function body is compiled
+ * into Code (see CodeGenerator) the first time it is called.  A call
+ * saves where the caller was and carries on with the callee, so the Java
+ * stack stays the same depth however deep the program recurses.
+ *
+ * How deep it can go is set by a budget for the memory the stack takes,
+ * counted as an estimate per call of its frame and bookkeeping.  A call
+ * that would go over the budget fails with a StackExhaustedException.
+ */
+final class StackMachine {
+
+	// The estimated size of a frame slot, and of the rest of a call
+	private static final int SLOT_BYTES = 8;
+	private static final int CALL_BYTES = 64;
+
+	private final long budget;
+	private final Map<FunctionDecl, Code> codes = new HashMap<>();
+
+	/*
+	 * A call that hasn't returned yet, linked to the one that made it: its
+	 * caller goes on after the CALL at pc - 1 of code, with frame.  Each
+	 * call gets a new one, which costs less than keeping them to reuse.
+	 */
+	private static final class Activation {
+		final Activation caller;
+		final Code code;
+		final int pc;
+		final Value[] frame;
+
+		// The call that checks what is returned: the CALL's own, until a
+		// tail call takes its place
+		FunctionCallExpression call;
+
+		// Where what is returned is remembered, if the callee is memoized
+		final MemoTable memoTable;
+		final long key;
+
+		Activation(Activation caller, Code code, int pc, Value[] frame, FunctionCallExpression call,
+				MemoTable memoTable, long key) {
+			this.caller = caller;
+			this.code = code;
+			this.pc = pc;
+			this.frame = frame;
+			this.call = call;
+			this.memoTable = memoTable;
+			this.key = key;
+		}
+	}
+
+	StackMachine(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Runs the program body against the program variables in progFrame,
+	 * and returns how it completed.
+	 */
+	Completion run(List<Statement> stmts, Value[] progFrame) throws ExecutionException {
+		Code code = CodeGenerator.generate(null, stmts, progFrame.length);
+		Value[] frame = Arrays.copyOf(progFrame, code.frameSize);
+		Instruction[] instructions = code.instructions;
+		int pc = 0;
+		Activation activation = null;
+		long used = size(frame.length);
+
+		for (;;) {
+			Instruction instruction = instructions[pc++];
+			Completion completion;
+			switch (instruction.op) {
+			case Instruction.EXECUTE:
+				completion = instruction.statement.execute(frame);
+				if (completion == Completion.NORMAL) {
+					continue;
+				}
+				break;
+
+			case Instruction.EVALUATE:
+				frame[instruction.slot] = instruction.expression.evaluate(frame);
+				continue;
+
+			case Instruction.ARGUMENT: {
+				Value argumentValue = instruction.expression.evaluate(frame);
+				instruction.checkArgument(argumentValue);
+				frame[instruction.slot] = argumentValue;
+				continue;
+			}
+
+			case Instruction.CALL: {
+				Code callee = instruction.callee;
+				Value[] calleeFrame;
+				if (instruction.arguments == null) {
+					callee = callee(instruction);
+					calleeFrame = new Value[callee.frameSize];
+					System.arraycopy(frame, instruction.slot, calleeFrame, 0, instruction.count);
+				} else if (callee != null) {
+					calleeFrame = new Value[callee.frameSize];
+					instruction.evaluateArguments(frame, calleeFrame);
+				} else {
+					// The size of the callee's frame is only known once its
+					// body is compiled, which waits until the arguments
+					// have been evaluated, as loading it did before
+					Value[] arguments = new Value[instruction.count];
+					instruction.evaluateArguments(frame, arguments);
+					callee = callee(instruction);
+					calleeFrame = Arrays.copyOf(arguments, callee.frameSize);
+				}
+
+				// A pure function gives the same value for the same
+				// arguments.  Call statements don't use the value, and are
+				// always made, as in the tree-walking executor
+				MemoTable memoTable = instruction.call != null ? instruction.function.getMemoTable() : null;
+				long key = 0;
+				if (memoTable != null) {
+					key = memoTable.key(calleeFrame);
+					Value memoized = memoTable.get(key);
+					if (memoized != null) {
+						if (instruction.assignment != null) {
+							instruction.assignment.assign(frame, memoized);
+						} else {
+							frame[instruction.resultSlot] = memoized;
+						}
+						continue;
+					}
+				}
+
+				long calleeSize = size(callee.frameSize);
+				if (used + calleeSize > budget) {
+					throw budgetExceeded(instruction);
+				}
+
+				activation = new Activation(activation, code, pc, frame, instruction.call, memoTable, key);
+				used += calleeSize;
+
+				code = callee;
+				instructions = code.instructions;
+				frame = calleeFrame;
+				pc = 0;
+				continue;
+			}
+
+			case Instruction.TAIL_CALL: {
+				// The call that started the chain returns what the last
+				// tail call returns, after that call's checks
+				activation.call = instruction.call;
+
+				Code callee = callee(instruction);
+				int count = instruction.count;
+				if (callee == code) {
+					System.arraycopy(frame, instruction.slot, frame, 0, count);
+					Arrays.fill(frame, count, frame.length, null);
+				} else {
+					long growth = size(callee.frameSize) - size(frame.length);
+					if (used + growth > budget) {
+						throw budgetExceeded(instruction);
+					}
+					Value[] calleeFrame = new Value[callee.frameSize];
+					System.arraycopy(frame, instruction.slot, calleeFrame, 0, count);
+					used += growth;
+
+					code = callee;
+					instructions = code.instructions;
+					frame = calleeFrame;
+				}
+				pc = 0;
+				continue;
+			}
+
+			case Instruction.JUMP:
+				pc = instruction.target;
+				continue;
+
+			case Instruction.IF_FALSE:
+				if (!instruction.ifStatement.test(frame)) {
+					pc = instruction.target;
+				}
+				continue;
+
+			case Instruction.WHILE_TRUE:
+				if (instruction.whileStatement.test(frame)) {
+					pc = instruction.target;
+				}
+				continue;
+
+			default:
+				completion = Completion.NORMAL;
+				break;
+			}
+
+			// The running body is done.  For the program body, so is the
+			// program; otherwise its caller goes on with what it returned
+			if (activation == null) {
+				return completion;
+			}
+			used -= size(frame.length);
+			Value[] calleeFrame = frame;
+			code = activation.code;
+			instructions = code.instructions;
+			frame = activation.frame;
+			pc = activation.pc;
+
+			Instruction call = instructions[pc - 1];
+			if (call.callStatement != null) {
+				call.callStatement.checkReturned(activation.call, completion, calleeFrame);
+			} else {
+				Value returnValue = activation.call.returned(completion, calleeFrame);
+				if (activation.memoTable != null) {
+					activation.memoTable.put(activation.key, returnValue);
+				}
+				if (call.assignment != null) {
+					call.assignment.assign(frame, returnValue);
+				} else {
+					frame[call.resultSlot] = returnValue;
+				}
+			}
+			activation = activation.caller;
+		}
+	}
+
+	/*
+	 * The code of the function the call reaches, compiled the first time
+	 * it is needed.  Loading the body, if it hasn't been yet, may fail
+	 * with a BodyLoadException, as it does when the call is made in the
+	 * tree-walking executor.
+	 */
+	private Code callee(Instruction instruction) {
+		Code callee = instruction.callee;
+		if (callee == null) {
+			FunctionDecl function = instruction.function;
+			callee = codes.get(function);
+			if (callee == null) {
+				callee = CodeGenerator.generate(function, function.getStmts(), function.getFrameSize());
+				codes.put(function, callee);
+			}
+			instruction.callee = callee;
+		}
+		return callee;
+	}
+
+	private StackExhaustedException budgetExceeded(Instruction instruction) {
+		ASTElement site = instruction.site();
+		return new StackExhaustedException("Recursion too deep: the call stack would take more than "
+				+ budget + " bytes", site.getLine(), site.getColumn());
+	}
+
+	private static long size(int slots) {
+		return CALL_BYTES + (long) slots * SLOT_BYTES;
+	}
+}
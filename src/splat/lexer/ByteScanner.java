@@ -0,0 +1,211 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds where runs of a given kind of byte end in the mapped source, for
+ * the ASCII path of the Lexer.  Each method returns the index of the
+ * first byte at or after from (and before end) that doesn't belong to the
+ * run, or end if they all do.
+ *
+ * SCALAR looks at one byte at a time.  SWAR reads eight bytes at a time
+ * into a long and tests all of them at once with plain arithmetic ("SIMD
+ * within a register"), then jumps straight to the first byte that ends
+ * the run.  Both give exactly the same answers.
+ */
+abstract class ByteScanner {
+
+    static final ByteScanner SCALAR = new Scalar();
+    static final ByteScanner SWAR = new Swar();
+
+    /**
+     * Finds the first '\n', '\r' or non-ASCII byte.  Unlike the others,
+     * this may be used on bytes that aren't known to be ASCII.
+     */
+    abstract int lineBreakOrNonAscii(ByteBuffer src, int from, int end);
+
+    /**
+     * Skips ASCII whitespace, i.e. the bytes Character.isWhitespace()
+     * accepts.  The bytes must be ASCII.
+     */
+    abstract int skipSpaces(ByteBuffer src, int from, int end);
+
+    /**
+     * Skips the digits 0-9.  The bytes must be ASCII.
+     */
+    abstract int skipDigits(ByteBuffer src, int from, int end);
+
+    /**
+     * Skips ASCII letters, digits and underscores.  The bytes must be ASCII.
+     */
+    abstract int skipWord(ByteBuffer src, int from, int end);
+
+    /**
+     * Finds the first double quote.  The bytes must be ASCII.
+     */
+    abstract int findQuote(ByteBuffer src, int from, int end);
+
+    private static boolean isSpace(byte b) {
+        return (b >= 9 && b <= 13) || (b >= 28 && b <= 32);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWordChar(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || b == '_';
+    }
+
+    private static class Scalar extends ByteScanner {
+
+        @Override
+        int lineBreakOrNonAscii(ByteBuffer src, int from, int end) {
+            while (from < end) {
+                byte b = src.get(from);
+                if (b == '\n' || b == '\r' || b < 0) {
+                    break;
+                }
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        int skipSpaces(ByteBuffer src, int from, int end) {
+            while (from < end && isSpace(src.get(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        int skipDigits(ByteBuffer src, int from, int end) {
+            while (from < end && isDigit(src.get(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        int skipWord(ByteBuffer src, int from, int end) {
+            while (from < end && isWordChar(src.get(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        int findQuote(ByteBuffer src, int from, int end) {
+            while (from < end && src.get(from) != '"') {
+                from++;
+            }
+            return from;
+        }
+    }
+
+    /*
+     * Each method builds a mask with the high bit of a byte set for every
+     * byte that ends the run, and none set anywhere else.  The tests are
+     * exact for every byte, not just the first match, since no step can
+     * carry from one byte into the next: for bytes below 0x80, adding at
+     * most 0x80 stays below 0x100.
+     */
+    private static class Swar extends ByteScanner {
+
+        private static final long ONES = 0x0101010101010101L;
+        private static final long HIGH = 0x8080808080808080L;
+        private static final long LOW = 0x7F7F7F7F7F7F7F7FL;
+
+        // High bit set in every byte that is zero
+        private static long zeros(long v) {
+            return ~(((v & LOW) + LOW) | v | LOW);
+        }
+
+        // High bit set in every byte equal to b
+        private static long equal(long v, int b) {
+            return zeros(v ^ (ONES * b));
+        }
+
+        // High bit set in every byte from lo to hi, for ASCII bytes only
+        private static long inRange(long v, int lo, int hi) {
+            long atLeastLo = v + ONES * (0x80 - lo);
+            long aboveHi = v + ONES * (0x7F - hi);
+            return atLeastLo & ~aboveHi & HIGH;
+        }
+
+        // Index within the word of the first byte with its high bit set
+        private static int first(ByteBuffer src, long mask) {
+            return src.order() == ByteOrder.LITTLE_ENDIAN
+                    ? Long.numberOfTrailingZeros(mask) >>> 3
+                    : Long.numberOfLeadingZeros(mask) >>> 3;
+        }
+
+        @Override
+        int lineBreakOrNonAscii(ByteBuffer src, int from, int end) {
+            while (from + 8 <= end) {
+                long v = src.getLong(from);
+                long stop = equal(v, '\n') | equal(v, '\r') | (v & HIGH);
+                if (stop != 0) {
+                    return from + first(src, stop);
+                }
+                from += 8;
+            }
+            return SCALAR.lineBreakOrNonAscii(src, from, end);
+        }
+
+        @Override
+        int skipSpaces(ByteBuffer src, int from, int end) {
+            while (from + 8 <= end) {
+                long v = src.getLong(from);
+                long stop = ~(inRange(v, 9, 13) | inRange(v, 28, 32)) & HIGH;
+                if (stop != 0) {
+                    return from + first(src, stop);
+                }
+                from += 8;
+            }
+            return SCALAR.skipSpaces(src, from, end);
+        }
+
+        @Override
+        int skipDigits(ByteBuffer src, int from, int end) {
+            while (from + 8 <= end) {
+                long v = src.getLong(from);
+                long stop = ~inRange(v, '0', '9') & HIGH;
+                if (stop != 0) {
+                    return from + first(src, stop);
+                }
+                from += 8;
+            }
+            return SCALAR.skipDigits(src, from, end);
+        }
+
+        @Override
+        int skipWord(ByteBuffer src, int from, int end) {
+            while (from + 8 <= end) {
+                long v = src.getLong(from);
+                long word = inRange(v, '0', '9') | inRange(v, 'A', 'Z') | inRange(v, 'a', 'z')
+                        | inRange(v, '_', '_');
+                long stop = ~word & HIGH;
+                if (stop != 0) {
+                    return from + first(src, stop);
+                }
+                from += 8;
+            }
+            return SCALAR.skipWord(src, from, end);
+        }
+
+        @Override
+        int findQuote(ByteBuffer src, int from, int end) {
+            while (from + 8 <= end) {
+                long stop = equal(src.getLong(from), '"');
+                if (stop != 0) {
+                    return from + first(src, stop);
+                }
+                from += 8;
+            }
+            return SCALAR.findQuote(src, from, end);
+        }
+    }
+}
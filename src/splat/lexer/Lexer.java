@@ -5,174 +5,491 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 
-public class Lexer {
+public class Lexer implements TokenSource {
 	private File progFile;
+	private boolean memoryMapped;
+
+	// Scanning state, so that tokens can be produced one at a time
+	private boolean opened;
+	private boolean finished;
+	private int lineNum;
+
+	// Reader mode, and mapped lines that contain non-ASCII characters
+	private BufferedReader reader;
+	private String line;
+	private int columnNum;
+
+	// Memory-mapped mode
+	private ByteBuffer src;
+	private int limit;
+	private int nextLineStart;
+	private int lineStart;
+	private int lineEnd;
+	private int pos;
+	private boolean asciiLine;
+	private ByteScanner scanner = ByteScanner.SCALAR;
+
+	// Set when lexing one region of a shared mapping for ParallelLexer
+	private boolean region;
+
+	// Tokens lexed ahead of the parser when the Lexer is used as a TokenSource
+	private TokenWindow window;
+	private LexException pending;
 
 	public Lexer(File progFile) {
+		this(progFile, false);
+	}
+
+	/**
+	 * When memoryMapped is set, the source is mapped with FileChannel.map
+	 * and scanned as raw UTF-8 bytes instead of being read line by line
+	 * through a Reader.  Both modes produce the same tokens.
+	 */
+	public Lexer(File progFile, boolean memoryMapped) {
 		this.progFile = progFile;
+		this.memoryMapped = memoryMapped;
 	}
 
-    private static final Set<String> keywords = new HashSet<>();
-    
-    static {
-        keywords.add("program");
-        keywords.add("begin");
-        keywords.add("end");
-        keywords.add("if");
-        keywords.add("then");
-        keywords.add("else");
-        keywords.add("while");
-        keywords.add("do");
-        keywords.add("print");
-        keywords.add("print_line");
-        keywords.add("return");
-    }
+	/**
+	 * Lexes a source that has already been read into memory, as raw UTF-8
+	 * bytes the way a memory-mapped one is.  The tokens are the same as
+	 * from the file.  Sets the buffer's byte order.
+	 */
+	public Lexer(ByteBuffer source) {
+		this.src = source.order(ByteOrder.nativeOrder());
+		this.limit = source.limit();
+		this.memoryMapped = true;
+		this.opened = true;
+	}
 
-    private boolean isKeyword(String word) {
-        return keywords.contains(word);
-    }
+	/**
+	 * In memory-mapped mode, find the ends of lines, whitespace, words,
+	 * numbers and strings eight bytes at a time instead of one byte at a
+	 * time.  The tokens are the same either way; only sources with runs
+	 * longer than eight bytes lex faster.
+	 */
+	public void setSwarScanning(boolean swar) {
+		scanner = swar ? ByteScanner.SWAR : ByteScanner.SCALAR;
+	}
 
-    private static final Set<String> operators = new HashSet<>();
+	/*
+	 * Lexes the bytes from start to end of an already mapped source, which
+	 * must begin at the start of a line.  Line numbers count from the start
+	 * of the region, and no EOF token is produced at its end.
+	 */
+	Lexer(ByteBuffer src, int start, int end, ByteScanner scanner) {
+		this.src = src;
+		this.nextLineStart = start;
+		this.limit = end;
+		this.memoryMapped = true;
+		this.opened = true;
+		this.region = true;
+		this.scanner = scanner;
+	}
 
+	public TokenBuffer tokenize() throws LexException {
+		open();
+		TokenBuffer tokens = new TokenBuffer(src);
+		while (lexNext(tokens)) {
+			// keep going until EOF
+		}
+		return tokens;
+	}
 
-	static {
-        operators.add("+");
-        operators.add("-");
-        operators.add("*");
-        operators.add("/");
-        operators.add("%");
-		operators.add(":");
-        operators.add(">");
-        operators.add("<");
-		// operators.add("=");
-        operators.add(">=");
-        operators.add("<=");
-        operators.add("==");
-		operators.add(":=");
-        operators.add("and");
-        operators.add("or");
-        operators.add("not");
-    }
-
-
-    private boolean isOperator(String op) {
-        return operators.contains(op);
-    }
-    
-    private boolean isOperator(char op) {
-        return isOperator(String.valueOf(op));
-    }
-
-	private String extractOperator(String line, int columnNum) {
-		if (columnNum < line.length() - 1) {
-			String twoCharOp = line.substring(columnNum, columnNum + 2); 
-			if (isOperator(twoCharOp)) {
-				return twoCharOp;
-			}
+	/**
+	 * Lexes the whole region into the given sink and returns the number of
+	 * lines in it.  Only for Lexers created over a region.
+	 */
+	int lexRegion(TokenSink tokens) throws LexException {
+		while (lexNext(tokens)) {
+			// keep going until the end of the region
 		}
-		
+		return lineNum;
+	}
+
+	/**
+	 * Opens the source if needed and returns its mapping, or null when it
+	 * is read through a Reader.  Chunks passed to lexChunk() must be
+	 * created over this source.
+	 */
+	ByteBuffer source() throws LexException {
+		open();
+		return src;
+	}
 
-		char singleCharOp = line.charAt(columnNum);
-		// System.out.println(singleCharOp);
-		if (isOperator(singleCharOp)) {
-			return String.valueOf(singleCharOp);
+	/**
+	 * Lexes up to max tokens into the given chunk.  Returns false once the
+	 * EOF token has been produced.
+	 */
+	boolean lexChunk(TokenBuffer chunk, int max) throws LexException {
+		open();
+		for (int i = 0; i < max; i++) {
+			if (!lexNext(chunk)) {
+				return false;
+			}
 		}
-		return null;
+		return !finished;
 	}
 
-	public List<Token> tokenize() throws LexException {
-		List<Token> tokens = new ArrayList<>();
-		try {
-            BufferedReader reader = new BufferedReader(new FileReader(progFile));
-			String line;
-			int lineNum = 0;
-
-			while ((line = reader.readLine()) != null) {
-				lineNum++;
-				int columnNum = 0;
-
-				while (columnNum < line.length()) {
-					char currentChar = line.charAt(columnNum);
-					if (Character.isWhitespace(currentChar)) {
-						columnNum++;
-						continue;
-					} else if (Character.isDigit(currentChar)) {
-						StringBuilder number = new StringBuilder();
-						while (columnNum < line.length() && Character.isDigit(line.charAt(columnNum))) {
-							number.append(line.charAt(columnNum));
-							columnNum++;
-						}
-						tokens.add(new Token("int-literal", number.toString(), lineNum, columnNum));
-					} else if (Character.isLetter(currentChar)) {
-						StringBuilder word = new StringBuilder();
-						while (columnNum < line.length() && (Character.isLetterOrDigit(line.charAt(columnNum)) || line.charAt(columnNum) == '_')) {
-							word.append(line.charAt(columnNum));
-							columnNum++;
-						}
-
-						String lexeme = word.toString();
-						if (lexeme.equals("true") || lexeme.equals("false")) {
-							tokens.add(new Token("bool-literal", lexeme, lineNum, columnNum));
-						} else if (isKeyword(lexeme)) {
-							tokens.add(new Token(lexeme, lexeme, lineNum, columnNum));
-						} else if (isOperator(lexeme)) {
-							tokens.add(new Token("operator", lexeme, lineNum, columnNum));
-						} else {
-							tokens.add(new Token("label", lexeme, lineNum, columnNum));
-						}
-					} else if (currentChar == '"') {
-						StringBuilder stringLiteral = new StringBuilder();
-						int startColumn = columnNum;  
-						columnNum++;  
-						
-
-						boolean stringClosed = false;
-						while (columnNum < line.length()) {
-							char nextChar = line.charAt(columnNum);
-							if (nextChar == '"') {
-								stringClosed = true;
-								columnNum++;  
-								break;
-							} else {
-								stringLiteral.append(nextChar);
-								columnNum++;
-							}
-						}
-						
-						if (!stringClosed) {
-							throw new LexException("String literal wasn't closed properly", lineNum, startColumn);
-						}
-				
-						tokens.add(new Token("string-literal", stringLiteral.toString(), lineNum, startColumn));
-					} else if (isOperator(currentChar) || currentChar == '=') {
-						String operator = extractOperator(line, columnNum);
-						if (operator == null) {
-							throw new LexException("Invalid character", lineNum, columnNum);
-						}
-						tokens.add(new Token("operator", operator, lineNum, columnNum));
-						columnNum += operator.length();
-					} else if (currentChar == '(' || currentChar == ')' || currentChar == '{' || currentChar == '}' || currentChar == ';' || currentChar == ',' || currentChar == '_') {
-						tokens.add(new Token("punctuation", String.valueOf(currentChar), lineNum, columnNum));
-						columnNum++;  
-					} else {
-						throw new LexException("Invalid character", lineNum, columnNum);
-					}
+	private void open() throws LexException {
+		if (opened) {
+			return;
+		}
+		opened = true;
+
+		if (memoryMapped) {
+			try (FileChannel channel = FileChannel.open(progFile.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size <= Integer.MAX_VALUE) {
+					src = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+					// Lets ByteScanner.SWAR read words in the cheapest order
+					src.order(ByteOrder.nativeOrder());
+					limit = (int) size;
+					return;
 				}
+				// A single mapping cannot go past 2GB, so use the reader instead
+				memoryMapped = false;
+			} catch (NoSuchFileException e) {
+				throw new LexException("File not found: " + progFile.getName(), 0, 0);
+			} catch (IOException e) {
+				throw new LexException("I/O error: " + e.getMessage(), 0, 0);
 			}
-			tokens.add(new Token("EOF", "", lineNum + 1, 0));
+		}
+
+		try {
+            reader = new BufferedReader(new FileReader(progFile, StandardCharsets.UTF_8));
 		} catch (FileNotFoundException e) {
             throw new LexException("File not found: " + progFile.getName(), 0, 0);
         } catch (IOException e) {
             throw new LexException("I/O error: " + e.getMessage(), 0, 0);
         }
-		
-		return tokens;
+	}
+
+	/**
+	 * Lexes the next token into the given sink.  Returns false, without
+	 * adding anything, once the EOF token has already been produced.
+	 */
+	private boolean lexNext(TokenSink tokens) throws LexException {
+		if (finished) {
+			return false;
+		}
+
+		try {
+			while (true) {
+				if (line != null) {
+					if (nextTokenInLine(tokens)) {
+						return true;
+					}
+				} else if (asciiLine) {
+					if (nextTokenInAsciiLine(tokens)) {
+						return true;
+					}
+				}
+
+				if (!nextLine()) {
+					finished = true;
+					if (region) {
+						return false;
+					}
+					tokens.add(TokenKind.EOF, lineNum + 1, 0);
+					if (reader != null) {
+						reader.close();
+					}
+					return true;
+				}
+			}
+		} catch (IOException e) {
+            throw new LexException("I/O error: " + e.getMessage(), 0, 0);
+        }
+	}
+
+	/*
+	 * Moves on to the next line of the source.  Line breaks follow
+	 * BufferedReader.readLine() (\n, \r or \r\n) in both modes, so line
+	 * numbers always line up.
+	 * 
+	 * In memory-mapped mode, lines that are pure ASCII are scanned byte by
+	 * byte, where a byte offset is also the column; any line holding a
+	 * non-ASCII byte is decoded and scanned like a line from the reader, so
+	 * Unicode letters, digits and whitespace behave exactly as before.
+	 */
+	private boolean nextLine() throws IOException {
+		line = null;
+		asciiLine = false;
+
+		if (!memoryMapped) {
+			line = reader.readLine();
+			if (line == null) {
+				return false;
+			}
+			lineNum++;
+			columnNum = 0;
+			return true;
+		}
+
+		if (nextLineStart >= limit) {
+			return false;
+		}
+		lineNum++;
+
+		int end = scanner.lineBreakOrNonAscii(src, nextLineStart, limit);
+		boolean ascii = true;
+		while (end < limit) {
+			byte b = src.get(end);
+			if (b == '\n' || b == '\r') {
+				break;
+			}
+			ascii = false;
+			end = scanner.lineBreakOrNonAscii(src, end + 1, limit);
+		}
+
+		lineStart = nextLineStart;
+		lineEnd = end;
+		if (end < limit) {
+			if (src.get(end) == '\r' && end + 1 < limit && src.get(end + 1) == '\n') {
+				end += 2;
+			} else {
+				end++;
+			}
+		}
+		nextLineStart = end;
+
+		if (ascii) {
+			asciiLine = true;
+			pos = lineStart;
+		} else {
+			byte[] bytes = new byte[lineEnd - lineStart];
+			src.get(lineStart, bytes);
+			line = new String(bytes, StandardCharsets.UTF_8);
+			columnNum = 0;
+		}
+		return true;
+	}
+
+	/*
+	 * Lexes the next token of the current line.  Returns false if the rest
+	 * of the line is only whitespace.
+	 */
+	private boolean nextTokenInLine(TokenSink tokens) throws LexException {
+		while (columnNum < line.length()) {
+			char currentChar = line.charAt(columnNum);
+			if (Character.isWhitespace(currentChar)) {
+				columnNum++;
+				continue;
+			} else if (Character.isDigit(currentChar)) {
+				int start = columnNum;
+				while (columnNum < line.length() && Character.isDigit(line.charAt(columnNum))) {
+					columnNum++;
+				}
+				tokens.add(TokenKind.INT_LITERAL, line.substring(start, columnNum), lineNum, columnNum);
+			} else if (Character.isLetter(currentChar)) {
+				int start = columnNum;
+				while (columnNum < line.length() && (Character.isLetterOrDigit(line.charAt(columnNum)) || line.charAt(columnNum) == '_')) {
+					columnNum++;
+				}
+
+				TokenKind kind = TokenRecognizer.word(line, start, columnNum);
+				if (kind != null) {
+					tokens.add(kind, lineNum, columnNum);
+				} else {
+					tokens.add(TokenKind.LABEL, line.substring(start, columnNum), lineNum, columnNum);
+				}
+			} else if (currentChar == '"') {
+				int startColumn = columnNum;
+				int endQuote = line.indexOf('"', columnNum + 1);
+
+				if (endQuote < 0) {
+					throw new LexException("String literal wasn't closed properly", lineNum, startColumn);
+				}
+
+				tokens.add(TokenKind.STRING_LITERAL, line.substring(startColumn + 1, endQuote), lineNum, startColumn);
+				columnNum = endQuote + 1;
+			} else {
+				char next = columnNum + 1 < line.length() ? line.charAt(columnNum + 1) : 0;
+				TokenKind kind = TokenRecognizer.symbol(currentChar, next);
+				if (kind == null) {
+					throw new LexException("Invalid character", lineNum, columnNum);
+				}
+				tokens.add(kind, lineNum, columnNum);
+				columnNum += kind.getText().length();
+			}
+			return true;
+		}
+		return false;
+	}
+
+	// ASCII character classes, matching the Character.isXxx checks used by
+	// nextTokenInLine() for code points below 128
+	private static final byte OTHER = 0;
+	private static final byte SPACE = 1;
+	private static final byte DIGIT = 2;
+	private static final byte LETTER = 3;
+
+	private static final byte[] asciiClass = new byte[128];
+
+	static {
+		for (int c = 0; c < 128; c++) {
+			if (Character.isWhitespace(c)) {
+				asciiClass[c] = SPACE;
+			} else if (c >= '0' && c <= '9') {
+				asciiClass[c] = DIGIT;
+			} else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+				asciiClass[c] = LETTER;
+			}
+		}
+	}
+
+	/*
+	 * The same as nextTokenInLine(), for an ASCII line of the mapped source.
+	 */
+	private boolean nextTokenInAsciiLine(TokenSink tokens) throws LexException {
+		while (pos < lineEnd) {
+			byte currentChar = src.get(pos);
+			byte charClass = asciiClass[currentChar];
+
+			if (charClass == SPACE) {
+				pos = scanner.skipSpaces(src, pos, lineEnd);
+				continue;
+			} else if (charClass == DIGIT) {
+				int start = pos;
+				pos = scanner.skipDigits(src, pos, lineEnd);
+				tokens.add(TokenKind.INT_LITERAL, start, pos - start, lineNum, pos - lineStart);
+			} else if (charClass == LETTER) {
+				int start = pos;
+				pos = scanner.skipWord(src, pos, lineEnd);
+
+				int columnNum = pos - lineStart;
+				TokenKind kind = TokenRecognizer.word(src, start, pos);
+				if (kind == null) {
+					tokens.add(TokenKind.LABEL, start, pos - start, lineNum, columnNum);
+				} else {
+					tokens.add(kind, lineNum, columnNum);
+				}
+			} else if (currentChar == '"') {
+				int startColumn = pos - lineStart;
+				int start = ++pos;
+				pos = scanner.findQuote(src, pos, lineEnd);
+
+				if (pos == lineEnd) {
+					throw new LexException("String literal wasn't closed properly", lineNum, startColumn);
+				}
+
+				tokens.add(TokenKind.STRING_LITERAL, start, pos - start, lineNum, startColumn);
+				pos++;
+			} else {
+				byte next = pos + 1 < lineEnd ? src.get(pos + 1) : 0;
+				TokenKind kind = TokenRecognizer.symbol(currentChar, next);
+				if (kind == null) {
+					throw new LexException("Invalid character", lineNum, pos - lineStart);
+				}
+				tokens.add(kind, lineNum, pos - lineStart);
+				pos += kind.getText().length();
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * TokenSource implementation.  Tokens are lexed on demand into a small
+	 * window that only ever holds the tokens the parser is looking ahead
+	 * at, so the whole token stream never has to be in memory at once.
+	 * 
+	 * A LexException is held back until finish() is called: reading past
+	 * the last token lexed before the error behaves like reading past the
+	 * end of the file.
+	 */
+
+	private boolean fill(int count) {
+		if (window == null) {
+			try {
+				open();
+			} catch (LexException e) {
+				pending = e;
+			}
+			window = new TokenWindow(src);
+		}
+		while (window.size() < count && pending == null) {
+			try {
+				if (!lexNext(window)) {
+					break;
+				}
+			} catch (LexException e) {
+				pending = e;
+			}
+		}
+		return window.size() >= count;
+	}
+
+	private int windowIndex(int ahead) {
+		if (!fill(ahead + 1)) {
+			throw new IndexOutOfBoundsException("No token " + ahead + " ahead");
+		}
+		return ahead;
+	}
+
+	@Override
+	public TokenKind peek(int ahead) {
+		int i = windowIndex(ahead);
+		return window.kind(i);
+	}
+
+	@Override
+	public String lexeme(int ahead) {
+		int i = windowIndex(ahead);
+		return window.lexeme(i);
+	}
+
+	@Override
+	public int line(int ahead) {
+		int i = windowIndex(ahead);
+		return window.line(i);
+	}
+
+	@Override
+	public int column(int ahead) {
+		int i = windowIndex(ahead);
+		return window.column(i);
+	}
+
+	@Override
+	public Token token(int ahead) {
+		int i = windowIndex(ahead);
+		return window.token(i);
+	}
+
+	@Override
+	public boolean atEnd() {
+		return !fill(1);
+	}
+
+	@Override
+	public void advance() {
+		if (fill(1)) {
+			window.removeFirst();
+		}
+	}
+
+	@Override
+	public void finish() throws LexException {
+		fill(0);
+		while (pending == null) {
+			window.clear();
+			if (!fill(1)) {
+				break;
+			}
+		}
+		if (pending != null) {
+			throw pending;
+		}
 	}
 
 
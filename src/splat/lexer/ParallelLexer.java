@@ -0,0 +1,180 @@
+package splat.lexer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Lexes a memory-mapped source on a ForkJoinPool.  No token can span two
+ * lines (an unclosed string is an error at the end of its line), so the
+ * source can be cut right after any '\n' and the pieces lexed on their
+ * own.  Each piece counts lines from its own start; the pieces are then
+ * copied into one TokenBuffer with their line numbers shifted to match
+ * the whole file.
+ *
+ * The result is the same TokenBuffer Lexer.tokenize() would produce, and
+ * a lex error is the same one it would throw: the first in the source,
+ * no matter which piece finishes first.
+ */
+public class ParallelLexer {
+
+    // Pieces smaller than this aren't worth handing to another thread
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    // Aim for a few pieces per thread, so that one slow piece doesn't
+    // leave the other threads idle at the end
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final File progFile;
+    private final ByteBuffer source;
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+    private boolean swarScanning;
+
+    public ParallelLexer(File progFile) {
+        this(progFile, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(File progFile, ForkJoinPool pool) {
+        this(progFile, pool, MIN_CHUNK_SIZE);
+    }
+
+    ParallelLexer(File progFile, ForkJoinPool pool, int minChunkSize) {
+        this.progFile = progFile;
+        this.source = null;
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Lexes a source that has already been read into memory (see
+     * Lexer(ByteBuffer)).
+     */
+    public ParallelLexer(ByteBuffer source) {
+        this.progFile = null;
+        this.source = source;
+        this.pool = ForkJoinPool.commonPool();
+        this.minChunkSize = MIN_CHUNK_SIZE;
+    }
+
+    /**
+     * See Lexer.setSwarScanning().
+     */
+    public void setSwarScanning(boolean swar) {
+        this.swarScanning = swar;
+    }
+
+    private static class Chunk extends RecursiveAction {
+        final ByteBuffer src;
+        final ByteScanner scanner;
+        final int start;
+        final int end;
+
+        TokenBuffer tokens;
+        int lines;
+        LexException error;
+
+        Chunk(ByteBuffer src, ByteScanner scanner, int start, int end) {
+            this.src = src;
+            this.scanner = scanner;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            tokens = new TokenBuffer(src);
+            try {
+                lines = new Lexer(src, start, end, scanner).lexRegion(tokens);
+            } catch (LexException e) {
+                error = e;
+            }
+        }
+    }
+
+    public TokenBuffer tokenize() throws LexException {
+        Lexer lexer = source != null ? new Lexer(source) : new Lexer(progFile, true);
+        lexer.setSwarScanning(swarScanning);
+        ByteBuffer src = lexer.source();
+        // Sources too large to map are read through a Reader instead
+        if (src == null) {
+            return lexer.tokenize();
+        }
+
+        List<Chunk> chunks = split(src);
+        if (chunks.size() < 2) {
+            return lexer.tokenize();
+        }
+        for (Chunk chunk : chunks) {
+            pool.execute(chunk);
+        }
+
+        // Work out where each chunk's tokens, strings and lines start in
+        // the whole file.  Chunks after the first error don't matter.
+        int count = chunks.size();
+        int[] tokenAt = new int[count];
+        int[] stringAt = new int[count];
+        int[] lineOffset = new int[count];
+        int tokens = 0;
+        int strings = 0;
+        int lines = 0;
+        for (int i = 0; i < count; i++) {
+            Chunk chunk = chunks.get(i);
+            chunk.join();
+            if (chunk.error != null) {
+                LexException e = chunk.error;
+                throw new LexException(e.getMessage(), e.getLine() + lines, e.getColumn());
+            }
+            tokenAt[i] = tokens;
+            stringAt[i] = strings;
+            lineOffset[i] = lines;
+            tokens += chunk.tokens.size();
+            strings += chunk.tokens.stringCount();
+            lines += chunk.lines;
+        }
+
+        TokenBuffer merged = new TokenBuffer(src, tokens, strings);
+        List<ForkJoinTask<?>> copies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TokenBuffer part = chunks.get(i).tokens;
+            int at = tokenAt[i];
+            int stringIndex = stringAt[i];
+            int offset = lineOffset[i];
+            copies.add(pool.submit(() -> merged.copyFrom(part, at, stringIndex, offset)));
+        }
+        for (ForkJoinTask<?> copy : copies) {
+            copy.join();
+        }
+
+        merged.add(TokenKind.EOF, lines + 1, 0);
+        return merged;
+    }
+
+    /*
+     * Cuts the source into roughly equal chunks, each ending just after a
+     * '\n' (or at the end of the source).  A "\r\n" is never split, since
+     * the cut always comes after the '\n'.
+     */
+    private List<Chunk> split(ByteBuffer src) {
+        int limit = src.limit();
+        int wanted = pool.getParallelism() * CHUNKS_PER_THREAD;
+        int chunkSize = Math.max(minChunkSize, (int) Math.min(Integer.MAX_VALUE, (long) limit / wanted));
+
+        ByteScanner scanner = swarScanning ? ByteScanner.SWAR : ByteScanner.SCALAR;
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < limit) {
+            int end = (int) Math.min(limit, (long) start + chunkSize);
+            while (end < limit && src.get(end - 1) != '\n') {
+                end++;
+            }
+            chunks.add(new Chunk(src, scanner, start, end));
+            start = end;
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,115 @@
+package splat.lexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that ParallelLexer gives the same tokens, or the same lex error,
+ * as the sequential mapped Lexer.  The source is cut into pieces of a line
+ * or two, so that every test program has many pieces and every error past
+ * the first line is in a piece of its own.  Both lexers are also run with
+ * SWAR scanning, which must not change anything either.
+ *
+ * Each .splat file in the given directory is checked, and so is a
+ * generated program of a thousand lines with an error on the last one.
+ *
+ * Usage: java splat.lexer.ParallelLexerCheck [tests-dir]
+ */
+public class ParallelLexerCheck {
+
+    // With no minimum, pieces are about the source's size over this many
+    private static final int THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "tests");
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".splat"));
+        if (files == null) {
+            System.out.println("Cannot find directory '" + dir + "'.");
+            System.exit(2);
+        }
+        Arrays.sort(files);
+
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        int failures = 0;
+        for (File file : files) {
+            failures += check(file, pool);
+        }
+        failures += check(writeLateError(), pool);
+        pool.shutdown();
+
+        System.out.println((files.length + 1) + " sources checked, " + failures + " mismatched");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static File writeLateError() throws IOException {
+        File file = File.createTempFile("splat-late-error", ".splat");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.print("program\r\nbegin\r\n");
+            for (int i = 0; i < 1000; i++) {
+                out.print("        print \"line " + i + " of a generated program\";\r\n");
+            }
+            out.print("    print 1 # 2;\r\nend;\r\n");
+        }
+        return file;
+    }
+
+    /*
+     * Returns 1, after saying why, if any of the lexers disagree with the
+     * sequential one without SWAR scanning.
+     */
+    private static int check(File file, ForkJoinPool pool) {
+        String expected = describe(() -> new Lexer(file, true).tokenize());
+        for (boolean swar : new boolean[] {false, true}) {
+            String sequential = describe(() -> {
+                Lexer lexer = new Lexer(file, true);
+                lexer.setSwarScanning(swar);
+                return lexer.tokenize();
+            });
+            String parallel = describe(() -> {
+                ParallelLexer lexer = new ParallelLexer(file, pool, 1);
+                lexer.setSwarScanning(swar);
+                return lexer.tokenize();
+            });
+            String mode = swar ? " with SWAR" : "";
+            if (!sequential.equals(expected)) {
+                System.out.println(file.getName() + ": Lexer" + mode + " gave " + sequential
+                        + ", expected " + expected);
+                return 1;
+            }
+            if (!parallel.equals(expected)) {
+                System.out.println(file.getName() + ": ParallelLexer" + mode + " gave " + parallel
+                        + ", expected " + expected);
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private interface Tokenizer {
+        TokenBuffer tokenize() throws LexException;
+    }
+
+    /*
+     * Every token as kind, text, line and column, or the lex error.
+     */
+    private static String describe(Tokenizer tokenizer) {
+        TokenBuffer tokens;
+        try {
+            tokens = tokenizer.tokenize();
+        } catch (LexException e) {
+            return "LexException at " + e.getLine() + ":" + e.getColumn() + " " + e.getMessage();
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            out.append(tokens.kind(i)).append(' ').append(tokens.lexeme(i)).append(' ')
+                    .append(tokens.line(i)).append(':').append(tokens.column(i)).append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package splat.lexer;
+
+import java.util.ArrayDeque;
+
+/**
+ * A TokenSource that runs the Lexer on its own thread, so that lexing
+ * overlaps with parsing.  The lexer thread fills chunks of tokens and
+ * hands them to the parser's thread through an SpscRingBuffer.
+ *
+ * Errors are ordered exactly as with the other sources: tokens lexed
+ * before a LexException are still delivered, the exception itself is
+ * held back until finish(), and finish() waits for the lexer thread to
+ * get through the whole file.
+ */
+public class PipelinedTokenSource implements TokenSource {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final int RING_CAPACITY = 64;
+
+    // Marks the end of the stream, with the error that ended it, if any
+    private static class End {
+        final Throwable error;
+
+        End(Throwable error) {
+            this.error = error;
+        }
+    }
+
+    private final Lexer lexer;
+    private final SpscRingBuffer<Object> ring = new SpscRingBuffer<>(RING_CAPACITY);
+
+    // Set by close(), to stop the lexer thread at the next chunk
+    private volatile boolean closed;
+
+    // Chunks received but not fully consumed, and the position in the first
+    private final ArrayDeque<TokenBuffer> chunks = new ArrayDeque<>();
+    private int index;
+    private int available;
+    private End end;
+
+    // The chunk holding the token last found by locate()
+    private TokenBuffer found;
+
+    public PipelinedTokenSource(Lexer lexer) {
+        this.lexer = lexer;
+        Thread thread = new Thread(this::produce, "splat-lexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void produce() {
+        try {
+            boolean more = true;
+            while (more && !closed) {
+                TokenBuffer chunk = new TokenBuffer(lexer.source());
+                try {
+                    more = lexer.lexChunk(chunk, CHUNK_SIZE);
+                } finally {
+                    if (chunk.size() > 0) {
+                        ring.put(chunk);
+                    }
+                }
+            }
+            ring.put(new End(null));
+        } catch (Throwable e) {
+            // Whatever happens, the parser's thread must not be left waiting
+            ring.put(new End(e));
+        }
+    }
+
+    private boolean fill(int count) {
+        while (available < count && end == null) {
+            Object item = ring.take();
+            if (item instanceof End) {
+                end = (End) item;
+            } else {
+                TokenBuffer chunk = (TokenBuffer) item;
+                chunks.addLast(chunk);
+                available += chunk.size();
+            }
+        }
+        return available >= count;
+    }
+
+    /**
+     * Finds the token the given distance ahead.  Leaves its chunk in found
+     * and returns its index within that chunk.
+     */
+    private int locate(int ahead) {
+        if (!fill(ahead + 1)) {
+            throw new IndexOutOfBoundsException("No token " + ahead + " ahead");
+        }
+        int i = index + ahead;
+        for (TokenBuffer chunk : chunks) {
+            if (i < chunk.size()) {
+                found = chunk;
+                return i;
+            }
+            i -= chunk.size();
+        }
+        throw new IllegalStateException("Token window out of sync");
+    }
+
+    @Override
+    public TokenKind peek(int ahead) {
+        int i = locate(ahead);
+        return found.kind(i);
+    }
+
+    @Override
+    public String lexeme(int ahead) {
+        int i = locate(ahead);
+        return found.lexeme(i);
+    }
+
+    @Override
+    public int line(int ahead) {
+        int i = locate(ahead);
+        return found.line(i);
+    }
+
+    @Override
+    public int column(int ahead) {
+        int i = locate(ahead);
+        return found.column(i);
+    }
+
+    @Override
+    public Token token(int ahead) {
+        int i = locate(ahead);
+        return found.token(i);
+    }
+
+    @Override
+    public boolean atEnd() {
+        return !fill(1);
+    }
+
+    @Override
+    public void advance() {
+        if (!fill(1)) {
+            return;
+        }
+        available--;
+        if (++index == chunks.getFirst().size()) {
+            chunks.removeFirst();
+            index = 0;
+        }
+    }
+
+    @Override
+    public void finish() throws LexException {
+        drain();
+        if (end.error instanceof LexException) {
+            throw (LexException) end.error;
+        } else if (end.error instanceof Error) {
+            throw (Error) end.error;
+        } else if (end.error != null) {
+            throw (RuntimeException) end.error;
+        }
+    }
+
+    /**
+     * Stops the lexer thread at the next chunk, and takes whatever it has
+     * put in the ring so that it is never left waiting on a full one.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    private void drain() {
+        while (end == null) {
+            chunks.clear();
+            available = 0;
+            index = 0;
+            fill(1);
+        }
+    }
+}
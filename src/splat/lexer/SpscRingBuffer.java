@@ -0,0 +1,68 @@
+package splat.lexer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue for exactly one producer thread and one
+ * consumer thread.  Each side only ever writes its own counter, so the
+ * only synchronization needed is publishing that counter with release
+ * semantics and reading the other side's with acquire semantics.
+ *
+ * put() and take() wait when the buffer is full or empty, spinning
+ * briefly before parking so an idle side doesn't burn a whole core.
+ */
+class SpscRingBuffer<T> {
+
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 20_000;
+
+    private final Object[] slots;
+    private final int mask;
+
+    // Next slot to read; only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write; only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    SpscRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        slots = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    void put(T item) {
+        long t = tail.get();
+        int spins = 0;
+        while (t - head.getAcquire() == slots.length) {
+            spins = backOff(spins);
+        }
+        slots[(int) t & mask] = item;
+        tail.setRelease(t + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    T take() {
+        long h = head.get();
+        int spins = 0;
+        while (tail.getAcquire() == h) {
+            spins = backOff(spins);
+        }
+        int slot = (int) h & mask;
+        T item = (T) slots[slot];
+        slots[slot] = null;
+        head.setRelease(h + 1);
+        return item;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+}
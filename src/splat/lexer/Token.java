@@ -1,14 +1,14 @@
 package splat.lexer;
 
 public class Token {
-    private String type;   
+    private TokenKind kind;
     private String lexeme; 
     private int line;     
     private int column;    
 
 
-    public Token(String type, String lexeme, int line, int column) {
-        this.type = type;
+    public Token(TokenKind kind, String lexeme, int line, int column) {
+        this.kind = kind;
         this.lexeme = lexeme;
         this.line = line;
         this.column = column;
@@ -21,7 +21,11 @@ public class Token {
 
 
     public String getType() {
-        return type;
+        return kind.getType();
+    }
+
+    public TokenKind getKind() {
+        return kind;
     }
 
     public String getLexeme() {
@@ -38,7 +42,7 @@ public class Token {
 
     @Override
     public String toString() {
-        return String.format("Token[type=%s, lexeme=%s, line=%d, column=%d]", type, lexeme, line, column);
+        return String.format("Token[type=%s, lexeme=%s, line=%d, column=%d]", getType(), lexeme, line, column);
     }
 }
 
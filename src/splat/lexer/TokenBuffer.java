@@ -0,0 +1,179 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The lexer's output, stored as parallel int arrays instead of one object
+ * per token.  Token i is described by its kind, the start offset and
+ * length of its text, and its line and column.
+ *
+ * Tokens whose kind has a fixed text (keywords, operators, punctuation,
+ * true/false) don't store any text at all.  The text of other tokens is
+ * either a slice of the memory-mapped source (start >= 0) or an entry in
+ * a string pool, in which case start holds -(index + 1).
+ *
+ * Tokens are only ever appended, so once the lexer hands the buffer over
+ * it can be shared as a read-only TokenSequence.
+ */
+public class TokenBuffer implements TokenSequence, TokenSink {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final TokenKind[] kindValues = TokenKind.values();
+
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] columns = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private ByteBuffer source;
+    private String[] strings = new String[16];
+    private int stringCount;
+
+    public TokenBuffer() {
+    }
+
+    public TokenBuffer(ByteBuffer source) {
+        this.source = source;
+    }
+
+    /*
+     * Creates a buffer that already holds size tokens and stringCount
+     * pooled strings, to be filled in with copyFrom().  There is room for
+     * one more token to be added afterwards.
+     */
+    TokenBuffer(ByteBuffer source, int size, int stringCount) {
+        this.source = source;
+        this.size = size;
+        this.stringCount = stringCount;
+        kinds = new int[size + 1];
+        starts = new int[size + 1];
+        lengths = new int[size + 1];
+        lines = new int[size + 1];
+        columns = new int[size + 1];
+        strings = new String[Math.max(stringCount, 1)];
+    }
+
+    /*
+     * Copies every token of part into this buffer, starting at token index
+     * at and pooled string index stringAt, and shifts its line numbers by
+     * lineOffset.  Both buffers must be over the same source.  Different
+     * parts can be copied in from different threads at once.
+     */
+    void copyFrom(TokenBuffer part, int at, int stringAt, int lineOffset) {
+        int count = part.size;
+        System.arraycopy(part.kinds, 0, kinds, at, count);
+        System.arraycopy(part.lengths, 0, lengths, at, count);
+        System.arraycopy(part.columns, 0, columns, at, count);
+        for (int i = 0; i < count; i++) {
+            int start = part.starts[i];
+            starts[at + i] = start < 0 ? start - stringAt : start;
+            lines[at + i] = part.lines[i] + lineOffset;
+        }
+        System.arraycopy(part.strings, 0, strings, stringAt, part.stringCount);
+    }
+
+    int stringCount() {
+        return stringCount;
+    }
+
+    /**
+     * Adds a token whose kind has a fixed text.
+     */
+    @Override
+    public void add(TokenKind kind, int line, int column) {
+        append(kind, 0, 0, line, column);
+    }
+
+    /**
+     * Adds a token whose text is the given slice of the mapped source.
+     */
+    @Override
+    public void add(TokenKind kind, int start, int length, int line, int column) {
+        append(kind, start, length, line, column);
+    }
+
+    /**
+     * Adds a token whose text isn't available from the mapped source.
+     */
+    @Override
+    public void add(TokenKind kind, String text, int line, int column) {
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount++] = text;
+        append(kind, -stringCount, text.length(), line, column);
+    }
+
+    private void append(TokenKind kind, int start, int length, int line, int column) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        kinds[size] = kind.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public TokenKind kind(int i) {
+        return kindValues[kinds[Objects.checkIndex(i, size)]];
+    }
+
+    @Override
+    public int line(int i) {
+        return lines[Objects.checkIndex(i, size)];
+    }
+
+    @Override
+    public int column(int i) {
+        return columns[Objects.checkIndex(i, size)];
+    }
+
+    /**
+     * Builds the text of token i.  This allocates a new String for labels
+     * and literals, so callers should only ask for it when they need it.
+     */
+    @Override
+    public String lexeme(int i) {
+        TokenKind kind = kind(i);
+        if (kind.getText() != null) {
+            return kind.getText();
+        }
+
+        int start = starts[i];
+        if (start < 0) {
+            return strings[-start - 1];
+        }
+
+        byte[] bytes = new byte[lengths[i]];
+        source.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Creates a standalone Token object for token i, e.g. to record the
+     * position of an AST element.
+     */
+    @Override
+    public Token token(int i) {
+        return new Token(kind(i), lexeme(i), line(i), column(i));
+    }
+}
@@ -0,0 +1,102 @@
+package splat.lexer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every kind of token the lexer can produce.  Keywords, operators and
+ * punctuation each get their own kind so the parser can dispatch on them
+ * with a switch; labels and literals carry their text separately.
+ */
+public enum TokenKind {
+
+    // Keywords
+    PROGRAM("program", "program"),
+    BEGIN("begin", "begin"),
+    END("end", "end"),
+    IF("if", "if"),
+    THEN("then", "then"),
+    ELSE("else", "else"),
+    WHILE("while", "while"),
+    DO("do", "do"),
+    PRINT("print", "print"),
+    PRINT_LINE("print_line", "print_line"),
+    RETURN("return", "return"),
+
+    // Operators
+    AND("operator", "and"),
+    OR("operator", "or"),
+    NOT("operator", "not"),
+    PLUS("operator", "+"),
+    MINUS("operator", "-"),
+    TIMES("operator", "*"),
+    DIVIDE("operator", "/"),
+    MODULO("operator", "%"),
+    COLON("operator", ":"),
+    GREATER("operator", ">"),
+    LESS("operator", "<"),
+    GREATER_EQUAL("operator", ">="),
+    LESS_EQUAL("operator", "<="),
+    EQUAL("operator", "=="),
+    ASSIGN("operator", ":="),
+
+    // Punctuation
+    LEFT_PAREN("punctuation", "("),
+    RIGHT_PAREN("punctuation", ")"),
+    LEFT_BRACE("punctuation", "{"),
+    RIGHT_BRACE("punctuation", "}"),
+    SEMICOLON("punctuation", ";"),
+    COMMA("punctuation", ","),
+    UNDERSCORE("punctuation", "_"),
+
+    // Literals and labels
+    TRUE("bool-literal", "true"),
+    FALSE("bool-literal", "false"),
+    INT_LITERAL("int-literal", null),
+    STRING_LITERAL("string-literal", null),
+    LABEL("label", null),
+
+    EOF("EOF", "");
+
+    private final String type;
+    private final String text;
+
+    private TokenKind(String type, String text) {
+        this.type = type;
+        this.text = text;
+    }
+
+    /**
+     * The token type name as it was reported before token kinds existed,
+     * e.g. "label", "operator" or the keyword itself.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * The fixed text of this kind, or null for labels and for int and
+     * string literals, whose text varies from token to token.
+     */
+    public String getText() {
+        return text;
+    }
+
+    private static final Map<String, TokenKind> byText = new HashMap<>();
+
+    static {
+        for (TokenKind kind : values()) {
+            if (kind.text != null && !kind.text.isEmpty()) {
+                byText.put(kind.text, kind);
+            }
+        }
+    }
+
+    /**
+     * Returns the kind whose fixed text is the given string, or null if
+     * there isn't one (for instance when the string is an ordinary label).
+     */
+    public static TokenKind fromText(String text) {
+        return byText.get(text);
+    }
+}
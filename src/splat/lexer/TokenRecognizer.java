@@ -0,0 +1,114 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Recognizes keywords, word operators and symbols straight from the
+ * source text, without building a String for the lexeme first.
+ *
+ * A word's first character, last character and length pick out the one
+ * fixed-text kind it could be, if any; the rest of its characters are
+ * then compared against that kind's text.  Symbols are a switch on the
+ * character and the one after it.
+ */
+final class TokenRecognizer {
+
+    private TokenRecognizer() {
+    }
+
+    /**
+     * Returns the keyword, word operator or boolean literal spelled by
+     * the characters of line from start to end, or null for a label.
+     */
+    static TokenKind word(String line, int start, int end) {
+        int length = end - start;
+        TokenKind kind = candidate(line.charAt(start), line.charAt(end - 1), length);
+        if (kind == null) {
+            return null;
+        }
+        String text = kind.getText();
+        for (int i = 1; i < length - 1; i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return null;
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * The same as word(String, int, int), for ASCII bytes of the mapped
+     * source.
+     */
+    static TokenKind word(ByteBuffer src, int start, int end) {
+        int length = end - start;
+        TokenKind kind = candidate(src.get(start), src.get(end - 1), length);
+        if (kind == null) {
+            return null;
+        }
+        String text = kind.getText();
+        for (int i = 1; i < length - 1; i++) {
+            if (src.get(start + i) != text.charAt(i)) {
+                return null;
+            }
+        }
+        return kind;
+    }
+
+    // The only fixed-text word kind with this first character, last
+    // character and length, if there is one
+    private static TokenKind candidate(int first, int last, int length) {
+        TokenKind kind;
+        switch (first) {
+            case 'a': kind = TokenKind.AND; break;
+            case 'b': kind = TokenKind.BEGIN; break;
+            case 'd': kind = TokenKind.DO; break;
+            case 'e': kind = length == 3 ? TokenKind.END : TokenKind.ELSE; break;
+            case 'f': kind = TokenKind.FALSE; break;
+            case 'i': kind = TokenKind.IF; break;
+            case 'n': kind = TokenKind.NOT; break;
+            case 'o': kind = TokenKind.OR; break;
+            case 'p':
+                kind = length == 7 ? TokenKind.PROGRAM
+                        : length == 5 ? TokenKind.PRINT
+                        : TokenKind.PRINT_LINE;
+                break;
+            case 'r': kind = TokenKind.RETURN; break;
+            case 't': kind = last == 'n' ? TokenKind.THEN : TokenKind.TRUE; break;
+            case 'w': kind = TokenKind.WHILE; break;
+            default: return null;
+        }
+        String text = kind.getText();
+        if (text.length() != length || text.charAt(length - 1) != last) {
+            return null;
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the operator or punctuation starting with c, given the
+     * character after it (or 0 at the end of the line), or null if c
+     * doesn't start one.  Two-character operators win over one-character
+     * ones.
+     */
+    static TokenKind symbol(int c, int next) {
+        switch (c) {
+            case '+': return TokenKind.PLUS;
+            case '-': return TokenKind.MINUS;
+            case '*': return TokenKind.TIMES;
+            case '/': return TokenKind.DIVIDE;
+            case '%': return TokenKind.MODULO;
+            case ':': return next == '=' ? TokenKind.ASSIGN : TokenKind.COLON;
+            case '>': return next == '=' ? TokenKind.GREATER_EQUAL : TokenKind.GREATER;
+            case '<': return next == '=' ? TokenKind.LESS_EQUAL : TokenKind.LESS;
+            case '=': return next == '=' ? TokenKind.EQUAL : null;
+            case '(': return TokenKind.LEFT_PAREN;
+            case ')': return TokenKind.RIGHT_PAREN;
+            case '{': return TokenKind.LEFT_BRACE;
+            case '}': return TokenKind.RIGHT_BRACE;
+            case ';': return TokenKind.SEMICOLON;
+            case ',': return TokenKind.COMMA;
+            case '_': return TokenKind.UNDERSCORE;
+            default: return null;
+        }
+    }
+}
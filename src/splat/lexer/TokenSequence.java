@@ -0,0 +1,21 @@
+package splat.lexer;
+
+/**
+ * Read-only, random-access view of a lexed program.  Indexes run from 0
+ * to size() - 1, and reading past the end throws an
+ * IndexOutOfBoundsException.
+ */
+public interface TokenSequence {
+
+    int size();
+
+    TokenKind kind(int i);
+
+    String lexeme(int i);
+
+    int line(int i);
+
+    int column(int i);
+
+    Token token(int i);
+}
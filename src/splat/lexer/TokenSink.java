@@ -0,0 +1,14 @@
+package splat.lexer;
+
+/**
+ * Somewhere the Lexer can put the tokens it produces.  The three methods
+ * match the three ways a token's text can be stored, see TokenBuffer.
+ */
+interface TokenSink {
+
+    void add(TokenKind kind, int line, int column);
+
+    void add(TokenKind kind, int start, int length, int line, int column);
+
+    void add(TokenKind kind, String text, int line, int column);
+}
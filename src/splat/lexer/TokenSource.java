@@ -0,0 +1,45 @@
+package splat.lexer;
+
+/**
+ * A stream of tokens that the parser pulls from, one token at a time.
+ * The peek methods take how many tokens ahead of the current one to look
+ * at: 0 is the next token to be consumed, 1 the one after it.  Looking
+ * past the last token throws an IndexOutOfBoundsException.
+ *
+ * Implementations only need to keep a couple of tokens of lookahead, so
+ * a source doesn't have to hold the whole program's tokens in memory.
+ */
+public interface TokenSource {
+
+    TokenKind peek(int ahead);
+
+    String lexeme(int ahead);
+
+    int line(int ahead);
+
+    int column(int ahead);
+
+    Token token(int ahead);
+
+    /**
+     * Returns true once every token has been consumed.
+     */
+    boolean atEnd();
+
+    void advance();
+
+    /**
+     * Reads whatever is left of the input and throws the first lexical
+     * error in it, if there is one.  Called by the parser when it is done,
+     * so that a LexException is reported ahead of any ParseException, just
+     * as if the whole file had been lexed up front.
+     */
+    void finish() throws LexException;
+
+    /**
+     * Gives up on the rest of the input, when the parser fails with
+     * something other than a ParseException.  Nothing is read after.
+     */
+    default void close() {
+    }
+}
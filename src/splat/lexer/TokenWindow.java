@@ -0,0 +1,132 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A small ring of tokens that have been lexed but not consumed yet.  It
+ * backs the Lexer when the Lexer is used as a TokenSource, and grows only
+ * if more tokens are looked ahead at than it can hold.
+ *
+ * Tokens whose text is a slice of the mapped source only keep its offset
+ * and length; the String is built if and when lexeme() asks for it.
+ */
+class TokenWindow implements TokenSink {
+
+    private final ByteBuffer source;
+
+    private TokenKind[] kinds = new TokenKind[4];
+    private String[] texts = new String[4];
+    private int[] starts = new int[4];
+    private int[] lengths = new int[4];
+    private int[] lines = new int[4];
+    private int[] columns = new int[4];
+    private int first;
+    private int size;
+
+    TokenWindow(ByteBuffer source) {
+        this.source = source;
+    }
+
+    @Override
+    public void add(TokenKind kind, int line, int column) {
+        append(kind, kind.getText(), 0, 0, line, column);
+    }
+
+    @Override
+    public void add(TokenKind kind, int start, int length, int line, int column) {
+        append(kind, null, start, length, line, column);
+    }
+
+    @Override
+    public void add(TokenKind kind, String text, int line, int column) {
+        append(kind, text, 0, 0, line, column);
+    }
+
+    private void append(TokenKind kind, String text, int start, int length, int line, int column) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int slot = (first + size) & (kinds.length - 1);
+        kinds[slot] = kind;
+        texts[slot] = text;
+        starts[slot] = start;
+        lengths[slot] = length;
+        lines[slot] = line;
+        columns[slot] = column;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        TokenKind[] newKinds = new TokenKind[capacity];
+        String[] newTexts = new String[capacity];
+        int[] newStarts = new int[capacity];
+        int[] newLengths = new int[capacity];
+        int[] newLines = new int[capacity];
+        int[] newColumns = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            newKinds[i] = kinds[slot];
+            newTexts[i] = texts[slot];
+            newStarts[i] = starts[slot];
+            newLengths[i] = lengths[slot];
+            newLines[i] = lines[slot];
+            newColumns[i] = columns[slot];
+        }
+        kinds = newKinds;
+        texts = newTexts;
+        starts = newStarts;
+        lengths = newLengths;
+        lines = newLines;
+        columns = newColumns;
+        first = 0;
+    }
+
+    private int slot(int i) {
+        return (first + i) & (kinds.length - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenKind kind(int i) {
+        return kinds[slot(i)];
+    }
+
+    String lexeme(int i) {
+        int slot = slot(i);
+        if (texts[slot] == null) {
+            byte[] bytes = new byte[lengths[slot]];
+            source.get(starts[slot], bytes);
+            texts[slot] = new String(bytes, StandardCharsets.US_ASCII);
+        }
+        return texts[slot];
+    }
+
+    int line(int i) {
+        return lines[slot(i)];
+    }
+
+    int column(int i) {
+        return columns[slot(i)];
+    }
+
+    Token token(int i) {
+        int slot = slot(i);
+        return new Token(kinds[slot], lexeme(i), lines[slot], columns[slot]);
+    }
+
+    void removeFirst() {
+        texts[first] = null;
+        first = (first + 1) & (kinds.length - 1);
+        size--;
+    }
+
+    void clear() {
+        while (size > 0) {
+            removeFirst();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+import splat.parser.elements.AssignmentStatement;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionCallExpression;
+import splat.parser.elements.FunctionCallStatement;
+import splat.parser.elements.IfStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.SharedExpression;
+import splat.parser.elements.SlotExpression;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.WhileStatement;
+
+/**
+ * Evaluates an operator that is written more than once in a statement
+ * only once, if it makes no calls.  Nothing is assigned while a statement
+ * evaluates its expressions, and calls can't change the caller's
+ * variables, so every copy has the same value.  Operands are evaluated
+ * left to right, and every one of them is evaluated (and and or don't
+ * short-circuit), so the first copy always runs before the others: it
+ * becomes a SharedExpression, which keeps its value in a slot, and the
+ * others SlotExpressions, which read it.
+ *
+ * The slots only hold values while a statement runs, so every statement
+ * uses the same ones.  A body must be resolved, as for
+ * LoopInvariantMotion.
+ */
+class CommonSubexpressions {
+
+    private final IntUnaryOperator addSlots;
+    private final List<Integer> pool = new ArrayList<>();
+    private final ExpressionKeys keys = new ExpressionKeys();
+
+    CommonSubexpressions(IntUnaryOperator addSlots) {
+        this.addSlots = addSlots;
+    }
+
+    /**
+     * Shares the repeated operators of each of the statements, in place.
+     */
+    void share(List<Statement> stmts) {
+        if (stmts == null) {
+            return;
+        }
+        for (int i = 0; i < stmts.size(); i++) {
+            stmts.set(i, share(stmts.get(i)));
+        }
+    }
+
+    private Statement share(Statement stmt) {
+        if (stmt instanceof AssignmentStatement) {
+            AssignmentStatement assignment = (AssignmentStatement) stmt;
+            Expression expr = share(assignment.getExpression());
+            return expr == assignment.getExpression() ? assignment : assignment.withExpression(expr);
+        } else if (stmt instanceof PrintStatement) {
+            PrintStatement print = (PrintStatement) stmt;
+            Expression expr = share(print.getExpression());
+            return expr == print.getExpression() ? print : print.withExpression(expr);
+        } else if (stmt instanceof ReturnStatement) {
+            ReturnStatement ret = (ReturnStatement) stmt;
+            if (ret.getReturnValue() == null) {
+                return ret;
+            }
+            Expression expr = share(ret.getReturnValue());
+            return expr == ret.getReturnValue() ? ret : ret.withReturnValue(expr);
+        } else if (stmt instanceof FunctionCallStatement) {
+            new Roots(((FunctionCallStatement) stmt).getArguments()).share();
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            share(ifStmt.getThenBranch());
+            share(ifStmt.getElseBranch());
+            Expression condition = share(ifStmt.getCondition());
+            return condition == ifStmt.getCondition() ? ifStmt : ifStmt.withCondition(condition);
+        } else if (stmt instanceof WhileStatement) {
+            WhileStatement whileStmt = (WhileStatement) stmt;
+            share(whileStmt.getBody());
+            Expression condition = share(whileStmt.getCondition());
+            return condition == whileStmt.getCondition() ? whileStmt : whileStmt.withCondition(condition);
+        }
+        return stmt;
+    }
+
+    private Expression share(Expression expr) {
+        List<Expression> roots = new ArrayList<>(1);
+        roots.add(expr);
+        new Roots(roots).share();
+        return roots.get(0);
+    }
+
+    /*
+     * The expressions one statement evaluates, in order.
+     */
+    private class Roots {
+        final List<Expression> roots;
+
+        // The operators written more than once, then the slots of those
+        // that are shared
+        final Map<Integer, Integer> counts = new HashMap<>();
+        final Map<Integer, Integer> slots = new HashMap<>();
+        final Set<Integer> seen = new HashSet<>();
+
+        Roots(List<Expression> roots) {
+            this.roots = roots;
+        }
+
+        /*
+         * Replaces the roots, in place.
+         */
+        void share() {
+            for (Expression root : roots) {
+                count(root);
+            }
+
+            // A copy inside one that is itself shared is never evaluated,
+            // so only operators whose later copies are evaluated share
+            Set<Integer> repeated = new HashSet<>();
+            for (Expression root : roots) {
+                findRepeated(root, repeated);
+            }
+            if (repeated.isEmpty()) {
+                return;
+            }
+
+            int next = 0;
+            for (Integer key : repeated) {
+                if (next == pool.size()) {
+                    pool.add(addSlots.applyAsInt(1));
+                }
+                slots.put(key, pool.get(next++));
+            }
+            seen.clear();
+            for (int i = 0; i < roots.size(); i++) {
+                roots.set(i, replace(roots.get(i)));
+            }
+        }
+
+        void count(Expression expr) {
+            if (ExpressionKeys.isOperator(expr)) {
+                Integer key = keys.key(expr);
+                if (key != null) {
+                    counts.merge(key, 1, Integer::sum);
+                }
+            }
+            forEachOperand(expr, this::count);
+        }
+
+        void findRepeated(Expression expr, Set<Integer> repeated) {
+            Integer key = sharable(expr);
+            if (key != null && !seen.add(key)) {
+                repeated.add(key);
+                return;
+            }
+            forEachOperand(expr, operand -> findRepeated(operand, repeated));
+        }
+
+        Expression replace(Expression expr) {
+            Integer key = sharable(expr);
+            Integer slot = key == null ? null : slots.get(key);
+            if (slot != null && !seen.add(key)) {
+                return new SlotExpression(expr, slot, expr.getResolvedType());
+            }
+
+            Expression replaced = expr;
+            if (expr instanceof BinaryOpExpression) {
+                BinaryOpExpression binary = (BinaryOpExpression) expr;
+                Expression left = replace(binary.getLeft());
+                Expression right = replace(binary.getRight());
+                if (left != binary.getLeft() || right != binary.getRight()) {
+                    replaced = binary.withOperands(left, right);
+                }
+            } else if (expr instanceof UnaryOpExpression) {
+                UnaryOpExpression unary = (UnaryOpExpression) expr;
+                Expression operand = replace(unary.getOperand());
+                if (operand != unary.getOperand()) {
+                    replaced = unary.withOperand(operand);
+                }
+            } else if (expr instanceof FunctionCallExpression) {
+                // In place, so that a tail call stays one
+                List<Expression> arguments = ((FunctionCallExpression) expr).getArguments();
+                for (int i = 0; i < arguments.size(); i++) {
+                    arguments.set(i, replace(arguments.get(i)));
+                }
+            }
+            return slot != null ? new SharedExpression(replaced, slot) : replaced;
+        }
+
+        // The key of an operator written more than once, or null
+        Integer sharable(Expression expr) {
+            if (!ExpressionKeys.isOperator(expr)) {
+                return null;
+            }
+            Integer key = keys.key(expr);
+            return key != null && counts.getOrDefault(key, 0) > 1 ? key : null;
+        }
+    }
+
+    private static void forEachOperand(Expression expr, Consumer<Expression> action) {
+        if (expr instanceof BinaryOpExpression) {
+            action.accept(((BinaryOpExpression) expr).getLeft());
+            action.accept(((BinaryOpExpression) expr).getRight());
+        } else if (expr instanceof UnaryOpExpression) {
+            action.accept(((UnaryOpExpression) expr).getOperand());
+        } else if (expr instanceof FunctionCallExpression) {
+            for (Expression argument : ((FunctionCallExpression) expr).getArguments()) {
+                action.accept(argument);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+import splat.parser.elements.AssignmentStatement;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.BooleanValue;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionCallExpression;
+import splat.parser.elements.FunctionCallStatement;
+import splat.parser.elements.IfStatement;
+import splat.parser.elements.LiteralExpression;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.WhileStatement;
+
+/**
+ * Works out operators whose operands are all literals, and replaces them
+ * with a literal of the value, at the operator's position.  Then an if
+ * whose condition is a literal is replaced by the branch it takes, and a
+ * while whose condition is false is dropped.
+ *
+ * An operator that fails, such as a division by zero, is left as it is,
+ * so that it fails when it runs, with the same error at the same place.
+ */
+class ConstantFolder {
+
+    /**
+     * Folds the statements, in place.
+     */
+    void fold(List<Statement> stmts) {
+        if (stmts == null) {
+            return;
+        }
+        List<Statement> folded = new ArrayList<>(stmts.size());
+        for (Statement stmt : stmts) {
+            fold(stmt, folded);
+        }
+        stmts.clear();
+        stmts.addAll(folded);
+    }
+
+    /*
+     * Adds what the statement folds to, which may be no statements or
+     * several, to folded.
+     */
+    private void fold(Statement stmt, List<Statement> folded) {
+        if (stmt instanceof AssignmentStatement) {
+            AssignmentStatement assignment = (AssignmentStatement) stmt;
+            Expression expr = fold(assignment.getExpression());
+            folded.add(expr == assignment.getExpression() ? assignment : assignment.withExpression(expr));
+        } else if (stmt instanceof PrintStatement) {
+            PrintStatement print = (PrintStatement) stmt;
+            Expression expr = fold(print.getExpression());
+            folded.add(expr == print.getExpression() ? print : print.withExpression(expr));
+        } else if (stmt instanceof ReturnStatement) {
+            ReturnStatement ret = (ReturnStatement) stmt;
+            Expression expr = ret.getReturnValue() == null ? null : fold(ret.getReturnValue());
+            folded.add(expr == ret.getReturnValue() ? ret : ret.withReturnValue(expr));
+        } else if (stmt instanceof FunctionCallStatement) {
+            foldArguments(((FunctionCallStatement) stmt).getArguments());
+            folded.add(stmt);
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            Expression condition = fold(ifStmt.getCondition());
+            fold(ifStmt.getThenBranch());
+            fold(ifStmt.getElseBranch());
+            if (condition instanceof LiteralExpression) {
+                List<Statement> taken = isTrue(condition) ? ifStmt.getThenBranch() : ifStmt.getElseBranch();
+                if (taken != null) {
+                    folded.addAll(taken);
+                }
+            } else {
+                folded.add(condition == ifStmt.getCondition() ? ifStmt : ifStmt.withCondition(condition));
+            }
+        } else if (stmt instanceof WhileStatement) {
+            WhileStatement whileStmt = (WhileStatement) stmt;
+            Expression condition = fold(whileStmt.getCondition());
+            if (condition instanceof LiteralExpression && !isTrue(condition)) {
+                return;
+            }
+            fold(whileStmt.getBody());
+            folded.add(condition == whileStmt.getCondition() ? whileStmt : whileStmt.withCondition(condition));
+        } else {
+            folded.add(stmt);
+        }
+    }
+
+    /**
+     * Returns what the expression folds to: a literal, if all of it can be
+     * worked out, or else the expression with its parts folded.
+     */
+    Expression fold(Expression expr) {
+        if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            Expression left = fold(binary.getLeft());
+            Expression right = fold(binary.getRight());
+            Expression folded = left == binary.getLeft() && right == binary.getRight()
+                    ? binary : binary.withOperands(left, right);
+            if (left instanceof LiteralExpression && right instanceof LiteralExpression) {
+                return constant(folded);
+            }
+            return folded;
+        }
+
+        if (expr instanceof UnaryOpExpression) {
+            UnaryOpExpression unary = (UnaryOpExpression) expr;
+            Expression operand = fold(unary.getOperand());
+            Expression folded = operand == unary.getOperand() ? unary : unary.withOperand(operand);
+            if (operand instanceof LiteralExpression) {
+                return constant(folded);
+            }
+            return folded;
+        }
+
+        // A call itself can't be worked out, but its arguments can, and
+        // folding them in place keeps it the same call, tail call or not
+        if (expr instanceof FunctionCallExpression) {
+            foldArguments(((FunctionCallExpression) expr).getArguments());
+        }
+        return expr;
+    }
+
+    private void foldArguments(List<Expression> arguments) {
+        for (int i = 0; i < arguments.size(); i++) {
+            arguments.set(i, fold(arguments.get(i)));
+        }
+    }
+
+    /*
+     * A literal of the value of an operator over literals, or the operator
+     * itself if working it out fails.
+     */
+    private static Expression constant(Expression expr) {
+        try {
+            Value value = expr.evaluate(null);
+            return new LiteralExpression(expr, value);
+        } catch (ExecutionException | RuntimeException ex) {
+            return expr;
+        }
+    }
+
+    // Boolean literals always evaluate
+    private static boolean isTrue(Expression literal) {
+        try {
+            return ((BooleanValue) literal.evaluate(null)).getValue();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package splat.optimizer;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Expression;
+import splat.parser.elements.InvariantExpression;
+import splat.parser.elements.LiteralExpression;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableExpression;
+
+/**
+ * Keys that tell whether two resolved expressions compute the same thing
+ * from the same frame.  A key is a number for each differently written
+ * expression, so an operator's key only spells out its operator and the
+ * keys of its operands, and is worked out once: keys of deeply nested
+ * expressions take time in proportion to their size.
+ */
+final class ExpressionKeys {
+
+    private static final Integer NONE = -1;
+
+    private final Map<String, Integer> numbers = new HashMap<>();
+    private final Map<Expression, Integer> keys = new IdentityHashMap<>();
+
+    /**
+     * The key of an expression made only of operators, literals and
+     * variables (and loop invariants), which is the same for two such
+     * expressions exactly when they are written the same, or null for an
+     * expression that makes a call or isn't resolved.
+     */
+    Integer key(Expression expr) {
+        Integer key = keys.get(expr);
+        if (key == null) {
+            String written = written(expr);
+            key = written == null ? NONE : numbers.computeIfAbsent(written, w -> numbers.size());
+            keys.put(expr, key);
+        }
+        return key.equals(NONE) ? null : key;
+    }
+
+    private String written(Expression expr) {
+        if (expr instanceof LiteralExpression) {
+            LiteralExpression literal = (LiteralExpression) expr;
+            return literal.getType() + ":" + literal.getValue();
+        } else if (expr instanceof VariableExpression) {
+            int slot = ((VariableExpression) expr).getSlot();
+            return slot < 0 ? null : "$" + slot;
+        } else if (expr instanceof InvariantExpression) {
+            return "#" + ((InvariantExpression) expr).getSlot();
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            Integer left = key(binary.getLeft());
+            Integer right = left == null ? null : key(binary.getRight());
+            return right == null ? null : "(" + left + " " + binary.getOperator() + " " + right + ")";
+        } else if (expr instanceof UnaryOpExpression) {
+            UnaryOpExpression unary = (UnaryOpExpression) expr;
+            Integer operand = key(unary.getOperand());
+            return operand == null ? null : "(" + unary.getOperator() + " " + operand + ")";
+        }
+        return null;
+    }
+
+    /**
+     * Whether the expression is an operator, the only kind of expression
+     * worth keeping the value of.
+     */
+    static boolean isOperator(Expression expr) {
+        return expr instanceof BinaryOpExpression || expr instanceof UnaryOpExpression;
+    }
+}
@@ -0,0 +1,255 @@
+package splat.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+import splat.parser.elements.AssignmentStatement;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.ClearSlotsStatement;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionCallExpression;
+import splat.parser.elements.FunctionCallStatement;
+import splat.parser.elements.IfStatement;
+import splat.parser.elements.InvariantExpression;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableExpression;
+import splat.parser.elements.WhileStatement;
+
+/**
+ * Moves the work of loop invariants out of while loops.  An operator that
+ * makes no calls and reads no variable assigned anywhere in the loop (its
+ * defs, from the loop's assignment statements) has the same value every
+ * time the loop evaluates it: calls can't change the caller's variables.
+ * Each one becomes an InvariantExpression, which works the value out once
+ * per run of the loop, and copies of the same invariant share it.
+ *
+ * Loops are taken outermost first, so an invariant of several nested
+ * loops is worked out once per run of the outermost of them.  A body must
+ * be resolved, since variables are told apart by their slots.
+ */
+class LoopInvariantMotion {
+
+    private final IntUnaryOperator addSlots;
+    private final ExpressionKeys keys = new ExpressionKeys();
+    private final Map<Expression, Boolean> readsVariable = new IdentityHashMap<>();
+
+    /**
+     * Takes slots for the invariants from addSlots (see
+     * FunctionDecl.addSlots()).
+     */
+    LoopInvariantMotion(IntUnaryOperator addSlots) {
+        this.addSlots = addSlots;
+    }
+
+    /**
+     * Hoists the invariants of the loops in the statements, in place.
+     */
+    void hoist(List<Statement> stmts) {
+        if (stmts == null) {
+            return;
+        }
+        List<Statement> hoisted = new ArrayList<>(stmts.size());
+        for (Statement stmt : stmts) {
+            if (stmt instanceof WhileStatement) {
+                hoist((WhileStatement) stmt, hoisted);
+            } else {
+                if (stmt instanceof IfStatement) {
+                    hoist(((IfStatement) stmt).getThenBranch());
+                    hoist(((IfStatement) stmt).getElseBranch());
+                }
+                hoisted.add(stmt);
+            }
+        }
+        stmts.clear();
+        stmts.addAll(hoisted);
+    }
+
+    private void hoist(WhileStatement loop, List<Statement> hoisted) {
+        Set<Integer> defs = new HashSet<>();
+        if (addDefs(loop.getBody(), defs)) {
+            Loop invariants = new Loop(defs);
+            Expression condition = invariants.replace(loop.getCondition());
+            invariants.replace(loop.getBody());
+            if (condition != loop.getCondition()) {
+                loop = loop.withCondition(condition);
+            }
+            if (!invariants.slots.isEmpty()) {
+                int[] slots = invariants.slots.values().stream().mapToInt(Integer::intValue).toArray();
+                hoisted.add(new ClearSlotsStatement(loop, slots));
+            }
+        }
+        hoist(loop.getBody());
+        hoisted.add(loop);
+    }
+
+    /*
+     * Adds the slots the statements assign to defs, and returns false if
+     * some assignment isn't resolved.
+     */
+    private static boolean addDefs(List<Statement> stmts, Set<Integer> defs) {
+        if (stmts == null) {
+            return true;
+        }
+        for (Statement stmt : stmts) {
+            if (stmt instanceof AssignmentStatement) {
+                int slot = ((AssignmentStatement) stmt).getSlot();
+                if (slot < 0) {
+                    return false;
+                }
+                defs.add(slot);
+            } else if (stmt instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) stmt;
+                if (!addDefs(ifStmt.getThenBranch(), defs) || !addDefs(ifStmt.getElseBranch(), defs)) {
+                    return false;
+                }
+            } else if (stmt instanceof WhileStatement) {
+                if (!addDefs(((WhileStatement) stmt).getBody(), defs)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * The invariants of one loop, and their slots.
+     */
+    private class Loop {
+        final Set<Integer> defs;
+        final Map<Integer, Integer> slots = new HashMap<>();
+        final Map<Expression, Boolean> invariant = new IdentityHashMap<>();
+
+        Loop(Set<Integer> defs) {
+            this.defs = defs;
+        }
+
+        void replace(List<Statement> stmts) {
+            if (stmts == null) {
+                return;
+            }
+            for (int i = 0; i < stmts.size(); i++) {
+                stmts.set(i, replace(stmts.get(i)));
+            }
+        }
+
+        Statement replace(Statement stmt) {
+            if (stmt instanceof AssignmentStatement) {
+                AssignmentStatement assignment = (AssignmentStatement) stmt;
+                Expression expr = replace(assignment.getExpression());
+                return expr == assignment.getExpression() ? assignment : assignment.withExpression(expr);
+            } else if (stmt instanceof PrintStatement) {
+                PrintStatement print = (PrintStatement) stmt;
+                Expression expr = replace(print.getExpression());
+                return expr == print.getExpression() ? print : print.withExpression(expr);
+            } else if (stmt instanceof ReturnStatement) {
+                ReturnStatement ret = (ReturnStatement) stmt;
+                if (ret.getReturnValue() == null) {
+                    return ret;
+                }
+                Expression expr = replace(ret.getReturnValue());
+                return expr == ret.getReturnValue() ? ret : ret.withReturnValue(expr);
+            } else if (stmt instanceof FunctionCallStatement) {
+                replaceArguments(((FunctionCallStatement) stmt).getArguments());
+            } else if (stmt instanceof IfStatement) {
+                IfStatement ifStmt = (IfStatement) stmt;
+                replace(ifStmt.getThenBranch());
+                replace(ifStmt.getElseBranch());
+                Expression condition = replace(ifStmt.getCondition());
+                return condition == ifStmt.getCondition() ? ifStmt : ifStmt.withCondition(condition);
+            } else if (stmt instanceof WhileStatement) {
+                WhileStatement whileStmt = (WhileStatement) stmt;
+                replace(whileStmt.getBody());
+                Expression condition = replace(whileStmt.getCondition());
+                return condition == whileStmt.getCondition() ? whileStmt : whileStmt.withCondition(condition);
+            }
+            return stmt;
+        }
+
+        /*
+         * The expression with its largest invariant parts replaced.
+         */
+        Expression replace(Expression expr) {
+            if (ExpressionKeys.isOperator(expr)) {
+                Integer key = keys.key(expr);
+                if (key != null && readsVariable(expr) && isInvariant(expr)) {
+                    Integer slot = slots.get(key);
+                    if (slot == null) {
+                        slot = addSlots.applyAsInt(1);
+                        slots.put(key, slot);
+                    }
+                    return new InvariantExpression(expr, slot);
+                }
+            }
+
+            if (expr instanceof BinaryOpExpression) {
+                BinaryOpExpression binary = (BinaryOpExpression) expr;
+                Expression left = replace(binary.getLeft());
+                Expression right = replace(binary.getRight());
+                return left == binary.getLeft() && right == binary.getRight()
+                        ? binary : binary.withOperands(left, right);
+            } else if (expr instanceof UnaryOpExpression) {
+                UnaryOpExpression unary = (UnaryOpExpression) expr;
+                Expression operand = replace(unary.getOperand());
+                return operand == unary.getOperand() ? unary : unary.withOperand(operand);
+            } else if (expr instanceof FunctionCallExpression) {
+                // In place, so that a tail call stays one
+                replaceArguments(((FunctionCallExpression) expr).getArguments());
+            }
+            return expr;
+        }
+
+        void replaceArguments(List<Expression> arguments) {
+            for (int i = 0; i < arguments.size(); i++) {
+                arguments.set(i, replace(arguments.get(i)));
+            }
+        }
+
+        // Only called on expressions that have a key.  Remembered, as
+        // replace() asks again of each operand it doesn't replace
+        boolean isInvariant(Expression expr) {
+            Boolean known = invariant.get(expr);
+            if (known != null) {
+                return known;
+            }
+            boolean result = true;
+            if (expr instanceof VariableExpression) {
+                result = !defs.contains(((VariableExpression) expr).getSlot());
+            } else if (expr instanceof BinaryOpExpression) {
+                BinaryOpExpression binary = (BinaryOpExpression) expr;
+                result = isInvariant(binary.getLeft()) && isInvariant(binary.getRight());
+            } else if (expr instanceof UnaryOpExpression) {
+                result = isInvariant(((UnaryOpExpression) expr).getOperand());
+            }
+            invariant.put(expr, result);
+            return result;
+        }
+    }
+
+    // An operator over literals alone is left to ConstantFolder
+    private boolean readsVariable(Expression expr) {
+        Boolean known = readsVariable.get(expr);
+        if (known != null) {
+            return known;
+        }
+        boolean result = false;
+        if (expr instanceof VariableExpression || expr instanceof InvariantExpression) {
+            result = true;
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            result = readsVariable(binary.getLeft()) || readsVariable(binary.getRight());
+        } else if (expr instanceof UnaryOpExpression) {
+            result = readsVariable(((UnaryOpExpression) expr).getOperand());
+        }
+        readsVariable.put(expr, result);
+        return result;
+    }
+}
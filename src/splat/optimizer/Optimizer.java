@@ -0,0 +1,71 @@
+package splat.optimizer;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Statement;
+
+/**
+ * Rewrites an analyzed program into one that prints the same and fails
+ * the same way, with less work left to do as it runs.  What it does
+ * depends on the level:
+ *
+ *   0  nothing
+ *   1  fold constants, and drop branches and loops that never run (see
+ *      ConstantFolder)
+ *   2  also work out loop invariants once per run of the loop (see
+ *      LoopInvariantMotion), and operators written more than once in a
+ *      statement once (see CommonSubexpressions)
+ *
+ * Function bodies that haven't been loaded yet are only folded, when
+ * they are loaded: level 2 adds slots to the frame, which a call to the
+ * function has made by then.  It also needs resolved bodies.
+ */
+public class Optimizer {
+
+    public static final int MAX_LEVEL = 2;
+
+    private final int level;
+
+    public Optimizer(int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Optimization level must be 0 to " + MAX_LEVEL + ": " + level);
+        }
+        this.level = level;
+    }
+
+    public void optimize(ProgramAST progAST) {
+        if (level == 0) {
+            return;
+        }
+
+        for (Declaration decl : progAST.getDecls()) {
+            if (!(decl instanceof FunctionDecl)) {
+                continue;
+            }
+            FunctionDecl funcDecl = (FunctionDecl) decl;
+            if (funcDecl.isBodyLoaded()) {
+                optimize(funcDecl.getStmts(), funcDecl.isResolved(), funcDecl::addSlots);
+            } else {
+                FunctionDecl.BodyLoader loader = funcDecl.getBodyLoader();
+                funcDecl.setBodyLoader(() -> {
+                    List<Statement> stmts = loader.load();
+                    new ConstantFolder().fold(stmts);
+                    return stmts;
+                });
+            }
+        }
+        optimize(progAST.getStmts(), progAST.isResolved(), progAST::addSlots);
+    }
+
+    private void optimize(List<Statement> stmts, boolean resolved, IntUnaryOperator addSlots) {
+        new ConstantFolder().fold(stmts);
+        if (level >= 2 && resolved) {
+            new LoopInvariantMotion(addSlots).hoist(stmts);
+            new CommonSubexpressions(addSlots).share(stmts);
+        }
+    }
+}
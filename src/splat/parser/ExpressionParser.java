@@ -0,0 +1,260 @@
+package splat.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenSource;
+import splat.parser.elements.*;
+
+/**
+ * Parses expressions with an explicit stack instead of Java recursion, so
+ * that nesting depth is limited by Parser.MAX_NESTING rather than by the
+ * thread stack.
+ *
+ * It follows the grammar the recursive parser used, token for token:
+ *
+ *   <expr>    ::= ( - <primary> )  |  ( not <primary> )
+ *               | ( <expr> <binop> <expr> )
+ *               | <primary>
+ *   <primary> ::= - <primary>  |  not <primary>  |  <literal>
+ *               | <label> ( <args> )  |  <label>  |  ( <expr>
+ *
+ * (A parenthesis that opens a <primary> is not closed by it.)  Tokens are
+ * consumed, and errors raised, in exactly the same order, so the trees
+ * and error messages are the same as before.
+ *
+ * Each level of nesting that still has work to do after its operand is
+ * parsed pushes a frame saying what that work is.  The frames live in
+ * arrays that are reused from one expression to the next.
+ */
+class ExpressionParser {
+
+    // What to do with an operand once it has been parsed
+    private static final byte CLOSE_UNARY = 0;   // ( op <primary> )
+    private static final byte AFTER_LEFT = 1;    // ( <expr> ... )
+    private static final byte AFTER_RIGHT = 2;   // ( <expr> op <expr> )
+    private static final byte PREFIX = 3;        // op <primary>
+    private static final byte AFTER_ARG = 4;     // label ( ..., <expr> ...
+
+    private final TokenSource tokens;
+
+    private byte[] frames = new byte[16];
+    private Token[] frameTokens = new Token[16];
+    private Object[] frameValues = new Object[16];
+    private int depth;
+    private int outerNesting;
+
+    ExpressionParser(TokenSource tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parses the expression at the next token, which is inside
+     * outerNesting blocks (see Parser.MAX_NESTING).
+     */
+    Expression parse(int outerNesting) throws ParseException {
+        this.outerNesting = outerNesting;
+        depth = 0;
+        try {
+            return run();
+        } finally {
+            Arrays.fill(frameTokens, 0, depth, null);
+            Arrays.fill(frameValues, 0, depth, null);
+        }
+    }
+
+    private Expression run() throws ParseException {
+        // Whether the next thing to parse is an <expr> or a <primary>
+        boolean primary = false;
+
+        while (true) {
+            Expression result = primary ? descendPrimary() : descendExpression();
+            if (result == null) {
+                // A frame was pushed; parse its operand next
+                primary = frames[depth - 1] == CLOSE_UNARY || frames[depth - 1] == PREFIX;
+                continue;
+            }
+
+            // Hand the operand to the frames waiting for it
+            while (depth > 0) {
+                int top = depth - 1;
+                byte frame = frames[top];
+                Token token = frameTokens[top];
+
+                if (frame == CLOSE_UNARY) {
+                    if (tokens.peek(0) != TokenKind.RIGHT_PAREN) {
+                        throw new ParseException("Expected closing ')' after unary expression", tokens.line(0), tokens.column(0));
+                    }
+                    tokens.advance();
+                    pop();
+                    result = new UnaryOpExpression(token.getValue(), result, token);
+
+                } else if (frame == AFTER_LEFT) {
+                    if (!peekBinaryOperator()) {
+                        throw new ParseException("Expected binary operator within parentheses", tokens.line(0), tokens.column(0));
+                    }
+                    frames[top] = AFTER_RIGHT;
+                    frameTokens[top] = nextToken();
+                    frameValues[top] = result;
+                    break;
+
+                } else if (frame == AFTER_RIGHT) {
+                    if (tokens.peek(0) != TokenKind.RIGHT_PAREN) {
+                        throw new ParseException("Expected closing ')' after binary expression", tokens.line(0), tokens.column(0));
+                    }
+                    tokens.advance();
+                    Expression left = (Expression) frameValues[top];
+                    pop();
+                    result = new BinaryOpExpression(left, token.getValue(), result, token);
+
+                } else if (frame == PREFIX) {
+                    pop();
+                    result = new UnaryOpExpression(token.getValue(), result, token);
+
+                } else {
+                    @SuppressWarnings("unchecked")
+                    List<Expression> arguments = (List<Expression>) frameValues[top];
+                    arguments.add(result);
+                    if (tokens.peek(0) != TokenKind.RIGHT_PAREN) {
+                        checkNext(TokenKind.COMMA);
+                    }
+                    if (tokens.peek(0) != TokenKind.RIGHT_PAREN) {
+                        break;
+                    }
+                    checkNext(TokenKind.RIGHT_PAREN);
+                    pop();
+                    result = new FunctionCallExpression(token.getValue(), arguments, token);
+                }
+            }
+
+            if (depth == 0) {
+                return result;
+            }
+            // The frame on top is waiting for another <expr>
+            primary = false;
+        }
+    }
+
+    /*
+     * Parses the start of an <expr>.  Returns the expression if it needed
+     * no frame, or null after pushing one.
+     */
+    private Expression descendExpression() throws ParseException {
+        if (tokens.peek(0) != TokenKind.LEFT_PAREN) {
+            return descendPrimary();
+        }
+        checkNesting();
+        tokens.advance();
+
+        TokenKind next = tokens.peek(0);
+        if (next == TokenKind.MINUS || next == TokenKind.NOT) {
+            push(CLOSE_UNARY, nextToken(), null);
+        } else {
+            push(AFTER_LEFT, null, null);
+        }
+        return null;
+    }
+
+    /*
+     * Parses the start of a <primary>, the same way.
+     */
+    private Expression descendPrimary() throws ParseException {
+        if (tokens.atEnd()) {
+            throw new ParseException("Unexpected end of input", -1, -1);
+        }
+
+        switch (tokens.peek(0)) {
+            case MINUS:
+            case NOT:
+                checkNesting();
+                push(PREFIX, nextToken(), null);
+                return null;
+            case INT_LITERAL:
+            case TRUE:
+            case FALSE:
+            case STRING_LITERAL: {
+                Token token = nextToken();
+                return new LiteralExpression(token.getValue(), token);
+            }
+            case LABEL: {
+                Token token = nextToken();
+                if (tokens.peek(0) != TokenKind.LEFT_PAREN) {
+                    return new VariableExpression(token.getValue(), token);
+                }
+                checkNesting();
+                checkNext(TokenKind.LEFT_PAREN);
+                List<Expression> arguments = new ArrayList<>();
+                if (tokens.peek(0) == TokenKind.RIGHT_PAREN) {
+                    checkNext(TokenKind.RIGHT_PAREN);
+                    return new FunctionCallExpression(token.getValue(), arguments, token);
+                }
+                push(AFTER_ARG, token, arguments);
+                // Arguments are <expr>s, not <primary>s
+                return descendExpression();
+            }
+            case LEFT_PAREN:
+                tokens.advance();
+                return descendExpression();
+            default:
+                throw new ParseException("Unexpected token in expression: " + tokens.lexeme(0), tokens.line(0), tokens.column(0));
+        }
+    }
+
+    private boolean peekBinaryOperator() {
+        if (tokens.atEnd()) return false;
+        switch (tokens.peek(0)) {
+            case PLUS: case MINUS: case TIMES: case DIVIDE: case MODULO:
+            case EQUAL: case LESS: case GREATER: case LESS_EQUAL: case GREATER_EQUAL:
+            case AND: case OR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void checkNext(TokenKind expected) throws ParseException {
+        if (tokens.peek(0) != expected) {
+            throw new ParseException("Expected '" + expected.getText() + "', got '"
+                    + tokens.lexeme(0) + "'.", tokens.line(0), tokens.column(0));
+        }
+        tokens.advance();
+    }
+
+    private Token nextToken() {
+        Token token = tokens.token(0);
+        tokens.advance();
+        return token;
+    }
+
+    /*
+     * Throws if the frame the next token opens would nest the expression
+     * deeper than Parser.MAX_NESTING, counting the blocks around it.
+     */
+    private void checkNesting() throws ParseException {
+        if (outerNesting + depth >= Parser.MAX_NESTING) {
+            throw Parser.tooDeep(tokens);
+        }
+    }
+
+    private void push(byte frame, Token token, Object value) {
+        if (depth == frames.length) {
+            int capacity = depth * 2;
+            frames = Arrays.copyOf(frames, capacity);
+            frameTokens = Arrays.copyOf(frameTokens, capacity);
+            frameValues = Arrays.copyOf(frameValues, capacity);
+        }
+        frames[depth] = frame;
+        frameTokens[depth] = token;
+        frameValues[depth] = value;
+        depth++;
+    }
+
+    private void pop() {
+        depth--;
+        frameTokens[depth] = null;
+        frameValues[depth] = null;
+    }
+}
@@ -0,0 +1,185 @@
+package splat.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import splat.Splat;
+import splat.lexer.LexException;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenSequence;
+import splat.parser.elements.*;
+
+/**
+ * Parses the top-level declarations of a program on a thread pool.
+ *
+ * A quick pre-scan of the token kinds finds where each declaration ends:
+ * a variable declaration is <label> : <type> with an optional ';', and a
+ * function ends at the first 'end ;' after its name, since the blocks
+ * nested inside it close with 'end if ;' or 'end while ;'.  Each
+ * declaration is then parsed on its own from a TokenCursor, while the
+ * main body is parsed on the calling thread.
+ *
+ * A declaration that parses to exactly where the pre-scan said it ends
+ * is the same declaration the sequential Parser would produce there.  If
+ * anything doesn't line up (the pre-scan gets lost, a piece fails or
+ * stops somewhere else) the whole program is parsed again with Parser,
+ * so error messages are the sequential ones.
+ */
+public class ParallelParser {
+
+    // Declarations handled by one task; tens of thousands of small
+    // functions would otherwise mean tens of thousands of tiny tasks
+    private static final int BATCH_SIZE = 64;
+
+    private final TokenSequence tokens;
+    private final ExecutorService pool;
+
+    /**
+     * Parses on Splat.workerPool(), whose threads have stacks deep enough
+     * for anything within Parser.MAX_NESTING.
+     */
+    public ParallelParser(TokenSequence tokens) {
+        this(tokens, Splat.workerPool());
+    }
+
+    public ParallelParser(TokenSequence tokens, ExecutorService pool) {
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+
+    public ProgramAST parse() throws ParseException, LexException {
+        ProgramAST progAST = parseInParallel();
+        if (progAST == null) {
+            return new Parser(tokens).parse();
+        }
+        return progAST;
+    }
+
+    /*
+     * Parses the declarations from up to to, unless one of them, or one
+     * in another batch, has failed.
+     */
+    private void parseBatch(int[] starts, int[] ends, Declaration[] decls, int from, int to,
+            AtomicBoolean failed) {
+        for (int i = from; i < to && !failed.get(); i++) {
+            TokenCursor cursor = new TokenCursor(tokens, starts[i]);
+            try {
+                decls[i] = new Parser(cursor).parseDeclaration();
+                if (cursor.position() != ends[i]) {
+                    failed.set(true);
+                }
+            } catch (ParseException | RuntimeException e) {
+                failed.set(true);
+            }
+        }
+    }
+
+    /*
+     * Waits for a batch.  Batches catch the errors parsing can make, so
+     * anything else they throw is passed on.
+     */
+    private static void await(Future<?> batch) {
+        try {
+            batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /*
+     * Returns null if the program has to be parsed sequentially instead.
+     */
+    private ProgramAST parseInParallel() {
+        int size = tokens.size();
+        if (size == 0 || tokens.kind(0) != TokenKind.PROGRAM) {
+            return null;
+        }
+
+        // Pre-scan for the boundaries of the declarations
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        int count = 0;
+        int pos = 1;
+        while (pos < size && tokens.kind(pos) != TokenKind.BEGIN) {
+            if (pos + 1 >= size) {
+                return null;
+            }
+            int end;
+            switch (tokens.kind(pos + 1)) {
+                case COLON:
+                    end = pos + 3;
+                    if (end < size && tokens.kind(end) == TokenKind.SEMICOLON) {
+                        end++;
+                    }
+                    break;
+                case LEFT_PAREN:
+                    end = functionEnd(pos);
+                    break;
+                default:
+                    return null;
+            }
+            if (end < 0 || end > size) {
+                return null;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = pos;
+            ends[count] = end;
+            count++;
+            pos = end;
+        }
+        if (pos >= size) {
+            return null;
+        }
+
+        Declaration[] decls = new Declaration[count];
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> batches = new ArrayList<>();
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            int[] batchStarts = starts;
+            int[] batchEnds = ends;
+            int batchFrom = from;
+            int batchTo = Math.min(from + BATCH_SIZE, count);
+            batches.add(pool.submit(() -> parseBatch(batchStarts, batchEnds, decls, batchFrom, batchTo, failed)));
+        }
+
+        List<Statement> stmts;
+        try {
+            stmts = new Parser(new TokenCursor(tokens, pos)).parseBody();
+        } catch (ParseException | RuntimeException e) {
+            stmts = null;
+        }
+
+        for (Future<?> batch : batches) {
+            await(batch);
+        }
+        if (failed.get() || stmts == null) {
+            return null;
+        }
+        return new ProgramAST(new ArrayList<>(Arrays.asList(decls)), stmts, tokens.token(0));
+    }
+
+    // The index just past the first 'end ;' from pos on, or -1
+    private int functionEnd(int pos) {
+        int size = tokens.size();
+        for (int i = pos; i + 1 < size; i++) {
+            if (tokens.kind(i) == TokenKind.END && tokens.kind(i + 1) == TokenKind.SEMICOLON) {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+}
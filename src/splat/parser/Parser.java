@@ -2,91 +2,249 @@ package splat.parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import splat.lexer.LexException;
 import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenSequence;
+import splat.lexer.TokenSource;
 import splat.parser.elements.*;
 
 public class Parser {
 
-	private List<Token> tokens;
+	/**
+	 * How deeply blocks and expressions may nest, counted together: each
+	 * if or while statement is a level, and so is each operator, call or
+	 * parenthesis inside an expression.  Analysis, optimization and the
+	 * executors walk the tree recursively, so this is what keeps them
+	 * within the stack of a thread of Splat.STACK_SIZE.
+	 */
+	public static final int MAX_NESTING = 10_000;
+
+	private TokenSource tokens;
+	private ExpressionParser expressions;
+	
+	// Set when parsing from a TokenSequence, which lets bodies be skipped
+	private TokenCursor cursor;
+	private boolean lazyBodies;
+	private boolean strictSyntax;
+	
+	// The number of blocks around the statement being parsed
+	private int nesting;
+	
+	public Parser(TokenSequence tokens) {
+		this(new TokenCursor(tokens));
+	}
 	
-	public Parser(List<Token> tokens) {
+	/**
+	 * Parses tokens as they are pulled from the given source.  Only two
+	 * tokens of lookahead are ever needed (see peekTwoAhead).
+	 */
+	public Parser(TokenSource tokens) {
 		this.tokens = tokens;
+		this.expressions = new ExpressionParser(tokens);
+		if (tokens instanceof TokenCursor) {
+			this.cursor = (TokenCursor) tokens;
+		}
+	}
+	
+	/**
+	 * Skip over function bodies, and only parse one when it is first
+	 * needed (see FunctionDecl.getStmts()).  Signatures and local variable
+	 * declarations are still parsed up front.  Only possible when parsing
+	 * from a TokenSequence; ignored otherwise.
+	 */
+	public void setLazyFunctionBodies(boolean lazyBodies) {
+		this.lazyBodies = lazyBodies;
+	}
+	
+	/**
+	 * With lazy function bodies, still parse every body up front, so that
+	 * syntax errors are reported before anything runs.  The bodies are
+	 * still handed over through a loader, so that their semantic analysis
+	 * waits until they are first needed.
+	 */
+	public void setStrictSyntax(boolean strictSyntax) {
+		this.strictSyntax = strictSyntax;
 	}
 
 	/**
-	 * Compares the next token to an expected value, and throws
-	 * an exception if they don't match.  This removes the front-most
+	 * Compares the kind of the next token to an expected kind, and throws
+	 * an exception if they don't match.  This consumes the front-most
 	 * (next) token  
 	 * 
+	 * @param expected kind of the next token
+	 * @throws ParseException if the actual token doesn't match what 
+	 * 			was expected
+	 */
+	private void checkNext(TokenKind expected) throws ParseException {
+
+		TokenKind actual = tokens.peek(0);
+		
+		if (actual != expected) {
+			throw new ParseException("Expected '"+ expected.getText() + "', got '" 
+					+ tokens.lexeme(0)+ "'.", tokens.line(0), tokens.column(0));
+		}
+		tokens.advance();
+	}
+	
+	/**
+	 * Same as above, but for words such as 'is' that the lexer treats as
+	 * ordinary labels, so they have to be compared by their text.
+	 * 
 	 * @param expected value of the next token
 	 * @throws ParseException if the actual token doesn't match what 
 	 * 			was expected
 	 */
 	private void checkNext(String expected) throws ParseException {
 
-		Token tok = tokens.remove(0);
+		String actual = tokens.lexeme(0);
 		
-		if (!tok.getValue().equals(expected)) {
+		if (!actual.equals(expected)) {
 			throw new ParseException("Expected '"+ expected + "', got '" 
-					+ tok.getValue()+ "'.", tok);
+					+ actual + "'.", tokens.line(0), tokens.column(0));
 		}
+		tokens.advance();
 	}
 	
 	/**
-	 * Returns a boolean indicating whether or not the next token matches
-	 * the expected String value.  This does not remove the token from the
-	 * token list.
+	 * Returns a boolean indicating whether or not the next token is of
+	 * the expected kind.  This does not consume the token.
 	 * 
-	 * @param expected value of the next token
-	 * @return true iff the token value matches the expected string
+	 * @param expected kind of the next token
+	 * @return true iff the token kind matches the expected kind
 	 */
-	private boolean peekNext(String expected) {
-		// System.out.println(tokens.get(0).getValue());
-		return tokens.get(0).getValue().equals(expected);
+	private boolean peekNext(TokenKind expected) {
+		return tokens.peek(0) == expected;
 	}
 	
 	/**
 	 * Returns a boolean indicating whether or not the token directly after
-	 * the front most token matches the expected String value.  This does 
-	 * not remove any tokens from the token list.
+	 * the front most token is of the expected kind.  This does not consume
+	 * any tokens.
 	 * 
-	 * @param expected value of the token directly after the next token
-	 * @return true iff the value matches the expected string
+	 * @param expected kind of the token directly after the next token
+	 * @return true iff the kind matches the expected kind
+	 */
+	private boolean peekTwoAhead(TokenKind expected) {
+		return tokens.peek(1) == expected;
+	}
+	
+	/**
+	 * Consumes the next token and returns it as a standalone Token, for
+	 * the places where it is needed to build an AST element.
 	 */
-	private boolean peekTwoAhead(String expected) {
-		return tokens.get(1).getValue().equals(expected);
+	private Token nextToken() {
+		Token tok = tokens.token(0);
+		tokens.advance();
+		return tok;
 	}
 	
 	
+	public ProgramAST parse() throws ParseException, LexException {
+		
+		ProgramAST progAST;
+		try {
+			progAST = parseProgram();
+		} catch (ParseException ex) {
+			// A lexical error anywhere in the file wins over a parse error
+			tokens.finish();
+			throw ex;
+		} catch (RuntimeException | Error ex) {
+			tokens.close();
+			throw ex;
+		}
+		
+		tokens.finish();
+		return progAST;
+	}
+	
 	/*
 	 *  <program> ::= program <decls> begin <stmts> end ;
 	 */
-	public ProgramAST parse() throws ParseException {
+	private ProgramAST parseProgram() throws ParseException {
 		
 		try {
 			// Needed for 'program' token position info
-			Token startTok = tokens.get(0);
+			Token startTok = tokens.token(0);
 			
-			checkNext("program");
+			checkNext(TokenKind.PROGRAM);
 			
 			List<Declaration> decls = parseDecls();
 			
-			checkNext("begin");
+			checkNext(TokenKind.BEGIN);
 			
 			List<Statement> stmts = parseStmts();
 			
-			checkNext("end");
-			checkNext(";");
+			checkNext(TokenKind.END);
+			checkNext(TokenKind.SEMICOLON);
 	
 			return new ProgramAST(decls, stmts, startTok);
 			
-		// This might happen if we do a tokens.get(), and nothing is there!
+		// This might happen if we read a token, and nothing is there!
 		} catch (IndexOutOfBoundsException ex) {
 			
 			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
 		}
 	}
 	
+	/*
+	 * For ParallelParser: parses the one declaration that starts at the
+	 * next token.
+	 */
+	Declaration parseDeclaration() throws ParseException {
+		return parseDecl();
+	}
+	
+	/*
+	 * <body> ::= begin <stmts> end ;
+	 * 
+	 * Also used by ParallelParser for the main body of the program.
+	 */
+	List<Statement> parseBody() throws ParseException {
+		checkNext(TokenKind.BEGIN);
+		List<Statement> stmts = parseStmts();
+		checkNext(TokenKind.END);
+		checkNext(TokenKind.SEMICOLON);
+		return stmts;
+	}
+	
+	/*
+	 * Parses a function body that was skipped earlier, from its 'begin'.
+	 */
+	private List<Statement> parseSkippedBody() throws ParseException {
+		try {
+			return parseBody();
+		} catch (IndexOutOfBoundsException ex) {
+			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
+		}
+	}
+	
+	/*
+	 * Skips over a function body, from its 'begin' to the first 'end ;'
+	 * (blocks inside it end with 'end if' or 'end while'), and returns a
+	 * loader that parses it later.  In strict mode the body is parsed
+	 * right away instead, and the loader just hands it over.
+	 * 
+	 * Returns null if there is no 'end ;' to skip to, so that the body is
+	 * parsed now and fails the way it always did.
+	 */
+	private FunctionDecl.BodyLoader deferBody() throws ParseException {
+		if (strictSyntax) {
+			List<Statement> statements = parseBody();
+			return () -> statements;
+		}
+		
+		TokenSequence sequence = cursor.getSequence();
+		int start = cursor.position();
+		for (int i = start; i + 1 < sequence.size(); i++) {
+			if (sequence.kind(i) == TokenKind.END && sequence.kind(i + 1) == TokenKind.SEMICOLON) {
+				cursor.moveTo(i + 2);
+				return () -> new Parser(new TokenCursor(sequence, start)).parseSkippedBody();
+			}
+		}
+		return null;
+	}
+	
 	/*
 	 *  <decls> ::= (  <decl>  )*
 	 */
@@ -94,7 +252,7 @@ public class Parser {
 		
 		List<Declaration> decls = new ArrayList<Declaration>();
 		
-		while (!peekNext("begin")) {
+		while (!peekNext(TokenKind.BEGIN)) {
 			Declaration decl = parseDecl();
 			decls.add(decl);
 		}
@@ -107,13 +265,13 @@ public class Parser {
 	 */
 	private Declaration parseDecl() throws ParseException {
 
-		if (peekTwoAhead(":")) {
-			return parseVarDecl();
-		} else if (peekTwoAhead("(")) {
-			return parseFuncDecl();
-		} else {
-			Token tok = tokens.get(0);
-			throw new ParseException("Declaration expected", tok);
+		switch (tokens.peek(1)) {
+			case COLON:
+				return parseVarDecl();
+			case LEFT_PAREN:
+				return parseFuncDecl();
+			default:
+				throw new ParseException("Declaration expected", tokens.line(0), tokens.column(0));
 		}
 	}
 	
@@ -122,23 +280,26 @@ public class Parser {
 	 * 						<loc-var-decls> begin <stmts> end ;
 	 */
 	private FunctionDecl parseFuncDecl() throws ParseException {
-		Token funcName = tokens.remove(0);
-		checkNext("("); 
+		Token funcName = nextToken();
+		checkNext(TokenKind.LEFT_PAREN); 
 
 		List<VariableDecl> params = parseParams();
-		checkNext(")");
+		checkNext(TokenKind.RIGHT_PAREN);
 
-		checkNext(":");
-		Token returnTypeToken = tokens.remove(0);
+		checkNext(TokenKind.COLON);
+		Token returnTypeToken = nextToken();
 		Type returnType = getTypeFromToken(returnTypeToken); 
 		checkNext("is");
 
 		List<VariableDecl> localVars = parseLocVarDecls();
-		checkNext("begin");
+		if (lazyBodies && cursor != null) {
+			FunctionDecl.BodyLoader body = deferBody();
+			if (body != null) {
+				return new FunctionDecl(funcName.getValue(), returnType, params, localVars, body, funcName);
+			}
+		}
 
-		List<Statement> statements = parseStmts();
-		checkNext("end");
-		checkNext(";");
+		List<Statement> statements = parseBody();
 
 		return new FunctionDecl(funcName.getValue(), returnType, params, localVars, statements, funcName);
 	}
@@ -156,10 +317,10 @@ public class Parser {
 
 	private List<VariableDecl> parseParams() throws ParseException {
 		List<VariableDecl> params = new ArrayList<>();
-		while (!peekNext(")")) {
+		while (!peekNext(TokenKind.RIGHT_PAREN)) {
 			params.add(parseVarDecl());
-			if (!peekNext(")")) {
-				checkNext(",");
+			if (!peekNext(TokenKind.RIGHT_PAREN)) {
+				checkNext(TokenKind.COMMA);
 			}
 		}
 	
@@ -168,7 +329,7 @@ public class Parser {
 
 	private List<VariableDecl> parseLocVarDecls() throws ParseException {
 		List<VariableDecl> localVars = new ArrayList<>();
-		while (!peekNext("begin")) {
+		while (!peekNext(TokenKind.BEGIN)) {
 			localVars.add(parseVarDecl());
 		}
 	
@@ -179,12 +340,12 @@ public class Parser {
 	 * <var-decl> ::= <label> : <type> ;
 	 */
 	private VariableDecl parseVarDecl() throws ParseException {
-		Token varName = tokens.remove(0);
-		checkNext(":");
-		Token varTypeToken = tokens.remove(0);
+		Token varName = nextToken();
+		checkNext(TokenKind.COLON);
+		Token varTypeToken = nextToken();
 		Type varType = getTypeFromToken(varTypeToken); 
-		if (peekNext(";")) {
-			checkNext(";");
+		if (peekNext(TokenKind.SEMICOLON)) {
+			tokens.advance();
 		}
 
 		return new VariableDecl(varName.getValue(), varType, varName);
@@ -195,7 +356,7 @@ public class Parser {
 	 */
 	private List<Statement> parseStmts() throws ParseException {
 		List<Statement> statements = new ArrayList<>();
-		while (!peekNext("end") && !peekNext("else") && !peekNext("end if") && !peekNext("end while")) {
+		while (!peekNext(TokenKind.END) && !peekNext(TokenKind.ELSE)) {
 			Statement sttm = parseStmt();
 			statements.add(sttm);
 		}
@@ -204,54 +365,54 @@ public class Parser {
 	}
 
 	private Statement parseStmt() throws ParseException {
-		Token tok = tokens.get(0);
-		String tok_value = tok.getValue();
-		String tok_type = tok.getType();
-	
-		if (tok_value.equals("if")) {
-			return parseIfStatement();
-		} else if (tok_value.equals("while")) {
-			return parseWhileStatement();
-		} else if (tok_value.equals("print")) {
-			return parsePrintStatement();
-		} else if (tok_value.equals("print_line")) {
-			return parsePrintLineStatement();
-		} else if (tok_value.equals("return")) {
-			return parseReturnStatement();
-		} else if (tok_type.equals("label")) {
-			if (peekTwoAhead("(")) {
-				return parseFunctionCallStatement();
-			} else {
-				return parseAssignmentStatement();
-			}
-		} else {
-			throw new ParseException("Unexpected token in statement: " + tok_value, tok);
+		switch (tokens.peek(0)) {
+			case IF:
+				return parseIfStatement();
+			case WHILE:
+				return parseWhileStatement();
+			case PRINT:
+				return parsePrintStatement();
+			case PRINT_LINE:
+				return parsePrintLineStatement();
+			case RETURN:
+				return parseReturnStatement();
+			case LABEL:
+				if (peekTwoAhead(TokenKind.LEFT_PAREN)) {
+					return parseFunctionCallStatement();
+				} else {
+					return parseAssignmentStatement();
+				}
+			default:
+				throw new ParseException("Unexpected token in statement: " + tokens.lexeme(0),
+						tokens.line(0), tokens.column(0));
 		}
 	}
 
 	
 
 	private Statement parseIfStatement() throws ParseException {
-		Token ifToken = tokens.remove(0);
+		enterBlock();
+		Token ifToken = nextToken();
 		Expression condition = parseExpression();
-		checkNext("then");
+		checkNext(TokenKind.THEN);
 	
 		List<Statement> thenBranch = parseStmts();
 		List<Statement> elseBranch = new ArrayList<>();
-		if (peekNext("else")) {
-			tokens.remove(0);
+		if (peekNext(TokenKind.ELSE)) {
+			tokens.advance();
 			elseBranch = parseStmts();
 		}
 	
-		checkNext("end");
-		checkNext("if");
-		checkNext(";");
+		checkNext(TokenKind.END);
+		checkNext(TokenKind.IF);
+		checkNext(TokenKind.SEMICOLON);
+		nesting--;
 		return new IfStatement(condition, thenBranch, elseBranch, ifToken);
 	}
 
 	private Statement parsePrintLineStatement() throws ParseException {
-		Token printLineToken = tokens.remove(0);
-		checkNext(";");
+		Token printLineToken = nextToken();
+		checkNext(TokenKind.SEMICOLON);
 		return new PrintLineStatement(printLineToken);
 	}
 	
@@ -259,14 +420,16 @@ public class Parser {
 	
 
 	private Statement parseWhileStatement() throws ParseException {
-		Token whileToken = tokens.remove(0);
+		enterBlock();
+		Token whileToken = nextToken();
 		Expression condition = parseExpression();
-		checkNext("do");
+		checkNext(TokenKind.DO);
 
 		List<Statement> body = parseStmts();
-		checkNext("end");
-		checkNext("while");
-		checkNext(";");
+		checkNext(TokenKind.END);
+		checkNext(TokenKind.WHILE);
+		checkNext(TokenKind.SEMICOLON);
+		nesting--;
 		return new WhileStatement(condition, body, whileToken);
 	}
 	
@@ -274,10 +437,10 @@ public class Parser {
 	
 	
 	private Statement parsePrintStatement() throws ParseException {
-		Token printToken = tokens.remove(0);
+		Token printToken = nextToken();
 		Expression expr = parseExpression();
 	
-		checkNext(";");
+		checkNext(TokenKind.SEMICOLON);
 		return new PrintStatement(expr, printToken);
 	}
 	
@@ -285,148 +448,67 @@ public class Parser {
 	
 
 	private Statement parseReturnStatement() throws ParseException {
-		Token returnToken = tokens.remove(0);
+		Token returnToken = nextToken();
 		Expression expr = null;
-		if (!peekNext(";")) {
+		if (!peekNext(TokenKind.SEMICOLON)) {
 			expr = parseExpression();
 		}
 	
-		checkNext(";");
+		checkNext(TokenKind.SEMICOLON);
 		return new ReturnStatement(expr, returnToken);
 	}
 	
 	
 
 	private Statement parseAssignmentStatement() throws ParseException {
-		Token varName = tokens.remove(0);
-		checkNext(":=");
+		Token varName = nextToken();
+		checkNext(TokenKind.ASSIGN);
 		Expression expr = parseExpression();
-		checkNext(";");
+		checkNext(TokenKind.SEMICOLON);
 		
 		return new AssignmentStatement(varName.getValue(), expr, varName);
 
 	}
 
 	private Statement parseFunctionCallStatement() throws ParseException {
-		Token functionNameToken = tokens.remove(0);
-		checkNext("(");
+		Token functionNameToken = nextToken();
+		checkNext(TokenKind.LEFT_PAREN);
 		List<Expression> arguments = new ArrayList<>();
-		while (!peekNext(")")) {
+		while (!peekNext(TokenKind.RIGHT_PAREN)) {
 			arguments.add(parseExpression());
-			if (!peekNext(")")) {
-				checkNext(",");
+			if (!peekNext(TokenKind.RIGHT_PAREN)) {
+				checkNext(TokenKind.COMMA);
 			}
 		}
 	
-		checkNext(")");
-		checkNext(";");
+		checkNext(TokenKind.RIGHT_PAREN);
+		checkNext(TokenKind.SEMICOLON);
 	
 		return new FunctionCallStatement(functionNameToken.getValue(), arguments, functionNameToken);
 	}
 	
-	private boolean peekNextType(String expected) {
-		return tokens.get(0).getType().equals(expected);
-	}
-	
-	private Expression parseExpression() throws ParseException {
-		if (peekNext("(")) {
-			tokens.remove(0);
-
-			if ((peekNext("-") && peekNextType("operator")) || (peekNext("not") && peekNextType("operator"))) {
-				Token operatorToken = tokens.remove(0);
-				String operator = operatorToken.getValue();
-	
-				Expression operand = parsePrimaryExpression();
-				if (!peekNext(")")) {
-					throw new ParseException("Expected closing ')' after unary expression", tokens.get(0));
-				}
-				tokens.remove(0);
-	
-				return new UnaryOpExpression(operator, operand, operatorToken);
-			}
-
-			Expression leftExpr = parseExpression();
-			if (!peekNextBinaryOperator()) {
-				throw new ParseException("Expected binary operator within parentheses", tokens.get(0));
-			}
-	
-			Token operatorToken = tokens.remove(0);
-			String operator = operatorToken.getValue();
-			Expression rightExpr = parseExpression();
-	
-			if (!peekNext(")")) {
-				throw new ParseException("Expected closing ')' after binary expression", tokens.get(0));
-			}
-			tokens.remove(0);
-	
-			return new BinaryOpExpression(leftExpr, operator, rightExpr, operatorToken);
-		} else {
-			return parsePrimaryExpression();
+	/*
+	 * Counts the block that the next token opens, and throws if that
+	 * nests it deeper than MAX_NESTING.
+	 */
+	private void enterBlock() throws ParseException {
+		if (nesting == MAX_NESTING) {
+			throw tooDeep(tokens);
 		}
+		nesting++;
 	}
 	
-
-	private boolean peekNextBinaryOperator() {
-		if (tokens.isEmpty()) return false;
-		String nextValue = tokens.get(0).getValue();
-		return nextValue.equals("+") || nextValue.equals("-") || nextValue.equals("*") || 
-			   nextValue.equals("/") || nextValue.equals("%") || nextValue.equals("==") ||
-			   nextValue.equals("<") || nextValue.equals(">") || nextValue.equals("<=") || 
-			   nextValue.equals(">=") || nextValue.equals("!=") || nextValue.equals("and") ||
-			   nextValue.equals("or");
-	}
-	
-
-	private Expression parsePrimaryExpression() throws ParseException {
-		if (tokens.isEmpty()) {
-			throw new ParseException("Unexpected end of input", null);
-		}
-	
-		Token token = tokens.remove(0);
-		if ((token.getValue().equals("-") && token.getType().equals("operator")) || 
-			(token.getValue().equals("not") && token.getType().equals("operator"))) {
-			String operator = token.getValue();
-			Expression rightExpr = parsePrimaryExpression();
-			return new UnaryOpExpression(operator, rightExpr, token);
-		} 
-		else if (token.getType().equals("int-literal")) {
-			return new LiteralExpression(token.getValue(), token);
-		} else if (token.getType().equals("bool-literal")) {
-			return new LiteralExpression(token.getValue(), token);
-		} else if (token.getType().equals("string-literal")) {
-			return new LiteralExpression(token.getValue(), token);
-		} 
-		else if (token.getType().equals("label")) {
-			if (peekNext("(")) {
-				return parseFunctionCall(token);
-			} else {
-				return new VariableExpression(token.getValue(), token);
-			}
-		} 
-		else if (token.getValue().equals("(")) {
-			Expression groupedExpr = parseExpression();
-			return groupedExpr;
-		} 
-		else {
-			throw new ParseException("Unexpected token in expression: " + token.getValue(), token);
-		}
+	/*
+	 * The error for a block or an expression that the next token would
+	 * nest deeper than MAX_NESTING.
+	 */
+	static ParseException tooDeep(TokenSource tokens) {
+		return new ParseException("Nested more than " + MAX_NESTING + " levels deep",
+				tokens.line(0), tokens.column(0));
 	}
 	
-	
-
-	private Expression parseFunctionCall(Token functionNameToken) throws ParseException {
-		checkNext("(");
-		List<Expression> arguments = new ArrayList<>();
-		while (!peekNext(")")) {
-			arguments.add(parseExpression());
-			if (!peekNext(")")) {
-				checkNext(",");
-			}
-		}
-	
-		checkNext(")");
-	
-		return new FunctionCallExpression(functionNameToken.getValue(), arguments, functionNameToken);
+	private Expression parseExpression() throws ParseException {
+		return expressions.parse(nesting);
 	}
 	
 }	
@@ -0,0 +1,85 @@
+package splat.parser;
+
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenSequence;
+import splat.lexer.TokenSource;
+
+/**
+ * A position in a TokenSequence.  Consuming a token just moves the
+ * position forward, so parsing never copies or shifts the tokens and
+ * runs in time linear in the size of the program.
+ */
+public class TokenCursor implements TokenSource {
+
+    private final TokenSequence tokens;
+    private int pos;
+
+    public TokenCursor(TokenSequence tokens) {
+        this(tokens, 0);
+    }
+
+    public TokenCursor(TokenSequence tokens, int pos) {
+        this.tokens = tokens;
+        this.pos = pos;
+    }
+
+    @Override
+    public TokenKind peek(int ahead) {
+        return tokens.kind(pos + ahead);
+    }
+
+    @Override
+    public String lexeme(int ahead) {
+        return tokens.lexeme(pos + ahead);
+    }
+
+    @Override
+    public int line(int ahead) {
+        return tokens.line(pos + ahead);
+    }
+
+    @Override
+    public int column(int ahead) {
+        return tokens.column(pos + ahead);
+    }
+
+    @Override
+    public Token token(int ahead) {
+        return tokens.token(pos + ahead);
+    }
+
+    @Override
+    public boolean atEnd() {
+        return pos >= tokens.size();
+    }
+
+    @Override
+    public void advance() {
+        pos++;
+    }
+
+    /**
+     * The sequence was lexed completely before parsing started, so there
+     * is nothing left to check.
+     */
+    @Override
+    public void finish() {
+    }
+
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * Jumps to the given position, e.g. to skip over tokens that will be
+     * parsed later from a cursor of their own.
+     */
+    public void moveTo(int pos) {
+        this.pos = pos;
+    }
+
+    public TokenSequence getSequence() {
+        return tokens;
+    }
+}
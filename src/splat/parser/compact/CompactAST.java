@@ -0,0 +1,404 @@
+package splat.parser.compact;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import splat.lexer.TokenKind;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+
+/**
+ * A whole program's AST packed into two int arrays and two string pools,
+ * instead of one heap object per node.
+ *
+ * A node is an index into the node arena.  The node starts with its kind,
+ * line and column, followed by a fixed number of fields for its kind:
+ * names and operators are indexes into the name pool, literal text is an
+ * index into the constant pool, child nodes are node indexes, and lists
+ * of children (statements, declarations, arguments) are indexes into the
+ * list arena, where a list is its size followed by its nodes.  Every name
+ * and constant is stored once, however often it appears.
+ *
+ * The accessors below read a node's fields by what they mean, and accept()
+ * dispatches on a node's kind to a Visitor.  decode() turns the arena back
+ * into the ProgramAST the SemanticAnalyzer and Executor run on.
+ *
+ * writeTo() and read() store the arenas and pools as they are, so loading
+ * a saved program is a few bulk copies rather than a parse.
+ */
+public final class CompactAST {
+
+    public enum Kind {
+        PROGRAM,         // declarations, statements
+        VARIABLE_DECL,   // name, type
+        FUNCTION_DECL,   // name, return type, parameters, locals, statements
+        ASSIGNMENT,      // name, expression
+        CALL_STATEMENT,  // name, arguments
+        IF,              // condition, statements, else statements
+        WHILE,           // condition, statements
+        PRINT,           // expression
+        PRINT_LINE,      //
+        RETURN,          // expression or NONE
+        LITERAL,         // constant, token kind
+        VARIABLE,        // name
+        CALL,            // name, arguments
+        UNARY,           // operator, operand
+        BINARY           // operator, left, right
+    }
+
+    /**
+     * Stands for a missing child, such as the value of a bare 'return'.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Changes whenever the layout of the arenas or of the saved form does.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x53504C41;   // "SPLA"
+
+    // The magic number, version, length and checksum come before the rest
+    private static final int FILE_HEADER = 16;
+
+    // The kind, line and column come before a node's fields
+    static final int HEADER = 3;
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final TokenKind[] TOKEN_KINDS = TokenKind.values();
+    static final Type[] TYPES = { Type.INTEGER, Type.BOOLEAN, Type.STRING, Type.VOID };
+
+    private final int[] nodes;
+    private final int[] lists;
+    private final String[] names;
+    private final String[] constants;
+    private final int root;
+
+    CompactAST(int[] nodes, int[] lists, String[] names, String[] constants, int root) {
+        this.nodes = nodes;
+        this.lists = lists;
+        this.names = names;
+        this.constants = constants;
+        this.root = root;
+    }
+
+    /**
+     * Packs a program.  The bodies of functions that haven't been loaded
+     * yet are loaded first.
+     */
+    public static CompactAST encode(ProgramAST progAST) {
+        return new Encoder().encode(progAST);
+    }
+
+    /**
+     * Builds the object tree for the whole program.
+     */
+    public ProgramAST decode() {
+        return new Decoder(this, false).decodeProgram();
+    }
+
+    /**
+     * Builds the object tree for the program, except that each function's
+     * statements are only built when FunctionDecl.getStmts() first asks
+     * for them.  The loaders can be run any number of times, and each run
+     * builds a fresh copy.
+     */
+    public ProgramAST decodeLazily() {
+        return new Decoder(this, true).decodeProgram();
+    }
+
+    // -------------------------------------------------------------------
+    // Accessors
+
+    public int root() {
+        return root;
+    }
+
+    public Kind kind(int node) {
+        return KINDS[nodes[node]];
+    }
+
+    public int line(int node) {
+        return nodes[node + 1];
+    }
+
+    public int column(int node) {
+        return nodes[node + 2];
+    }
+
+    private int field(int node, int i) {
+        return nodes[node + HEADER + i];
+    }
+
+    /**
+     * The label of a declaration, assignment, variable or call.
+     */
+    public String name(int node) {
+        return names[field(node, 0)];
+    }
+
+    /**
+     * The type of a variable declaration, or the return type of a
+     * function.
+     */
+    public Type type(int node) {
+        return TYPES[field(node, 1)];
+    }
+
+    public int declarations(int program) {
+        return field(program, 0);
+    }
+
+    public int parameters(int function) {
+        return field(function, 2);
+    }
+
+    public int locals(int function) {
+        return field(function, 3);
+    }
+
+    /**
+     * The statements of a program, function or loop, or the then branch
+     * of an if.
+     */
+    public int statements(int node) {
+        switch (kind(node)) {
+            case PROGRAM:
+            case IF:
+            case WHILE:
+                return field(node, 1);
+            case FUNCTION_DECL:
+                return field(node, 4);
+            default:
+                throw new IllegalArgumentException("No statements in " + kind(node));
+        }
+    }
+
+    public int elseStatements(int ifNode) {
+        return field(ifNode, 2);
+    }
+
+    public int condition(int node) {
+        return field(node, 0);
+    }
+
+    /**
+     * The expression of an assignment, print or return (NONE for a bare
+     * return).
+     */
+    public int expression(int node) {
+        return kind(node) == Kind.ASSIGNMENT ? field(node, 1) : field(node, 0);
+    }
+
+    public int arguments(int call) {
+        return field(call, 1);
+    }
+
+    public String operator(int node) {
+        return names[field(node, 0)];
+    }
+
+    public int operand(int unary) {
+        return field(unary, 1);
+    }
+
+    public int left(int binary) {
+        return field(binary, 1);
+    }
+
+    public int right(int binary) {
+        return field(binary, 2);
+    }
+
+    /**
+     * The text of a literal, as the lexer produced it.
+     */
+    public String value(int literal) {
+        return constants[field(literal, 0)];
+    }
+
+    /**
+     * INT_LITERAL, STRING_LITERAL, TRUE or FALSE.
+     */
+    public TokenKind literalKind(int literal) {
+        return TOKEN_KINDS[field(literal, 1)];
+    }
+
+    public int size(int list) {
+        return lists[list];
+    }
+
+    public int get(int list, int i) {
+        return lists[list + 1 + i];
+    }
+
+    // -------------------------------------------------------------------
+    // Visitor
+
+    public interface Visitor<R> {
+        R visitProgram(CompactAST ast, int node);
+        R visitVariableDecl(CompactAST ast, int node);
+        R visitFunctionDecl(CompactAST ast, int node);
+        R visitAssignment(CompactAST ast, int node);
+        R visitCallStatement(CompactAST ast, int node);
+        R visitIf(CompactAST ast, int node);
+        R visitWhile(CompactAST ast, int node);
+        R visitPrint(CompactAST ast, int node);
+        R visitPrintLine(CompactAST ast, int node);
+        R visitReturn(CompactAST ast, int node);
+        R visitLiteral(CompactAST ast, int node);
+        R visitVariable(CompactAST ast, int node);
+        R visitCall(CompactAST ast, int node);
+        R visitUnary(CompactAST ast, int node);
+        R visitBinary(CompactAST ast, int node);
+    }
+
+    public <R> R accept(int node, Visitor<R> visitor) {
+        switch (kind(node)) {
+            case PROGRAM: return visitor.visitProgram(this, node);
+            case VARIABLE_DECL: return visitor.visitVariableDecl(this, node);
+            case FUNCTION_DECL: return visitor.visitFunctionDecl(this, node);
+            case ASSIGNMENT: return visitor.visitAssignment(this, node);
+            case CALL_STATEMENT: return visitor.visitCallStatement(this, node);
+            case IF: return visitor.visitIf(this, node);
+            case WHILE: return visitor.visitWhile(this, node);
+            case PRINT: return visitor.visitPrint(this, node);
+            case PRINT_LINE: return visitor.visitPrintLine(this, node);
+            case RETURN: return visitor.visitReturn(this, node);
+            case LITERAL: return visitor.visitLiteral(this, node);
+            case VARIABLE: return visitor.visitVariable(this, node);
+            case CALL: return visitor.visitCall(this, node);
+            case UNARY: return visitor.visitUnary(this, node);
+            default: return visitor.visitBinary(this, node);
+        }
+    }
+
+    // -------------------------------------------------------------------
+    // Saved form
+
+    /**
+     * Writes the program in the form read() reads: a header with a magic
+     * number, FORMAT_VERSION, the length and a CRC-32 of the rest, then the
+     * root, the two arenas and the two pools, all big-endian.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(bodySize());
+        body.putInt(root);
+        putInts(body, nodes);
+        putInts(body, lists);
+        putStrings(body, names);
+        putStrings(body, constants);
+        body.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(body.remaining());
+        data.writeInt((int) crc.getValue());
+        data.write(body.array(), 0, body.remaining());
+        data.flush();
+    }
+
+    /**
+     * Reads a program written by writeTo(), from the buffer's position on.
+     * Returns null if the buffer doesn't hold one: a different version, a
+     * short or damaged file, or something else altogether.
+     */
+    public static CompactAST read(ByteBuffer src) {
+        ByteBuffer in = src.duplicate();
+        if (in.remaining() < FILE_HEADER || in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int length = in.getInt();
+        int checksum = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            return null;
+        }
+        ByteBuffer body = in.slice();
+        body.limit(length);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        try {
+            int root = body.getInt();
+            int[] nodes = getInts(body);
+            int[] lists = getInts(body);
+            String[] names = getStrings(body);
+            String[] constants = getStrings(body);
+            return new CompactAST(nodes, lists, names, constants, root);
+        } catch (RuntimeException e) {
+            // A checksum that matches by chance on a damaged file
+            return null;
+        }
+    }
+
+    private int bodySize() {
+        long size = 4 + 4L + 4L * nodes.length + 4L + 4L * lists.length
+                + stringsSize(names) + stringsSize(constants);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Program too large to save: " + size + " bytes");
+        }
+        return (int) size;
+    }
+
+    private static long stringsSize(String[] strings) {
+        long size = 4;
+        for (String s : strings) {
+            size += 4 + s.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    private static void putInts(ByteBuffer out, int[] ints) {
+        out.putInt(ints.length);
+        out.asIntBuffer().put(ints);
+        out.position(out.position() + 4 * ints.length);
+    }
+
+    private static int[] getInts(ByteBuffer in) {
+        int[] ints = new int[in.getInt()];
+        in.asIntBuffer().get(ints);
+        in.position(in.position() + 4 * ints.length);
+        return ints;
+    }
+
+    private static void putStrings(ByteBuffer out, String[] strings) {
+        out.putInt(strings.length);
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    private static String[] getStrings(ByteBuffer in) {
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    // -------------------------------------------------------------------
+    // Size
+
+    /**
+     * The bytes taken up by the arenas and the pool arrays, not counting
+     * the pooled strings themselves.
+     */
+    public long arenaBytes() {
+        return 4L * (nodes.length + lists.length) + 4L * (names.length + constants.length);
+    }
+}
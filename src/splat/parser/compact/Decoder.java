@@ -0,0 +1,218 @@
+package splat.parser.compact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import splat.lexer.Token;
+import splat.lexer.TokenKind;
+import splat.parser.elements.*;
+
+/**
+ * Builds the object tree for a CompactAST, one node at a time through
+ * the Visitor interface.  The tokens handed to the node constructors
+ * only carry what the nodes take from them: the line and column, the
+ * text, and for literals the kind.
+ */
+class Decoder implements CompactAST.Visitor<ASTElement> {
+
+    private final CompactAST ast;
+    private final boolean lazyBodies;
+
+    Decoder(CompactAST ast, boolean lazyBodies) {
+        this.ast = ast;
+        this.lazyBodies = lazyBodies;
+    }
+
+    ProgramAST decodeProgram() {
+        return (ProgramAST) ast.accept(ast.root(), this);
+    }
+
+    private Token token(int node, String text) {
+        return token(node, TokenKind.LABEL, text);
+    }
+
+    private Token token(int node, TokenKind kind, String text) {
+        return new Token(kind, text, ast.line(node), ast.column(node));
+    }
+
+    /*
+     * Operators are built from a stack of their own rather than by
+     * recursion, so that deeply nested expressions decode in constant Java
+     * stack, as the parser builds them.  Operands come off the stack in
+     * the order they were built: left before right.
+     */
+    private Expression expression(int node) {
+        int[] pending = new int[16];
+        int top = 0;
+        List<Expression> operands = new ArrayList<>();
+        pending[top++] = node;
+        while (top > 0) {
+            int next = pending[--top];
+            if (next < 0) {
+                // Both operands are built; ~next is the operator
+                next = ~next;
+                String operator = ast.operator(next);
+                Expression built;
+                if (ast.kind(next) == CompactAST.Kind.UNARY) {
+                    Expression operand = operands.remove(operands.size() - 1);
+                    built = new UnaryOpExpression(operator, operand, token(next, operator));
+                } else {
+                    Expression right = operands.remove(operands.size() - 1);
+                    Expression left = operands.remove(operands.size() - 1);
+                    built = new BinaryOpExpression(left, operator, right, token(next, operator));
+                }
+                operands.add(built);
+                continue;
+            }
+
+            CompactAST.Kind kind = ast.kind(next);
+            if (kind != CompactAST.Kind.UNARY && kind != CompactAST.Kind.BINARY) {
+                operands.add((Expression) ast.accept(next, this));
+                continue;
+            }
+            if (top + 3 > pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[top++] = ~next;
+            if (kind == CompactAST.Kind.UNARY) {
+                pending[top++] = ast.operand(next);
+            } else {
+                pending[top++] = ast.right(next);
+                pending[top++] = ast.left(next);
+            }
+        }
+        return operands.get(0);
+    }
+
+    private List<Expression> expressions(int list) {
+        int size = ast.size(list);
+        List<Expression> exprs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            exprs.add(expression(ast.get(list, i)));
+        }
+        return exprs;
+    }
+
+    private List<Statement> statements(int list) {
+        int size = ast.size(list);
+        List<Statement> stmts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stmts.add((Statement) ast.accept(ast.get(list, i), this));
+        }
+        return stmts;
+    }
+
+    private List<VariableDecl> variables(int list) {
+        int size = ast.size(list);
+        List<VariableDecl> varDecls = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            varDecls.add((VariableDecl) ast.accept(ast.get(list, i), this));
+        }
+        return varDecls;
+    }
+
+    @Override
+    public ASTElement visitProgram(CompactAST ast, int node) {
+        int list = ast.declarations(node);
+        int size = ast.size(list);
+        List<Declaration> decls = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            decls.add((Declaration) ast.accept(ast.get(list, i), this));
+        }
+        return new ProgramAST(decls, statements(ast.statements(node)),
+                token(node, TokenKind.PROGRAM.getText()));
+    }
+
+    @Override
+    public ASTElement visitVariableDecl(CompactAST ast, int node) {
+        String name = ast.name(node);
+        return new VariableDecl(name, ast.type(node), token(node, name));
+    }
+
+    @Override
+    public ASTElement visitFunctionDecl(CompactAST ast, int node) {
+        String name = ast.name(node);
+        Token token = token(node, name);
+        List<VariableDecl> params = variables(ast.parameters(node));
+        List<VariableDecl> localVars = variables(ast.locals(node));
+        int body = ast.statements(node);
+        if (lazyBodies) {
+            return new FunctionDecl(name, ast.type(node), params, localVars, () -> statements(body), token);
+        }
+        return new FunctionDecl(name, ast.type(node), params, localVars, statements(body), token);
+    }
+
+    @Override
+    public ASTElement visitAssignment(CompactAST ast, int node) {
+        String name = ast.name(node);
+        return new AssignmentStatement(name, expression(ast.expression(node)),
+                token(node, name));
+    }
+
+    @Override
+    public ASTElement visitCallStatement(CompactAST ast, int node) {
+        String name = ast.name(node);
+        return new FunctionCallStatement(name, expressions(ast.arguments(node)),
+                token(node, name));
+    }
+
+    @Override
+    public ASTElement visitIf(CompactAST ast, int node) {
+        return new IfStatement(expression(ast.condition(node)), statements(ast.statements(node)),
+                statements(ast.elseStatements(node)), token(node, TokenKind.IF.getText()));
+    }
+
+    @Override
+    public ASTElement visitWhile(CompactAST ast, int node) {
+        return new WhileStatement(expression(ast.condition(node)), statements(ast.statements(node)),
+                token(node, TokenKind.WHILE.getText()));
+    }
+
+    @Override
+    public ASTElement visitPrint(CompactAST ast, int node) {
+        return new PrintStatement(expression(ast.expression(node)),
+                token(node, TokenKind.PRINT.getText()));
+    }
+
+    @Override
+    public ASTElement visitPrintLine(CompactAST ast, int node) {
+        return new PrintLineStatement(token(node, TokenKind.PRINT_LINE.getText()));
+    }
+
+    @Override
+    public ASTElement visitReturn(CompactAST ast, int node) {
+        int value = ast.expression(node);
+        return new ReturnStatement(value == CompactAST.NONE ? null : expression(value),
+                token(node, TokenKind.RETURN.getText()));
+    }
+
+    @Override
+    public ASTElement visitLiteral(CompactAST ast, int node) {
+        String value = ast.value(node);
+        return new LiteralExpression(value, token(node, ast.literalKind(node), value));
+    }
+
+    @Override
+    public ASTElement visitVariable(CompactAST ast, int node) {
+        String name = ast.name(node);
+        return new VariableExpression(name, token(node, name));
+    }
+
+    @Override
+    public ASTElement visitCall(CompactAST ast, int node) {
+        String name = ast.name(node);
+        return new FunctionCallExpression(name, expressions(ast.arguments(node)),
+                token(node, name));
+    }
+
+    @Override
+    public ASTElement visitUnary(CompactAST ast, int node) {
+        return expression(node);
+    }
+
+    @Override
+    public ASTElement visitBinary(CompactAST ast, int node) {
+        return expression(node);
+    }
+}
@@ -0,0 +1,271 @@
+package splat.parser.compact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.lexer.TokenKind;
+import splat.parser.elements.*;
+
+/**
+ * Writes a ProgramAST into the arenas of a CompactAST.  A node's slots are
+ * reserved before its children are written, so a parent always comes
+ * before its children in the node arena.
+ */
+class Encoder {
+
+    private int[] nodes = new int[1024];
+    private int nodeSize;
+    private int[] lists = new int[256];
+    private int listSize;
+
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private String[] names = new String[64];
+    private final Map<String, Integer> constantIndex = new HashMap<>();
+    private String[] constants = new String[64];
+
+    CompactAST encode(ProgramAST progAST) {
+        int root = node(CompactAST.Kind.PROGRAM, progAST, 2);
+        int[] decls = new int[progAST.getDecls().size()];
+        for (int i = 0; i < decls.length; i++) {
+            decls[i] = declaration(progAST.getDecls().get(i));
+        }
+        set(root, 0, list(decls));
+        set(root, 1, statements(progAST.getStmts()));
+
+        return new CompactAST(Arrays.copyOf(nodes, nodeSize), Arrays.copyOf(lists, listSize),
+                Arrays.copyOf(names, nameIndex.size()), Arrays.copyOf(constants, constantIndex.size()),
+                root);
+    }
+
+    private int declaration(Declaration decl) {
+        if (decl instanceof VariableDecl) {
+            VariableDecl varDecl = (VariableDecl) decl;
+            int node = node(CompactAST.Kind.VARIABLE_DECL, varDecl, 2);
+            set(node, 0, name(varDecl.getLabel()));
+            set(node, 1, type(varDecl.getType()));
+            return node;
+        }
+        FunctionDecl funcDecl = (FunctionDecl) decl;
+        int node = node(CompactAST.Kind.FUNCTION_DECL, funcDecl, 5);
+        set(node, 0, name(funcDecl.getLabel()));
+        set(node, 1, type(funcDecl.getReturnType()));
+        set(node, 2, variables(funcDecl.getParameters()));
+        set(node, 3, variables(funcDecl.getLocalVars()));
+        set(node, 4, statements(funcDecl.getStmts()));
+        return node;
+    }
+
+    private int variables(List<VariableDecl> varDecls) {
+        int[] ids = new int[varDecls.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = declaration(varDecls.get(i));
+        }
+        return list(ids);
+    }
+
+    private int statements(List<Statement> stmts) {
+        int[] ids = new int[stmts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = statement(stmts.get(i));
+        }
+        return list(ids);
+    }
+
+    private int statement(Statement stmt) {
+        int node;
+        if (stmt instanceof AssignmentStatement) {
+            AssignmentStatement assignment = (AssignmentStatement) stmt;
+            node = node(CompactAST.Kind.ASSIGNMENT, stmt, 2);
+            set(node, 0, name(assignment.getVariableName()));
+            set(node, 1, expression(assignment.getExpression()));
+        } else if (stmt instanceof FunctionCallStatement) {
+            FunctionCallStatement call = (FunctionCallStatement) stmt;
+            node = node(CompactAST.Kind.CALL_STATEMENT, stmt, 2);
+            set(node, 0, name(call.getFunctionName()));
+            set(node, 1, expressions(call.getArguments()));
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            node = node(CompactAST.Kind.IF, stmt, 3);
+            set(node, 0, expression(ifStmt.getCondition()));
+            set(node, 1, statements(ifStmt.getThenBranch()));
+            set(node, 2, statements(ifStmt.getElseBranch()));
+        } else if (stmt instanceof WhileStatement) {
+            WhileStatement whileStmt = (WhileStatement) stmt;
+            node = node(CompactAST.Kind.WHILE, stmt, 2);
+            set(node, 0, expression(whileStmt.getCondition()));
+            set(node, 1, statements(whileStmt.getBody()));
+        } else if (stmt instanceof PrintStatement) {
+            node = node(CompactAST.Kind.PRINT, stmt, 1);
+            set(node, 0, expression(((PrintStatement) stmt).getExpression()));
+        } else if (stmt instanceof PrintLineStatement) {
+            node = node(CompactAST.Kind.PRINT_LINE, stmt, 0);
+        } else if (stmt instanceof ReturnStatement) {
+            Expression value = ((ReturnStatement) stmt).getReturnValue();
+            node = node(CompactAST.Kind.RETURN, stmt, 1);
+            set(node, 0, value == null ? CompactAST.NONE : expression(value));
+        } else {
+            throw new IllegalArgumentException("Unknown statement: " + stmt.getClass().getName());
+        }
+        return node;
+    }
+
+    private int expressions(List<Expression> exprs) {
+        int[] ids = new int[exprs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = expression(exprs.get(i));
+        }
+        return list(ids);
+    }
+
+    /*
+     * Operators are written from a stack of their own rather than by
+     * recursion, as in the Decoder.  Each pending expression comes with
+     * the parent node and field that get its node, and left operands are
+     * taken before right ones, so nodes are reserved in the same order as
+     * by recursion.
+     */
+    private int expression(Expression expr) {
+        int root = CompactAST.NONE;
+        List<Expression> pending = new ArrayList<>();
+        int[] targets = new int[32];
+        pending.add(expr);
+        targets[0] = CompactAST.NONE;
+        while (!pending.isEmpty()) {
+            int top = pending.size() - 1;
+            Expression next = pending.remove(top);
+            int parent = targets[2 * top];
+            int field = targets[2 * top + 1];
+            if (2 * top + 6 > targets.length) {
+                targets = Arrays.copyOf(targets, targets.length * 2);
+            }
+
+            int node;
+            if (next instanceof UnaryOpExpression) {
+                UnaryOpExpression unary = (UnaryOpExpression) next;
+                node = node(CompactAST.Kind.UNARY, next, 2);
+                set(node, 0, name(unary.getOperator()));
+                pending.add(unary.getOperand());
+                targets[2 * top] = node;
+                targets[2 * top + 1] = 1;
+            } else if (next instanceof BinaryOpExpression) {
+                BinaryOpExpression binary = (BinaryOpExpression) next;
+                node = node(CompactAST.Kind.BINARY, next, 3);
+                set(node, 0, name(binary.getOperator()));
+                pending.add(binary.getRight());
+                targets[2 * top] = node;
+                targets[2 * top + 1] = 2;
+                pending.add(binary.getLeft());
+                targets[2 * top + 2] = node;
+                targets[2 * top + 3] = 1;
+            } else {
+                node = operand(next);
+            }
+
+            if (parent == CompactAST.NONE) {
+                root = node;
+            } else {
+                set(parent, field, node);
+            }
+        }
+        return root;
+    }
+
+    private int operand(Expression expr) {
+        int node;
+        if (expr instanceof LiteralExpression) {
+            LiteralExpression literal = (LiteralExpression) expr;
+            node = node(CompactAST.Kind.LITERAL, expr, 2);
+            set(node, 0, constant(literal.getValue()));
+            set(node, 1, literalKind(literal).ordinal());
+        } else if (expr instanceof VariableExpression) {
+            node = node(CompactAST.Kind.VARIABLE, expr, 1);
+            set(node, 0, name(((VariableExpression) expr).getVariableName()));
+        } else if (expr instanceof FunctionCallExpression) {
+            FunctionCallExpression call = (FunctionCallExpression) expr;
+            node = node(CompactAST.Kind.CALL, expr, 2);
+            set(node, 0, name(call.getFunctionName()));
+            set(node, 1, expressions(call.getArguments()));
+        } else {
+            throw new IllegalArgumentException("Unknown expression: " + expr.getClass().getName());
+        }
+        return node;
+    }
+
+    private static TokenKind literalKind(LiteralExpression literal) {
+        Type type = literal.getType();
+        if (type == Type.INTEGER) {
+            return TokenKind.INT_LITERAL;
+        } else if (type == Type.STRING) {
+            return TokenKind.STRING_LITERAL;
+        }
+        return literal.getValue().equals(TokenKind.TRUE.getText()) ? TokenKind.TRUE : TokenKind.FALSE;
+    }
+
+    private static int type(Type type) {
+        for (int i = 0; i < CompactAST.TYPES.length; i++) {
+            if (CompactAST.TYPES[i] == type) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown type: " + type);
+    }
+
+    // Reserves a node with the given number of fields
+    private int node(CompactAST.Kind kind, ASTElement element, int fields) {
+        int size = CompactAST.HEADER + fields;
+        if (nodeSize + size > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, nodeSize + size));
+        }
+        int node = nodeSize;
+        nodes[node] = kind.ordinal();
+        nodes[node + 1] = element.getLine();
+        nodes[node + 2] = element.getColumn();
+        nodeSize += size;
+        return node;
+    }
+
+    private void set(int node, int field, int value) {
+        nodes[node + CompactAST.HEADER + field] = value;
+    }
+
+    private int list(int[] ids) {
+        int size = 1 + ids.length;
+        if (listSize + size > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listSize + size));
+        }
+        int list = listSize;
+        lists[list] = ids.length;
+        System.arraycopy(ids, 0, lists, list + 1, ids.length);
+        listSize += size;
+        return list;
+    }
+
+    private int name(String name) {
+        Integer index = nameIndex.get(name);
+        if (index == null) {
+            index = nameIndex.size();
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index * 2);
+            }
+            names[index] = name;
+            nameIndex.put(name, index);
+        }
+        return index;
+    }
+
+    private int constant(String value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constantIndex.size();
+            if (index == constants.length) {
+                constants = Arrays.copyOf(constants, index * 2);
+            }
+            constants[index] = value;
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+}
@@ -12,6 +12,14 @@ public abstract class ASTElement {
 		this.column = tok.getColumn();
 	}
 	
+	/**
+	 * For a node that stands in for another one, at the same position.
+	 */
+	protected ASTElement(ASTElement original) {
+		this.line = original.line;
+		this.column = original.column;
+	}
+	
 	public int getLine() {
 		return line;
 	}
@@ -8,6 +8,7 @@ import splat.lexer.Token;
 public class AssignmentStatement extends Statement {
     private String variableName;
     private Expression expression;
+    private int slot = -1;
 
     public AssignmentStatement(String variableName, Expression expression, Token tok) {
         super(tok);
@@ -15,6 +16,13 @@ public class AssignmentStatement extends Statement {
         this.expression = expression;
     }
 
+    private AssignmentStatement(AssignmentStatement original, Expression expression) {
+        super(original);
+        this.variableName = original.variableName;
+        this.expression = expression;
+        this.slot = original.slot;
+    }
+
     public String getVariableName() {
         return variableName;
     }
@@ -23,6 +31,21 @@ public class AssignmentStatement extends Statement {
         return expression;
     }
 
+    /**
+     * The frame slot of the variable, or -1 if it isn't declared.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * A copy of this (resolved) statement that assigns the value of
+     * another expression.
+     */
+    public AssignmentStatement withExpression(Expression expression) {
+        return new AssignmentStatement(this, expression);
+    }
+
     @Override
     public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type varType = varAndParamMap.get(variableName);
@@ -31,28 +54,41 @@ public class AssignmentStatement extends Statement {
         }
 
         Type exprType = expression.analyzeAndGetType(funcMap, varAndParamMap);
-        if (!exprType.equals(varType)) {
+        if (exprType != varType) {
             throw new SemanticAnalysisException("Type mismatch: " + variableName + " is " + varType + " but got " + exprType, getLine(), getColumn());
         }
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
-            throws ExecutionException, ReturnFromCall {
-        if (!varAndParamMap.containsKey(variableName)) {
+    public void resolve(FrameLayout layout) {
+        slot = layout.slot(variableName);
+        expression = expression.resolve(layout);
+    }
+
+    @Override
+    public Completion execute(Value[] frame) 
+            throws ExecutionException {
+        if (slot < 0) {
             throw new ExecutionException("Variable " + variableName + " not declared", getLine(), getColumn());
         }
 
-        Value evaluatedValue = expression.evaluate(funcMap, varAndParamMap);
+        assign(frame, expression.evaluate(frame));
+        return Completion.NORMAL;
+    }
 
-        Value currentValue = varAndParamMap.get(variableName);
-        if (currentValue != null && !evaluatedValue.getType().equals(currentValue.getType())) {
+    /**
+     * Assigns an evaluated value to the (declared) variable, as executing
+     * the statement does once it has evaluated its expression.
+     */
+    public void assign(Value[] frame, Value evaluatedValue) throws ExecutionException {
+        Value currentValue = frame[slot];
+        if (currentValue != null && evaluatedValue.getType() != currentValue.getType()) {
             throw new ExecutionException(
                 "Type mismatch: Variable " + variableName + " is of type " + currentValue.getType() +
                 " but tried to assign " + evaluatedValue.getType(), getLine(), getColumn()
             );
         }
 
-        varAndParamMap.put(variableName, evaluatedValue);
+        frame[slot] = evaluatedValue;
     }
 }
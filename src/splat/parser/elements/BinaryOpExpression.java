@@ -5,9 +5,9 @@ import splat.lexer.Token;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 public class BinaryOpExpression extends Expression {
-    private Expression left;
+    protected Expression left;
     private String operator;
-    private Expression right;
+    protected Expression right;
 
     public BinaryOpExpression(Expression left, String operator, Expression right, Token tok) {
         super(tok);
@@ -16,6 +16,16 @@ public class BinaryOpExpression extends Expression {
         this.right = right;
     }
 
+    /**
+     * For a specialized node that replaces the original.
+     */
+    protected BinaryOpExpression(BinaryOpExpression original) {
+        super(original);
+        this.left = original.left;
+        this.operator = original.operator;
+        this.right = original.right;
+    }
+
     public Expression getLeft() {
         return left;
     }
@@ -34,31 +44,31 @@ public class BinaryOpExpression extends Expression {
         Type rightType = right.analyzeAndGetType(funcMap, varAndParamMap);
 
         if (operator.equals(">") || operator.equals("<") || operator.equals(">=") || operator.equals("<=")) {
-            if (!leftType.equals(Type.INTEGER) || !rightType.equals(Type.INTEGER)) {
+            if (leftType != Type.INTEGER || rightType != Type.INTEGER) {
                 throw new SemanticAnalysisException("Relational operators require Integer operands", this);
             }
             return Type.BOOLEAN;
         }
 
         if (operator.equals("==") || operator.equals("!=")) {
-            if (!leftType.equals(rightType)) {
+            if (leftType != rightType) {
                 throw new SemanticAnalysisException("Equality operators require operands of the same type", this);
             }
-            if (!leftType.equals(Type.INTEGER) && !leftType.equals(Type.BOOLEAN)) {
+            if (leftType != Type.INTEGER && leftType != Type.BOOLEAN) {
                 throw new SemanticAnalysisException("Equality operators support only Integer and Boolean types", this);
             }
             return Type.BOOLEAN;
         }
 
         if (operator.equals("+") || operator.equals("-") || operator.equals("*") || operator.equals("/") || operator.equals("%")) {
-            if (!leftType.equals(Type.INTEGER) || !rightType.equals(Type.INTEGER)) {
+            if (leftType != Type.INTEGER || rightType != Type.INTEGER) {
                 throw new SemanticAnalysisException("Arithmetic operators require Integer operands", this);
             }
             return Type.INTEGER;
         }
 
         if (operator.equals("and") || operator.equals("or")) {
-            if (!leftType.equals(Type.BOOLEAN) || !rightType.equals(Type.BOOLEAN)) {
+            if (leftType != Type.BOOLEAN || rightType != Type.BOOLEAN) {
                 throw new SemanticAnalysisException("Logical operators require Boolean operands", this);
             }
             return Type.BOOLEAN;
@@ -68,10 +78,90 @@ public class BinaryOpExpression extends Expression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
+    public Expression resolve(FrameLayout layout) {
+        left = left.resolve(layout);
+        right = right.resolve(layout);
+        return specialize(left.getResolvedType(), right.getResolvedType());
+    }
+
+    /**
+     * A copy of this (resolved) expression over other operands, specialized
+     * as resolve() would for their types.
+     */
+    public Expression withOperands(Expression left, Expression right) {
+        BinaryOpExpression copy = new BinaryOpExpression(this);
+        copy.left = left;
+        copy.right = right;
+        return copy.specialize(left.getResolvedType(), right.getResolvedType());
+    }
+
+    /*
+     * The node for this operator and these operand types, or this one if
+     * they don't match up (only possible if the program wasn't analyzed).
+     */
+    private Expression specialize(Type leftType, Type rightType) {
+        boolean ints = leftType == Type.INTEGER && rightType == Type.INTEGER;
+        boolean bools = leftType == Type.BOOLEAN && rightType == Type.BOOLEAN;
+        switch (operator) {
+            case "+":
+                return ints ? new IntAddNode(this) : this;
+            case "-":
+                return ints ? new IntSubtractNode(this) : this;
+            case "*":
+                return ints ? new IntMultiplyNode(this) : this;
+            case "/":
+                return ints ? new IntDivideNode(this) : this;
+            case "%":
+                return ints ? new IntRemainderNode(this) : this;
+            case "<":
+                return ints ? new IntLessThanNode(this) : this;
+            case "<=":
+                return ints ? new IntLessEqualNode(this) : this;
+            case ">":
+                return ints ? new IntGreaterThanNode(this) : this;
+            case ">=":
+                return ints ? new IntGreaterEqualNode(this) : this;
+            case "==":
+                return ints ? new IntEqualNode(this) : bools ? new BoolEqualNode(this) : this;
+            case "!=":
+                return ints ? new IntNotEqualNode(this) : bools ? new BoolNotEqualNode(this) : this;
+            case "and":
+                return bools ? new BoolAndNode(this) : this;
+            case "or":
+                return bools ? new BoolOrNode(this) : this;
+            default:
+                return this;
+        }
+    }
+
+    @Override
+    public Type getResolvedType() {
+        switch (operator) {
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+            case "%":
+                return Type.INTEGER;
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+            case "==":
+            case "!=":
+            case "and":
+            case "or":
+                return Type.BOOLEAN;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) 
             throws ExecutionException {
-        Value leftValue = left.evaluate(funcMap, varAndParamMap);
-        Value rightValue = right.evaluate(funcMap, varAndParamMap);
+        Value leftValue = left.evaluate(frame);
+        Value rightValue = right.evaluate(frame);
 
         if (operator.equals("+") || operator.equals("-") || operator.equals("*") || operator.equals("/") || operator.equals("%")) {
             if (!(leftValue instanceof IntegerValue) || !(rightValue instanceof IntegerValue)) {
@@ -81,18 +171,18 @@ public class BinaryOpExpression extends Expression {
             int rightInt = ((IntegerValue) rightValue).getValue();
             switch (operator) {
                 case "+":
-                    return new IntegerValue(leftInt + rightInt);
+                    return IntegerValue.of(leftInt + rightInt);
                 case "-":
-                    return new IntegerValue(leftInt - rightInt);
+                    return IntegerValue.of(leftInt - rightInt);
                 case "*":
-                    return new IntegerValue(leftInt * rightInt);
+                    return IntegerValue.of(leftInt * rightInt);
                 case "/":
                     if (rightInt == 0) {
                         throw new ExecutionException("Division by zero is not possible", getLine(), getColumn());
                     }
-                    return new IntegerValue(leftInt / rightInt);
+                    return IntegerValue.of(leftInt / rightInt);
                 case "%":
-                    return new IntegerValue(leftInt % rightInt);
+                    return IntegerValue.of(leftInt % rightInt);
             }
         }
 
@@ -104,22 +194,29 @@ public class BinaryOpExpression extends Expression {
             int rightInt = ((IntegerValue) rightValue).getValue();
             switch (operator) {
                 case ">":
-                    return new BooleanValue(leftInt > rightInt);
+                    return BooleanValue.of(leftInt > rightInt);
                 case "<":
-                    return new BooleanValue(leftInt < rightInt);
+                    return BooleanValue.of(leftInt < rightInt);
                 case ">=":
-                    return new BooleanValue(leftInt >= rightInt);
+                    return BooleanValue.of(leftInt >= rightInt);
                 case "<=":
-                    return new BooleanValue(leftInt <= rightInt);
+                    return BooleanValue.of(leftInt <= rightInt);
             }
         }
 
         if (operator.equals("==") || operator.equals("!=")) {
-            if (!leftValue.getType().equals(rightValue.getType())) {
+            if (leftValue.getType() != rightValue.getType()) {
                 throw new ExecutionException("Equality operators require operands of the same type", getLine(), getColumn());
             }
-            boolean areEqual = leftValue.toString().equals(rightValue.toString());
-            return new BooleanValue(operator.equals("==") ? areEqual : !areEqual);
+            boolean areEqual;
+            if (leftValue instanceof IntegerValue) {
+                areEqual = ((IntegerValue) leftValue).getValue() == ((IntegerValue) rightValue).getValue();
+            } else if (leftValue instanceof BooleanValue) {
+                areEqual = ((BooleanValue) leftValue).getValue() == ((BooleanValue) rightValue).getValue();
+            } else {
+                areEqual = leftValue.toString().equals(rightValue.toString());
+            }
+            return BooleanValue.of(operator.equals("==") ? areEqual : !areEqual);
         }
 
 
@@ -129,7 +226,7 @@ public class BinaryOpExpression extends Expression {
             }
             boolean leftBool = ((BooleanValue) leftValue).getValue();
             boolean rightBool = ((BooleanValue) rightValue).getValue();
-            return new BooleanValue(operator.equals("and") ? (leftBool && rightBool) : (leftBool || rightBool));
+            return BooleanValue.of(operator.equals("and") ? (leftBool && rightBool) : (leftBool || rightBool));
         }
 
         throw new ExecutionException("Unsupported operator: " + operator, getLine(), getColumn());
@@ -0,0 +1,25 @@
+package splat.parser.elements;
+
+/**
+ * A BinaryOpExpression specialized by resolve() for one operator and one
+ * operand type.  Analysis has already checked the operand types, so the
+ * node computes its result from the operands' evaluateInt() or
+ * evaluateBoolean(), without dispatching on the operator, testing the
+ * values' classes or boxing intermediate results.
+ */
+public abstract class BinaryOpNode extends BinaryOpExpression {
+
+    protected BinaryOpNode(BinaryOpExpression original) {
+        super(original);
+    }
+
+    /**
+     * Resolves the operands again, and stays specialized.
+     */
+    @Override
+    public Expression resolve(FrameLayout layout) {
+        left = left.resolve(layout);
+        right = right.resolve(layout);
+        return this;
+    }
+}
@@ -0,0 +1,22 @@
+package splat.parser.elements;
+
+import splat.SplatException;
+
+/**
+ * Carries an error from loading a function body out of code that can't
+ * throw it directly, since the body may only be loaded in the middle of
+ * executing a call.  Splat unwraps it and reports the original error.
+ */
+public class BodyLoadException extends RuntimeException {
+
+    private final SplatException error;
+
+    public BodyLoadException(SplatException error) {
+        super(error);
+        this.error = error;
+    }
+
+    public SplatException getError() {
+        return error;
+    }
+}
@@ -0,0 +1,26 @@
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Boolean 'and'.  Both operands are evaluated, as in the generic node.
+ */
+public final class BoolAndNode extends BinaryOpNode {
+
+    BoolAndNode(BinaryOpExpression original) {
+        super(original);
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        return BooleanValue.of(evaluateBoolean(frame));
+    }
+
+    @Override
+    public boolean evaluateBoolean(Value[] frame) throws ExecutionException {
+        boolean leftBool = left.evaluateBoolean(frame);
+        boolean rightBool = right.evaluateBoolean(frame);
+        return leftBool && rightBool;
+    }
+}
@@ -0,0 +1,24 @@
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Boolean 'not'.
+ */
+public final class BoolNotNode extends UnaryOpNode {
+
+    BoolNotNode(UnaryOpExpression original) {
+        super(original);
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        return BooleanValue.of(evaluateBoolean(frame));
+    }
+
+    @Override
+    public boolean evaluateBoolean(Value[] frame) throws ExecutionException {
+        return !operand.evaluateBoolean(frame);
+    }
+}
@@ -2,12 +2,23 @@ package splat.parser.elements;
 import splat.executor.Value;
 
 public class BooleanValue extends Value {
-    private boolean value;
+
+    public static final BooleanValue TRUE = new BooleanValue(true);
+    public static final BooleanValue FALSE = new BooleanValue(false);
+
+    private final boolean value;
 
     public BooleanValue(boolean value) {
         this.value = value;
     }
 
+    /**
+     * Returns TRUE or FALSE.
+     */
+    public static BooleanValue of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
     public boolean getValue() {
         return value;
     }
@@ -0,0 +1,41 @@
+package splat.parser.elements;
+
+import java.util.Map;
+import splat.executor.Completion;
+import splat.executor.Value;
+
+/**
+ * Empties frame slots, so that the InvariantExpressions of the loop that
+ * follows work out their values again.  It never comes from the parser.
+ */
+public class ClearSlotsStatement extends Statement {
+    private final int[] slots;
+
+    /**
+     * Clears the slots before loop, at its position.
+     */
+    public ClearSlotsStatement(Statement loop, int[] slots) {
+        super(loop);
+        this.slots = slots;
+    }
+
+    public int[] getSlots() {
+        return slots;
+    }
+
+    @Override
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+    }
+
+    @Override
+    public void resolve(FrameLayout layout) {
+    }
+
+    @Override
+    public Completion execute(Value[] frame) {
+        for (int slot : slots) {
+            frame[slot] = null;
+        }
+        return Completion.NORMAL;
+    }
+}
@@ -10,6 +10,10 @@ public abstract class Expression extends ASTElement {
 		super(tok);
 	}
 
+	protected Expression(Expression original) {
+		super(original);
+	}
+
 	/**
 	 * This will be needed for Phase 3 - this abstract method will need to be
 	 * implemented by every Expression subclass.  This method does two things:
@@ -32,21 +36,51 @@ public abstract class Expression extends ASTElement {
 	 public abstract Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
 	                                        Map<String, Type> varAndParamMap) throws SemanticAnalysisException;
 	
+	/**
+	 * See Statement.resolve().  Returns the expression to use in place of
+	 * this one from then on: either this one, or a node specialized for
+	 * the operator and operand types it found, which evaluates without
+	 * dispatching on the operator or checking the types again.
+	 */
+	public abstract Expression resolve(FrameLayout layout);
+	
+	/**
+	 * The type of the value, as worked out by resolve(), or null if this
+	 * hasn't been resolved (or, for a program that wasn't analyzed, can't
+	 * be typed).
+	 */
+	public abstract Type getResolvedType();
+	
 	/**
 	 * This will be needed for Phase 4 - this abstract method will need to be
 	 * implemented by every Expression subclass.  This method is used to 
 	 * "calculate" the value of this expression, which will usually require we
 	 * recursively call the same method on all sub-expressions. 
 	 * 
-	 * funcMap is needed in case this expression or a sub-expression contains
-	 * a function call -- we will have to evaluate the individual arguments and 
-	 * create a new varAndParamMap to bind the function params to the new values
-	 * and then execute the function body.  More on this later...
+	 * A function call evaluates the individual arguments into a new frame
+	 * for the function, binding the function params to the new values, and
+	 * then executes the function body against that frame.
 	 *  
-	 * varAndParamMap is needed in case this expression or a sub-expression
-	 * contains variables or parameters -- we use this map to keep track of the
-	 * values of the items that are currently in scope
+	 * frame is needed in case this expression or a sub-expression contains
+	 * variables or parameters -- it holds the values of the items that are
+	 * currently in scope, in the slots resolve() recorded
 	 */
-	public abstract Value evaluate(Map<String, FunctionDecl> funcMap,
-                                Map<String, Value> varAndParamMap) throws ExecutionException;
+	public abstract Value evaluate(Value[] frame) throws ExecutionException;
+	
+	/**
+	 * Evaluates an expression that resolve() typed as Integer.  Nodes that
+	 * compute an int override this to return it without boxing it first;
+	 * the rest unwrap what evaluate() returns.
+	 */
+	public int evaluateInt(Value[] frame) throws ExecutionException {
+		return ((IntegerValue) evaluate(frame)).getValue();
+	}
+	
+	/**
+	 * Evaluates an expression that resolve() typed as Boolean.  See
+	 * evaluateInt().
+	 */
+	public boolean evaluateBoolean(Value[] frame) throws ExecutionException {
+		return ((BooleanValue) evaluate(frame)).getValue();
+	}
 }
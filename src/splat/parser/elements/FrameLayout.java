@@ -0,0 +1,115 @@
+package splat.parser.elements;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the statements of one scope (a function body, or the program body)
+ * need to know to run against a Value[] frame: the slot and type of each
+ * variable, the functions calls can reach, and the function a return in
+ * the scope returns from.
+ *
+ * A function's frame holds its parameters, in order, followed by its
+ * locals, a slot for its return value and slots for the arguments of a
+ * tail call to itself; the program's frame holds the program variables in
+ * the order they are declared.
+ */
+public class FrameLayout {
+
+    private final Map<String, FunctionDecl> funcMap;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, Type> types = new HashMap<>();
+    private final FunctionDecl function;
+    private int size;
+    private int returnSlot = -1;
+    private int argumentSlot = -1;
+
+    /**
+     * function is null for the program body, which can't return.
+     */
+    public FrameLayout(Map<String, FunctionDecl> funcMap, FunctionDecl function) {
+        this.funcMap = funcMap;
+        this.function = function;
+    }
+
+    /**
+     * Gives the variable the next slot.  A name added twice ends up in the
+     * later slot, as it did when a later put() replaced an earlier one.
+     */
+    public void add(String name, Type type) {
+        slots.put(name, size++);
+        types.put(name, type);
+    }
+
+    /**
+     * The slot of the variable, or -1 if the scope has no such variable.
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * The type of the variable, or null if the scope has no such variable.
+     */
+    public Type type(String name) {
+        return types.get(name);
+    }
+
+    /**
+     * The function with the name, or null.
+     */
+    public FunctionDecl function(String name) {
+        return funcMap.get(name);
+    }
+
+    /**
+     * The function whose body this is, or null for the program body.
+     */
+    public FunctionDecl getFunction() {
+        return function;
+    }
+
+    /**
+     * The type a return must produce, or null for the program body.
+     */
+    public Type getReturnType() {
+        return function == null ? null : function.getReturnType();
+    }
+
+    /**
+     * Gives the value a return statement produces the next slot.  Only
+     * function bodies, which can return, have one.
+     */
+    public void addReturnSlot() {
+        returnSlot = size++;
+    }
+
+    /**
+     * The slot for the return value, or -1.
+     */
+    public int getReturnSlot() {
+        return returnSlot;
+    }
+
+    /**
+     * Gives the next count slots to the arguments of a tail call the
+     * function makes to itself, which are all evaluated there before any
+     * parameter is overwritten.
+     */
+    public void addArgumentSlots(int count) {
+        argumentSlot = size;
+        size += count;
+    }
+
+    /**
+     * The first of the slots for tail call arguments, or -1.
+     */
+    public int getArgumentSlot() {
+        return argumentSlot;
+    }
+
+    public int size() {
+        return size;
+    }
+}
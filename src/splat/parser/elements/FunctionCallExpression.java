@@ -2,13 +2,13 @@ package splat.parser.elements;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.executor.*;
 import splat.lexer.Token;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class FunctionCallExpression extends Expression {
     private String functionName;
     private List<Expression> arguments;
+    private FunctionDecl callee;
 
     public FunctionCallExpression(String functionName, List<Expression> arguments, Token tok) {
         super(tok);
@@ -24,6 +24,13 @@ public class FunctionCallExpression extends Expression {
         return arguments;
     }
 
+    /**
+     * The function resolve() bound the call to, or null.
+     */
+    public FunctionDecl getCallee() {
+        return callee;
+    }
+
     @Override
     public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         FunctionDecl functionDecl = funcMap.get(functionName);
@@ -39,7 +46,7 @@ public class FunctionCallExpression extends Expression {
         for (int i = 0; i < arguments.size(); i++) {
             Type expectedType = parameters.get(i).getType();
             Type actualType = arguments.get(i).analyzeAndGetType(funcMap, varAndParamMap);
-            if (!actualType.equals(expectedType)) {
+            if (actualType != expectedType) {
                 throw new SemanticAnalysisException("Type mismatch for argument " + (i + 1) + " in call to function " + functionName +
                         ": expected " + expectedType + " but found " + actualType, getLine(), getColumn());
             }
@@ -50,57 +57,134 @@ public class FunctionCallExpression extends Expression {
 
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
-            throws ExecutionException {
-        FunctionDecl functionDecl = funcMap.get(functionName);
-        if (functionDecl == null) {
-            throw new ExecutionException("Undefined function: " + functionName, getLine(), getColumn());
-        }
-
-        List<VariableDecl> parameters = functionDecl.getParameters();
-        if (arguments.size() != parameters.size()) {
-            throw new ExecutionException("Argument count mismatch in call to function: " + functionName, getLine(), getColumn());
+    public Expression resolve(FrameLayout layout) {
+        callee = layout.function(functionName);
+        for (int i = 0; i < arguments.size(); i++) {
+            arguments.set(i, arguments.get(i).resolve(layout));
         }
+        return this;
+    }
 
-        Map<String, Value> localVarMap = new HashMap<>();
-        for (int i = 0; i < arguments.size(); i++) {
-            Expression argument = arguments.get(i);
-            VariableDecl parameter = parameters.get(i);
-            Value argumentValue = argument.evaluate(funcMap, varAndParamMap);
+    @Override
+    public Type getResolvedType() {
+        return callee == null ? null : callee.getReturnType();
+    }
 
-            if (!argumentValue.getType().equals(parameter.getType())) {
-                throw new ExecutionException("Type mismatch for argument " + (i + 1) + " in call to function " + functionName +
-                        ": expected " + parameter.getType() + " but found " + argumentValue.getType(), getLine(), getColumn());
-            }
+    /**
+     * Whether a return of this call's value, from a function that returns
+     * returnType, can leave the call for its caller to make (see
+     * ReturnStatement).  That takes a callee with the same non-void return
+     * type and the right number of arguments, since only the checks on
+     * the arguments and on the callee's own result are made then.
+     */
+    public boolean isTailCallFrom(Type returnType) {
+        return callee != null
+                && returnType != null && returnType != Type.VOID
+                && callee.getReturnType() == returnType
+                && arguments.size() == callee.getParameters().size();
+    }
 
-            localVarMap.put(parameter.getLabel(), argumentValue);
+    /**
+     * Evaluates the arguments into calleeFrame, starting at the given slot.
+     */
+    void evaluateArguments(Value[] frame, Value[] calleeFrame, int slot) throws ExecutionException {
+        for (int i = 0; i < arguments.size(); i++) {
+            Value argumentValue = arguments.get(i).evaluate(frame);
+            checkArgument(i, argumentValue);
+            calleeFrame[slot + i] = argumentValue;
         }
+    }
 
-        for (VariableDecl localVar : functionDecl.getLocalVars()) {
-            localVarMap.put(localVar.getLabel(), null);
+    /**
+     * Checks the value of an argument (numbered from 0) against the type
+     * of the callee's parameter.
+     */
+    public void checkArgument(int index, Value argumentValue) throws ExecutionException {
+        VariableDecl parameter = callee.getParameters().get(index);
+        if (argumentValue.getType() != parameter.getType()) {
+            throw new ExecutionException("Type mismatch for argument " + (index + 1) + " in call to function " + functionName +
+                    ": expected " + parameter.getType() + " but found " + argumentValue.getType(), getLine(), getColumn());
         }
+    }
 
-        localVarMap.put("returnType", new TypeValue(functionDecl.getReturnType()));
-        try {
-            for (Statement stmt : functionDecl.getStmts()) {
-                stmt.execute(funcMap, localVarMap);
-            }
-        } catch (ReturnFromCall returnFromCall) {
-            Value returnValue = returnFromCall.getReturnVal();
-            if (!functionDecl.getReturnType().equals(Type.VOID)) {
-                if (returnValue == null || !returnValue.getType().equals(functionDecl.getReturnType())) {
+    /**
+     * The value of the call once the callee's body has run to the given
+     * completion (NORMAL or RETURN) in calleeFrame, checked against the
+     * callee's return type.  When the body ended with tail calls, the last
+     * of them stands in for the call and makes the check.
+     */
+    public Value returned(Completion completion, Value[] calleeFrame) throws ExecutionException {
+        if (completion == Completion.RETURN) {
+            Value returnValue = calleeFrame[callee.getReturnSlot()];
+            if (callee.getReturnType() != Type.VOID) {
+                if (returnValue == null || returnValue.getType() != callee.getReturnType()) {
                     throw new ExecutionException("Function " + functionName + " must return a value of type " +
-                            functionDecl.getReturnType(), getLine(), getColumn());
+                            callee.getReturnType(), getLine(), getColumn());
                 }
             }
             return returnValue;
         }
 
-        if (!functionDecl.getReturnType().equals(Type.VOID)) {
+        if (callee.getReturnType() != Type.VOID) {
             throw new ExecutionException("Non-void function " + functionName + " must return a value", getLine(), getColumn());
         }
 
         return null;
     }
 
+    @Override
+    public Value evaluate(Value[] frame) 
+            throws ExecutionException {
+        FunctionDecl functionDecl = callee;
+        if (functionDecl == null) {
+            throw new ExecutionException("Undefined function: " + functionName, getLine(), getColumn());
+        }
+
+        List<VariableDecl> parameters = functionDecl.getParameters();
+        if (arguments.size() != parameters.size()) {
+            throw new ExecutionException("Argument count mismatch in call to function: " + functionName, getLine(), getColumn());
+        }
+
+        Value[] calleeFrame = new Value[functionDecl.getFrameSize()];
+        evaluateArguments(frame, calleeFrame, 0);
+
+        // A pure function gives the same value for the same arguments
+        MemoTable memoTable = functionDecl.getMemoTable();
+        long key = 0;
+        if (memoTable != null) {
+            key = memoTable.key(calleeFrame);
+            Value memoized = memoTable.get(key);
+            if (memoized != null) {
+                return memoized;
+            }
+        }
+
+        // Tail calls are made here, one after another, with the last one
+        // made standing in for this call from then on
+        FunctionCallExpression call = this;
+        CallDepth callDepth = functionDecl.getCallDepth();
+        List<Statement> stmts = functionDecl.getStmts();
+        callDepth.enter(functionDecl, this);
+        Completion completion = Statement.execute(stmts, calleeFrame);
+        while (completion == Completion.TAIL_CALL) {
+            TailCall tailCall = (TailCall) calleeFrame[functionDecl.getReturnSlot()];
+            callDepth.leave(functionDecl);
+            call = tailCall.call;
+            functionDecl = call.callee;
+            if (tailCall.frame != null) {
+                calleeFrame = tailCall.frame;
+            }
+            stmts = functionDecl.getStmts();
+            callDepth.enter(functionDecl, call);
+            completion = Statement.execute(stmts, calleeFrame);
+        }
+        callDepth.leave(functionDecl);
+
+        Value returnValue = call.returned(completion, calleeFrame);
+        if (memoTable != null) {
+            memoTable.put(key, returnValue);
+        }
+        return returnValue;
+    }
+
 }
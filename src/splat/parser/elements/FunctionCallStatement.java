@@ -3,13 +3,13 @@ package splat.parser.elements;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.executor.*;
 import splat.lexer.Token;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class FunctionCallStatement extends Statement {
     private String functionName;
     private List<Expression> arguments;
+    private FunctionDecl callee;
 
     public FunctionCallStatement(String functionName, List<Expression> arguments, Token tok) {
         super(tok);
@@ -25,6 +25,13 @@ public class FunctionCallStatement extends Statement {
         return arguments;
     }
 
+    /**
+     * The function resolve() bound the call to, or null.
+     */
+    public FunctionDecl getCallee() {
+        return callee;
+    }
+
     @Override
     public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         FunctionDecl functionDecl = funcMap.get(functionName);
@@ -40,7 +47,7 @@ public class FunctionCallStatement extends Statement {
         for (int i = 0; i < arguments.size(); i++) {
             Type expectedType = parameters.get(i).getType();
             Type actualType = arguments.get(i).analyzeAndGetType(funcMap, varAndParamMap);
-            if (!actualType.equals(expectedType)) {
+            if (actualType != expectedType) {
                 throw new SemanticAnalysisException("Type mismatch for argument " + (i + 1) + " in call to function " + functionName +
                         ": expected " + expectedType + " but found " + actualType, getLine(), getColumn());
             }
@@ -49,9 +56,17 @@ public class FunctionCallStatement extends Statement {
 
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
-            throws ExecutionException, ReturnFromCall {
-        FunctionDecl functionDecl = funcMap.get(functionName);
+    public void resolve(FrameLayout layout) {
+        callee = layout.function(functionName);
+        for (int i = 0; i < arguments.size(); i++) {
+            arguments.set(i, arguments.get(i).resolve(layout));
+        }
+    }
+
+    @Override
+    public Completion execute(Value[] frame) 
+            throws ExecutionException {
+        FunctionDecl functionDecl = callee;
         if (functionDecl == null) {
             throw new ExecutionException("Undefined function: " + functionName, getLine(), getColumn());
         }
@@ -61,39 +76,72 @@ public class FunctionCallStatement extends Statement {
             throw new ExecutionException("Argument count mismatch in call to function: " + functionName, getLine(), getColumn());
         }
 
-        Map<String, Value> localVarMap = new HashMap<>();
+        Value[] calleeFrame = new Value[functionDecl.getFrameSize()];
         for (int i = 0; i < arguments.size(); i++) {
-            Expression argument = arguments.get(i);
-            VariableDecl parameter = parameters.get(i);
-            Value argumentValue = argument.evaluate(funcMap, varAndParamMap);
+            Value argumentValue = arguments.get(i).evaluate(frame);
+            checkArgument(i, argumentValue);
+            calleeFrame[i] = argumentValue;
+        }
 
-            if (!argumentValue.getType().equals(parameter.getType())) {
-                throw new ExecutionException("Type mismatch for argument " + (i + 1) + " in call to function " + functionName +
-                        ": expected " + parameter.getType() + " but found " + argumentValue.getType(), getLine(), getColumn());
+        // See FunctionCallExpression.evaluate()
+        FunctionCallExpression lastTailCall = null;
+        CallDepth callDepth = functionDecl.getCallDepth();
+        List<Statement> stmts = functionDecl.getStmts();
+        callDepth.enter(functionDecl, this);
+        Completion completion = Statement.execute(stmts, calleeFrame);
+        while (completion == Completion.TAIL_CALL) {
+            TailCall tailCall = (TailCall) calleeFrame[functionDecl.getReturnSlot()];
+            callDepth.leave(functionDecl);
+            lastTailCall = tailCall.call;
+            functionDecl = tailCall.call.getCallee();
+            if (tailCall.frame != null) {
+                calleeFrame = tailCall.frame;
             }
+            stmts = functionDecl.getStmts();
+            callDepth.enter(functionDecl, lastTailCall);
+            completion = Statement.execute(stmts, calleeFrame);
+        }
+        callDepth.leave(functionDecl);
 
-            localVarMap.put(parameter.getLabel(), argumentValue);
+        checkReturned(lastTailCall, completion, calleeFrame);
+        return Completion.NORMAL;
+    }
+
+    /**
+     * Checks the value of an argument (numbered from 0) against the type
+     * of the callee's parameter.
+     */
+    public void checkArgument(int index, Value argumentValue) throws ExecutionException {
+        VariableDecl parameter = callee.getParameters().get(index);
+        if (argumentValue.getType() != parameter.getType()) {
+            throw new ExecutionException("Type mismatch for argument " + (index + 1) + " in call to function " + functionName +
+                    ": expected " + parameter.getType() + " but found " + argumentValue.getType(), getLine(), getColumn());
         }
+    }
 
-        for (VariableDecl localVar : functionDecl.getLocalVars()) {
-            localVarMap.put(localVar.getLabel(), null);
+    /**
+     * Checks what the callee returned once its body has run to the given
+     * completion (NORMAL or RETURN) in calleeFrame.  If the body ended
+     * with tail calls, the last of them is given as tailCall, and stands
+     * in for the callee; otherwise tailCall is null.
+     */
+    public void checkReturned(FunctionCallExpression tailCall, Completion completion, Value[] calleeFrame)
+            throws ExecutionException {
+        if (completion != Completion.RETURN) {
+            return;
         }
-        localVarMap.put("returnType", new TypeValue(functionDecl.getReturnType()));
 
-        try {
-            for (Statement stmt : functionDecl.getStmts()) {
-                stmt.execute(funcMap, localVarMap);
-            }
-        } catch (ReturnFromCall returnFromCall) {
-            Value returnValue = returnFromCall.getReturnVal();
-            if (!functionDecl.getReturnType().equals(Type.VOID)) {
-                if (returnValue == null || !returnValue.getType().equals(functionDecl.getReturnType())) {
-                    throw new ExecutionException("Function " + functionName + " must return a value of type " +
-                            functionDecl.getReturnType(), getLine(), getColumn());
-                }
-            } else if (returnValue != null) {
-                throw new ExecutionException("Void function " + functionName + " should not return a value", getLine(), getColumn());
+        FunctionDecl functionDecl = tailCall == null ? callee : tailCall.getCallee();
+        String name = tailCall == null ? functionName : tailCall.getFunctionName();
+        ASTElement site = tailCall == null ? this : tailCall;
+        Value returnValue = calleeFrame[functionDecl.getReturnSlot()];
+        if (functionDecl.getReturnType() != Type.VOID) {
+            if (returnValue == null || returnValue.getType() != functionDecl.getReturnType()) {
+                throw new ExecutionException("Function " + name + " must return a value of type " +
+                        functionDecl.getReturnType(), site.getLine(), site.getColumn());
             }
+        } else if (returnValue != null) {
+            throw new ExecutionException("Void function " + name + " should not return a value", site.getLine(), site.getColumn());
         }
     }
 
@@ -1,6 +1,10 @@
 package splat.parser.elements;
 
 import java.util.List;
+import java.util.Map;
+import splat.SplatException;
+import splat.executor.CallDepth;
+import splat.executor.MemoTable;
 import splat.lexer.Token;
 
 public class FunctionDecl extends Declaration {
@@ -9,6 +13,22 @@ public class FunctionDecl extends Declaration {
     private Type returnType;
     private List<VariableDecl> localVars;
     private List<Statement> statements;
+    private BodyLoader bodyLoader;
+    private boolean resolved;
+    private int extraSlots;
+    private boolean pure;
+    private MemoTable memoTable;
+    private CallDepth callDepth;
+    private int callCost;
+
+    /**
+     * Produces the statements of a function whose body is only parsed
+     * when it is first needed.  It may fail with a ParseException, or with
+     * any other SplatException from work done on the body as it is loaded.
+     */
+    public interface BodyLoader {
+        List<Statement> load() throws SplatException;
+    }
 
     public FunctionDecl(String functionName, Type returnType, List<VariableDecl> parameters, 
                         List<VariableDecl> localVars, List<Statement> statements, Token tok) {
@@ -19,6 +39,19 @@ public class FunctionDecl extends Declaration {
         this.statements = statements;
     }
 
+    /**
+     * Creates a function whose statements are loaded by the given loader
+     * the first time getStmts() is called.
+     */
+    public FunctionDecl(String functionName, Type returnType, List<VariableDecl> parameters,
+                        List<VariableDecl> localVars, BodyLoader bodyLoader, Token tok) {
+        super(functionName, tok);
+        this.parameters = parameters;
+        this.returnType = returnType;
+        this.localVars = localVars;
+        this.bodyLoader = bodyLoader;
+    }
+
     public String getFunctionName() {
         return super.getLabel();
     }
@@ -35,8 +68,144 @@ public class FunctionDecl extends Declaration {
         return localVars;
     }
 
+    /**
+     * The number of slots in a frame for a call: the parameters, in order,
+     * then the locals, then the return value, then one slot per parameter
+     * for the arguments of a tail call to itself (see ReturnStatement),
+     * then any slots added by addSlots().
+     */
+    public int getFrameSize() {
+        return 2 * parameters.size() + localVars.size() + 1 + extraSlots;
+    }
+
+    /**
+     * Adds count slots to the end of the frame, for values an optimization
+     * keeps while the body runs (see splat.optimizer), and returns the
+     * first of them.
+     */
+    public int addSlots(int count) {
+        int first = getFrameSize();
+        extraSlots += count;
+        return first;
+    }
+
+    /**
+     * The frame slot that holds the return value once a return statement
+     * has run.
+     */
+    public int getReturnSlot() {
+        return parameters.size() + localVars.size();
+    }
+
+    /**
+     * Resolves the given statements of this function's body (see
+     * Statement.resolve()) against a frame of its parameters and locals,
+     * with calls bound to the functions in funcMap.
+     */
+    public void resolve(List<Statement> stmts, Map<String, FunctionDecl> funcMap) {
+        FrameLayout layout = new FrameLayout(funcMap, this);
+        for (VariableDecl param : parameters) {
+            layout.add(param.getLabel(), param.getType());
+        }
+        for (VariableDecl localVar : localVars) {
+            layout.add(localVar.getLabel(), localVar.getType());
+        }
+        layout.addReturnSlot();
+        layout.addArgumentSlots(parameters.size());
+        for (Statement stmt : stmts) {
+            stmt.resolve(layout);
+        }
+        resolved = true;
+    }
+
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    /**
+     * Whether semantic analysis found the function pure: its parameters
+     * are Integers, Booleans or Strings, it never prints, and it only
+     * calls pure functions.  A call to it then depends on nothing but its
+     * arguments, and does nothing but return a value (or fail).
+     */
+    public boolean isPure() {
+        return pure;
+    }
+
+    public void setPure(boolean pure) {
+        this.pure = pure;
+    }
+
+    /**
+     * The table of values calls to this (pure) function have returned, if
+     * the executor memoizes it, or null.
+     */
+    public MemoTable getMemoTable() {
+        return memoTable;
+    }
+
+    public void setMemoTable(MemoTable memoTable) {
+        this.memoTable = memoTable;
+    }
+
+    /**
+     * The CallDepth that calls to this function are counted in, set by
+     * the executor for each run.
+     */
+    public CallDepth getCallDepth() {
+        return callDepth;
+    }
+
+    public void setCallDepth(CallDepth callDepth) {
+        this.callDepth = callDepth;
+    }
+
+    /**
+     * What a call to this function counts for in its CallDepth, worked
+     * out by the executor once the body is loaded.
+     */
+    public int getCallCost() {
+        return callCost;
+    }
+
+    public void setCallCost(int callCost) {
+        this.callCost = callCost;
+    }
+
+    /**
+     * Returns the statements of the body, loading them first if needed.
+     * If loading fails, the error is thrown wrapped in a BodyLoadException
+     * (and loading is tried again on the next call).
+     */
     public List<Statement> getStmts() {
+        if (bodyLoader != null) {
+            try {
+                statements = bodyLoader.load();
+            } catch (SplatException e) {
+                throw new BodyLoadException(e);
+            }
+            bodyLoader = null;
+        }
         return statements;
     }
 
+    public boolean isBodyLoaded() {
+        return bodyLoader == null;
+    }
+
+    /**
+     * The loader for a body that hasn't been loaded yet, or null.
+     */
+    public BodyLoader getBodyLoader() {
+        return bodyLoader;
+    }
+
+    /**
+     * Replaces the loader of a body that hasn't been loaded yet, e.g. with
+     * one that also analyzes the statements it loads.
+     */
+    public void setBodyLoader(BodyLoader bodyLoader) {
+        this.bodyLoader = bodyLoader;
+    }
+
 }
@@ -7,6 +7,7 @@ import java.util.Map;
 
 public class IfStatement extends Statement {
     private Expression condition;
+    private boolean booleanCondition;
     private List<Statement> thenBranch;
     private List<Statement> elseBranch;
 
@@ -17,6 +18,14 @@ public class IfStatement extends Statement {
         this.elseBranch = elseBranch;
     }
 
+    private IfStatement(IfStatement original, Expression condition) {
+        super(original);
+        this.condition = condition;
+        this.booleanCondition = condition.getResolvedType() == Type.BOOLEAN;
+        this.thenBranch = original.thenBranch;
+        this.elseBranch = original.elseBranch;
+    }
+
     public Expression getCondition() {
         return condition;
     }
@@ -29,10 +38,17 @@ public class IfStatement extends Statement {
         return elseBranch;
     }
 
+    /**
+     * A copy of this (resolved) statement with another condition.
+     */
+    public IfStatement withCondition(Expression condition) {
+        return new IfStatement(this, condition);
+    }
+
     @Override
     public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type conditionType = condition.analyzeAndGetType(funcMap, varAndParamMap);
-        if (!conditionType.equals(Type.BOOLEAN)) {
+        if (conditionType != Type.BOOLEAN) {
             throw new SemanticAnalysisException("If statement condition must be of type Boolean", getLine(), getColumn());
         }
 
@@ -48,23 +64,42 @@ public class IfStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
-            throws ExecutionException, ReturnFromCall {
-        Value conditionValue = condition.evaluate(funcMap, varAndParamMap);
-
-        if (!(conditionValue instanceof BooleanValue)) {
-            throw new ExecutionException("If statement condition must evaluate to a Boolean value", getLine(), getColumn());
+    public void resolve(FrameLayout layout) {
+        condition = condition.resolve(layout);
+        booleanCondition = condition.getResolvedType() == Type.BOOLEAN;
+        for (Statement stmt : thenBranch) {
+            stmt.resolve(layout);
         }
-
-
-        if (((BooleanValue) conditionValue).getValue()) {
-            for (Statement stmt : thenBranch) {
-                stmt.execute(funcMap, varAndParamMap);
-            }
-        } else if (elseBranch != null) {
+        if (elseBranch != null) {
             for (Statement stmt : elseBranch) {
-                stmt.execute(funcMap, varAndParamMap);
+                stmt.resolve(layout);
             }
         }
     }
+
+    @Override
+    public Completion execute(Value[] frame) 
+            throws ExecutionException {
+        if (test(frame)) {
+            return Statement.execute(thenBranch, frame);
+        } else if (elseBranch != null) {
+            return Statement.execute(elseBranch, frame);
+        }
+        return Completion.NORMAL;
+    }
+
+    /**
+     * Evaluates the condition, which decides the branch.  See
+     * WhileStatement.test().
+     */
+    public boolean test(Value[] frame) throws ExecutionException {
+        if (booleanCondition) {
+            return condition.evaluateBoolean(frame);
+        }
+        Value conditionValue = condition.evaluate(frame);
+        if (!(conditionValue instanceof BooleanValue)) {
+            throw new ExecutionException("If statement condition must evaluate to a Boolean value", getLine(), getColumn());
+        }
+        return ((BooleanValue) conditionValue).getValue();
+    }
 }
@@ -0,0 +1,26 @@
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Integer addition.
+ */
+public final class IntAddNode extends BinaryOpNode {
+
+    IntAddNode(BinaryOpExpression original) {
+        super(original);
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        return IntegerValue.of(evaluateInt(frame));
+    }
+
+    @Override
+    public int evaluateInt(Value[] frame) throws ExecutionException {
+        int leftInt = left.evaluateInt(frame);
+        int rightInt = right.evaluateInt(frame);
+        return leftInt + rightInt;
+    }
+}
@@ -0,0 +1,29 @@
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Integer division.
+ */
+public final class IntDivideNode extends BinaryOpNode {
+
+    IntDivideNode(BinaryOpExpression original) {
+        super(original);
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        return IntegerValue.of(evaluateInt(frame));
+    }
+
+    @Override
+    public int evaluateInt(Value[] frame) throws ExecutionException {
+        int leftInt = left.evaluateInt(frame);
+        int rightInt = right.evaluateInt(frame);
+        if (rightInt == 0) {
+            throw new ExecutionException("Division by zero is not possible", getLine(), getColumn());
+        }
+        return leftInt / rightInt;
+    }
+}
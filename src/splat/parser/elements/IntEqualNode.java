@@ -0,0 +1,26 @@
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Integer '=='.
+ */
+public final class IntEqualNode extends BinaryOpNode {
+
+    IntEqualNode(BinaryOpExpression original) {
+        super(original);
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        return BooleanValue.of(evaluateBoolean(frame));
+    }
+
+    @Override
+    public boolean evaluateBoolean(Value[] frame) throws ExecutionException {
+        int leftInt = left.evaluateInt(frame);
+        int rightInt = right.evaluateInt(frame);
+        return leftInt == rightInt;
+    }
+}
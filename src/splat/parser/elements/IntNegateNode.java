@@ -0,0 +1,24 @@
+package splat.parser.elements;
+
+import splat.executor.ExecutionException;
+import splat.executor.Value;
+
+/**
+ * Integer negation, unary '-'.
+ */
+public final class IntNegateNode extends UnaryOpNode {
+
+    IntNegateNode(UnaryOpExpression original) {
+        super(original);
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        return IntegerValue.of(evaluateInt(frame));
+    }
+
+    @Override
+    public int evaluateInt(Value[] frame) throws ExecutionException {
+        return -operand.evaluateInt(frame);
+    }
+}
@@ -2,12 +2,35 @@ package splat.parser.elements;
 import splat.executor.*;;
 
 public class IntegerValue extends Value {
-    private int value;
+
+    // The small values loop counters and the like keep producing
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final IntegerValue[] CACHE = new IntegerValue[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IntegerValue(CACHE_LOW + i);
+        }
+    }
+
+    private final int value;
 
     public IntegerValue(int value) {
         this.value = value;
     }
 
+    /**
+     * Returns a value for the int, shared if it's a small one.  Values are
+     * immutable, so sharing them is safe.
+     */
+    public static IntegerValue of(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new IntegerValue(value);
+    }
+
     public int getValue() {
         return value;
     }
@@ -0,0 +1,67 @@
+package splat.parser.elements;
+
+import java.util.Map;
+import splat.executor.*;
+
+/**
+ * An expression whose value can't change while a loop runs, since it
+ * makes no calls and reads no variable the loop assigns.  It is evaluated
+ * the first time it is needed after the loop is entered, and the value
+ * kept in slot for the rest of the loop; a ClearSlotsStatement before the
+ * loop empties the slot each time.  So it fails, if it does, exactly when
+ * the expression would have the first time.  It never comes from the
+ * parser (see splat.optimizer.LoopInvariantMotion).
+ */
+public class InvariantExpression extends Expression {
+    private final Expression expression;
+    private final int slot;
+
+    public InvariantExpression(Expression expression, int slot) {
+        super(expression);
+        this.expression = expression;
+        this.slot = slot;
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+        return expression.getResolvedType();
+    }
+
+    @Override
+    public Expression resolve(FrameLayout layout) {
+        return this;
+    }
+
+    @Override
+    public Type getResolvedType() {
+        return expression.getResolvedType();
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        Value value = frame[slot];
+        if (value == null) {
+            value = expression.evaluate(frame);
+            frame[slot] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public int evaluateInt(Value[] frame) throws ExecutionException {
+        return ((IntegerValue) evaluate(frame)).getValue();
+    }
+
+    @Override
+    public boolean evaluateBoolean(Value[] frame) throws ExecutionException {
+        return ((BooleanValue) evaluate(frame)).getValue();
+    }
+}
@@ -3,28 +3,50 @@ package splat.parser.elements;
 import java.util.Map;
 import splat.executor.*;
 import splat.lexer.Token;
+import splat.lexer.TokenKind;
 
 public class LiteralExpression extends Expression {
     private String value;
     private Type type;
+    private Value constant;
 
     public LiteralExpression(String value, Token tok) {
         super(tok);
         this.value = value;
         this.type = inferTypeFromToken(tok);
+
+        // Decode the value once, up front.  One that can't be decoded
+        // (an int literal out of range) still fails when evaluated
+        try {
+            this.constant = decode();
+        } catch (NumberFormatException | ExecutionException e) {
+            this.constant = null;
+        }
+    }
+
+    /**
+     * A literal of a value worked out before the program runs, in place
+     * of the expression it was worked out from.
+     */
+    public LiteralExpression(Expression original, Value constant) {
+        super(original);
+        this.value = constant.toString();
+        this.type = constant.getType();
+        this.constant = constant;
     }
 
     private Type inferTypeFromToken(Token tok) {
-        String tokenType = tok.getType();
-        switch (tokenType) {
-            case "int-literal":
+        TokenKind kind = tok.getKind();
+        switch (kind) {
+            case INT_LITERAL:
                 return Type.INTEGER;
-            case "bool-literal":
+            case TRUE:
+            case FALSE:
                 return Type.BOOLEAN;
-            case "string-literal":
+            case STRING_LITERAL:
                 return Type.STRING;
             default:
-                throw new IllegalArgumentException("Unknown literal type: " + tokenType);
+                throw new IllegalArgumentException("Unknown literal type: " + kind.getType());
         }
     }
 
@@ -42,13 +64,30 @@ public class LiteralExpression extends Expression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
+    public Expression resolve(FrameLayout layout) {
+        return this;
+    }
+
+    @Override
+    public Type getResolvedType() {
+        return type;
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) 
             throws ExecutionException {
-        if (type.equals(Type.INTEGER)) {
-            return new IntegerValue(Integer.parseInt(value));
-        } else if (type.equals(Type.BOOLEAN)) {
-            return new BooleanValue(Boolean.parseBoolean(value));
-        } else if (type.equals(Type.STRING)) {
+        if (constant != null) {
+            return constant;
+        }
+        return decode();
+    }
+
+    private Value decode() throws ExecutionException {
+        if (type == Type.INTEGER) {
+            return IntegerValue.of(Integer.parseInt(value));
+        } else if (type == Type.BOOLEAN) {
+            return BooleanValue.of(Boolean.parseBoolean(value));
+        } else if (type == Type.STRING) {
             return new StringValue(value);
         } else {
             throw new ExecutionException("Unsupported literal type: " + type, getLine(), getColumn());
@@ -1,5 +1,6 @@
 package splat.parser.elements;
 
+import splat.executor.Completion;
 import splat.executor.Value;
 import splat.lexer.Token;
 import java.util.Map;
@@ -16,8 +17,13 @@ public class PrintLineStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) {
+    public void resolve(FrameLayout layout) {
+    }
+
+    @Override
+    public Completion execute(Value[] frame) {
         System.out.println();
+        return Completion.NORMAL;
     }
 
 }
@@ -13,16 +13,28 @@ public class PrintStatement extends Statement {
         this.expression = expression;
     }
 
+    private PrintStatement(PrintStatement original, Expression expression) {
+        super(original);
+        this.expression = expression;
+    }
+
     public Expression getExpression() {
         return expression;
     }
 
+    /**
+     * A copy of this statement that prints the value of another expression.
+     */
+    public PrintStatement withExpression(Expression expression) {
+        return new PrintStatement(this, expression);
+    }
+
     @Override
     public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type expressionType = expression.analyzeAndGetType(funcMap, varAndParamMap);
-        if (!expressionType.equals(Type.INTEGER) &&
-            !expressionType.equals(Type.BOOLEAN) &&
-            !expressionType.equals(Type.STRING)) {
+        if (expressionType != Type.INTEGER &&
+            expressionType != Type.BOOLEAN &&
+            expressionType != Type.STRING) {
             throw new SemanticAnalysisException(
                 "Print statement cannot print expression of type " + expressionType,
                 getLine(), getColumn()
@@ -31,14 +43,20 @@ public class PrintStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
-            throws ReturnFromCall, ExecutionException {
-        Value evaluatedValue = expression.evaluate(funcMap, varAndParamMap);
+    public void resolve(FrameLayout layout) {
+        expression = expression.resolve(layout);
+    }
+
+    @Override
+    public Completion execute(Value[] frame) 
+            throws ExecutionException {
+        Value evaluatedValue = expression.evaluate(frame);
 
         if (evaluatedValue == null) {
             throw new ExecutionException("Cannot print a null value", getLine(), getColumn());
         }
         System.out.print(evaluatedValue.toString());
+        return Completion.NORMAL;
     }
 
 }
@@ -1,6 +1,7 @@
 package splat.parser.elements;
 
 import java.util.List;
+import java.util.Map;
 
 import splat.lexer.Token;
 
@@ -8,6 +9,8 @@ public class ProgramAST extends ASTElement {
 
 	private List<Declaration> decls;
 	private List<Statement> stmts;
+	private boolean resolved;
+	private int extraSlots;
 	
 	public ProgramAST(List<Declaration> decls,
 					  List<Statement> stmts,
@@ -26,6 +29,52 @@ public class ProgramAST extends ASTElement {
 		return stmts;
 	}
 	
+	/**
+	 * The number of slots in the program body's frame: one per program
+	 * variable, in the order they are declared, then any slots added by
+	 * addSlots().
+	 */
+	public int getFrameSize() {
+		int size = extraSlots;
+		for (Declaration decl : decls) {
+			if (decl instanceof VariableDecl) {
+				size++;
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Resolves the program body (see Statement.resolve()) against a frame
+	 * of the program variables, with calls bound to the functions in
+	 * funcMap.
+	 */
+	public void resolve(Map<String, FunctionDecl> funcMap) {
+		FrameLayout layout = new FrameLayout(funcMap, null);
+		for (Declaration decl : decls) {
+			if (decl instanceof VariableDecl) {
+				layout.add(decl.getLabel(), ((VariableDecl) decl).getType());
+			}
+		}
+		for (Statement stmt : stmts) {
+			stmt.resolve(layout);
+		}
+		resolved = true;
+	}
+	
+	public boolean isResolved() {
+		return resolved;
+	}
+	
+	/**
+	 * See FunctionDecl.addSlots().
+	 */
+	public int addSlots(int count) {
+		int first = getFrameSize();
+		extraSlots += count;
+		return first;
+	}
+	
 	public String toString() {
 		String result = "program \n";
 		for (Declaration decl : decls) {
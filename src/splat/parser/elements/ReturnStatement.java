@@ -2,20 +2,49 @@ package splat.parser.elements;
 import splat.semanticanalyzer.SemanticAnalysisException;
 import splat.executor.*;
 import splat.lexer.Token;
+import java.util.Arrays;
 import java.util.Map;
 
 public class ReturnStatement extends Statement {
     private Expression returnValue;
+    private Type expectedReturnType;
+    private int returnSlot = -1;
+    private FunctionCallExpression tailCall;
+    private TailCall selfCall;
+    private int argumentSlot = -1;
 
     public ReturnStatement(Expression returnValue, Token tok) {
         super(tok);
         this.returnValue = returnValue;
     }
 
+    private ReturnStatement(ReturnStatement original, Expression returnValue) {
+        super(original);
+        this.returnValue = returnValue;
+        this.expectedReturnType = original.expectedReturnType;
+        this.returnSlot = original.returnSlot;
+    }
+
     public Expression getReturnValue() {
         return returnValue;
     }
 
+    /**
+     * The call whose value this returns, if resolve() found it can be
+     * made as a tail call, or null.
+     */
+    public FunctionCallExpression getTailCall() {
+        return tailCall;
+    }
+
+    /**
+     * A copy of this (resolved) statement that returns the value of
+     * another expression, without making a tail call.
+     */
+    public ReturnStatement withReturnValue(Expression returnValue) {
+        return new ReturnStatement(this, returnValue);
+    }
+
     @Override
     public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type expectedReturnType = varAndParamMap.get("returnType");
@@ -25,12 +54,12 @@ public class ReturnStatement extends Statement {
         }
     
         if (returnValue == null) {
-            if (!expectedReturnType.equals(Type.VOID)) {
+            if (expectedReturnType != Type.VOID) {
                 throw new SemanticAnalysisException("Non-void function must return a value", getLine(), getColumn());
             }
         } else {
             Type actualReturnType = returnValue.analyzeAndGetType(funcMap, varAndParamMap);
-            if (!actualReturnType.equals(expectedReturnType)) {
+            if (actualReturnType != expectedReturnType) {
                 throw new SemanticAnalysisException(
                     "Return type mismatch: expected " + expectedReturnType + " but found " + actualReturnType,
                     getLine(), getColumn()
@@ -40,30 +69,79 @@ public class ReturnStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        Value returnTypeValue = varAndParamMap.get("returnType");
+    public void resolve(FrameLayout layout) {
+        expectedReturnType = layout.getReturnType();
+        returnSlot = layout.getReturnSlot();
+        if (returnValue != null) {
+            returnValue = returnValue.resolve(layout);
+        }
 
-        if (returnTypeValue == null || !(returnTypeValue instanceof TypeValue)) {
+        // A return of a call's value, wherever it is in the body, is the
+        // last thing the function does, so the call can be left to the
+        // caller (see execute())
+        tailCall = null;
+        selfCall = null;
+        if (returnValue instanceof FunctionCallExpression) {
+            FunctionCallExpression call = (FunctionCallExpression) returnValue;
+            if (call.isTailCallFrom(expectedReturnType)) {
+                tailCall = call;
+                if (call.getCallee() == layout.getFunction()) {
+                    selfCall = new TailCall(call, null);
+                    argumentSlot = layout.getArgumentSlot();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Completion execute(Value[] frame) throws ExecutionException {
+        if (expectedReturnType == null || returnSlot < 0) {
             throw new ExecutionException("Expected return type not specified in function context", getLine(), getColumn());
         }
 
-        Type expectedReturnType = ((TypeValue) returnTypeValue).getType();
         if (returnValue == null) {
-            if (!expectedReturnType.equals(Type.VOID)) {
+            if (expectedReturnType != Type.VOID) {
                 throw new ExecutionException("Non-void function must return a value", getLine(), getColumn());
             }
-            throw new ReturnFromCall(null);
+            frame[returnSlot] = null;
+            return Completion.RETURN;
+        }
+
+        if (tailCall != null) {
+            return executeTailCall(frame);
         }
 
-        Value evaluatedReturnValue = returnValue.evaluate(funcMap, varAndParamMap);
+        Value evaluatedReturnValue = returnValue.evaluate(frame);
 
-        if (!evaluatedReturnValue.getType().equals(expectedReturnType)) {
+        if (evaluatedReturnValue.getType() != expectedReturnType) {
             throw new ExecutionException(
                 "Return type mismatch: expected " + expectedReturnType + " but found " + evaluatedReturnValue.getType(),
                 getLine(), getColumn()
             );
         }
-        throw new ReturnFromCall(evaluatedReturnValue);
+        frame[returnSlot] = evaluatedReturnValue;
+        return Completion.RETURN;
+    }
+
+    // Evaluates the arguments and leaves the call in the return slot for
+    // the caller to make.  A call to the function itself reuses its frame:
+    // the arguments wait in the argument slots until all of them have
+    // been evaluated, and everything after the parameters starts over as
+    // in a new frame.  The result needs no checks here, since the callee
+    // returns the same type this function does.
+    private Completion executeTailCall(Value[] frame) throws ExecutionException {
+        if (selfCall != null) {
+            int count = tailCall.getArguments().size();
+            tailCall.evaluateArguments(frame, frame, argumentSlot);
+            System.arraycopy(frame, argumentSlot, frame, 0, count);
+            Arrays.fill(frame, count, frame.length, null);
+            frame[returnSlot] = selfCall;
+        } else {
+            Value[] calleeFrame = new Value[tailCall.getCallee().getFrameSize()];
+            tailCall.evaluateArguments(frame, calleeFrame, 0);
+            frame[returnSlot] = new TailCall(tailCall, calleeFrame);
+        }
+        return Completion.TAIL_CALL;
     }
 
 }
@@ -0,0 +1,66 @@
+package splat.parser.elements;
+
+import java.util.Map;
+import splat.executor.*;
+
+/**
+ * The first of several copies of an expression in one statement, which
+ * makes no calls, so that all of them have the same value.  It evaluates
+ * the expression and keeps the value in slot, where SlotExpressions that
+ * stand for the later copies read it.  It never comes from the parser
+ * (see splat.optimizer.CommonSubexpressions).
+ */
+public class SharedExpression extends Expression {
+    private final Expression expression;
+    private final int slot;
+
+    public SharedExpression(Expression expression, int slot) {
+        super(expression);
+        this.expression = expression;
+        this.slot = slot;
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+        return expression.getResolvedType();
+    }
+
+    @Override
+    public Expression resolve(FrameLayout layout) {
+        return this;
+    }
+
+    @Override
+    public Type getResolvedType() {
+        return expression.getResolvedType();
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) throws ExecutionException {
+        Value value = expression.evaluate(frame);
+        frame[slot] = value;
+        return value;
+    }
+
+    @Override
+    public int evaluateInt(Value[] frame) throws ExecutionException {
+        int value = expression.evaluateInt(frame);
+        frame[slot] = IntegerValue.of(value);
+        return value;
+    }
+
+    @Override
+    public boolean evaluateBoolean(Value[] frame) throws ExecutionException {
+        boolean value = expression.evaluateBoolean(frame);
+        frame[slot] = BooleanValue.of(value);
+        return value;
+    }
+}
@@ -0,0 +1,59 @@
+package splat.parser.elements;
+
+import java.util.Map;
+import splat.executor.*;
+
+/**
+ * Reads a frame slot that was filled before the expression around it is
+ * evaluated.  It never comes from the parser: the stack machine (see
+ * splat.executor.StackMachine) makes a call, and evaluates anything that
+ * has to come before the call, into such slots, and then evaluates the
+ * rest of the expression over them as usual.
+ */
+public class SlotExpression extends Expression {
+    private final int slot;
+    private final Type type;
+
+    /**
+     * Stands in for original, whose value of the given type is in slot.
+     */
+    public SlotExpression(Expression original, int slot, Type type) {
+        super(original);
+        this.slot = slot;
+        this.type = type;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+        return type;
+    }
+
+    @Override
+    public Expression resolve(FrameLayout layout) {
+        return this;
+    }
+
+    @Override
+    public Type getResolvedType() {
+        return type;
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) {
+        return frame[slot];
+    }
+
+    @Override
+    public int evaluateInt(Value[] frame) {
+        return ((IntegerValue) frame[slot]).getValue();
+    }
+
+    @Override
+    public boolean evaluateBoolean(Value[] frame) {
+        return ((BooleanValue) frame[slot]).getValue();
+    }
+}
@@ -1,5 +1,6 @@
 package splat.parser.elements;
 
+import java.util.List;
 import java.util.Map;
 
 import splat.lexer.Token;
@@ -11,6 +12,13 @@ public abstract class Statement extends ASTElement {
 	public Statement(Token tok) {
 		super(tok);
 	}
+	
+	/**
+	 * For a copy of a statement, at the same position.
+	 */
+	protected Statement(Statement original) {
+		super(original);
+	}
 
 	/**
 	 * This will be needed for Phase 3 - this abstract method will need to be
@@ -22,12 +30,39 @@ public abstract class Statement extends ASTElement {
 	 */
 	 public abstract void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException;
 	
+	/**
+	 * Runs before execution, once the statement's scope is known.  This
+	 * method records the frame slot of every variable the statement (or
+	 * any sub-expression) uses, and the function every call refers to, so
+	 * that execute() doesn't have to look names up.
+	 */
+	 public abstract void resolve(FrameLayout layout);
+	
 	/**
 	 * This will be needed for Phase 4 - this abstract method will need to be
 	 * implemented by every Statement subclass.  This method is used to 
 	 * execute each statement, which may result in output to the console, or
-	 * updating the varAndParamMap.  Both of the given maps may be needed for 
-	 * evaluating any sub-expressions in the statement.
+	 * updating the values in the frame.  The frame holds the values of the
+	 * variables in scope, in the slots resolve() recorded, and is needed
+	 * for evaluating any sub-expressions in the statement.
+	 * 
+	 * Returns Completion.RETURN or Completion.TAIL_CALL if a return
+	 * statement ran, in which case the statement stopped right there, and
+	 * Completion.NORMAL otherwise.
 	 */
-	 public abstract void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException;
+	 public abstract Completion execute(Value[] frame) throws ExecutionException;
+	
+	/**
+	 * Executes the statements in order, stopping at the first one that
+	 * returns.
+	 */
+	public static Completion execute(List<Statement> stmts, Value[] frame) throws ExecutionException {
+		for (int i = 0, size = stmts.size(); i < size; i++) {
+			Completion completion = stmts.get(i).execute(frame);
+			if (completion != Completion.NORMAL) {
+				return completion;
+			}
+		}
+		return Completion.NORMAL;
+	}
 }
@@ -0,0 +1,36 @@
+package splat.parser.elements;
+
+import splat.executor.Value;
+
+/**
+ * A call that a return statement leaves for the caller to make (see
+ * Completion.TAIL_CALL).  It never reaches the program: it only sits in
+ * the return slot of a frame, between the return statement and the call
+ * that runs it.
+ */
+final class TailCall extends Value {
+
+    // The call whose result is returned, for its callee and for errors
+    final FunctionCallExpression call;
+
+    // The callee's frame with the arguments in place, or null when a
+    // function calls itself and its frame is reused
+    final Value[] frame;
+
+    TailCall(FunctionCallExpression call, Value[] frame) {
+        this.call = call;
+        this.frame = frame;
+    }
+
+    @Override
+    public Type getType() {
+        return call.getResolvedType();
+    }
+
+    @Override
+    public String toString() {
+        return "TailCall{" +
+               "function=" + call.getFunctionName() +
+               '}';
+    }
+}
@@ -1,14 +1,18 @@
 package splat.parser.elements;
 
-public class Type {
-    private String name;
+/**
+ * The types of values, plus void for functions that don't return one.
+ * There is exactly one of each, so types are compared with ==.
+ */
+public enum Type {
+    INTEGER("Integer"),
+    BOOLEAN("Boolean"),
+    STRING("String"),
+    VOID("void");
 
-    public static final Type INTEGER = new Type("Integer");
-    public static final Type BOOLEAN = new Type("Boolean");
-    public static final Type STRING = new Type("String");
-    public static final Type VOID = new Type("void");
+    private final String name;
 
-    private Type(String name) {
+    Type(String name) {
         this.name = name;
     }
 
@@ -16,19 +20,6 @@ public class Type {
         return name;
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (this == obj) return true;
-        if (obj == null || getClass() != obj.getClass()) return false;
-        Type type = (Type) obj;
-        return name.equals(type.name);
-    }
-
-    @Override
-    public int hashCode() {
-        return name.hashCode();
-    }
-
     @Override
     public String toString() {
         return name;
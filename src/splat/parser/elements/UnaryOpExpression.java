@@ -6,7 +6,7 @@ import java.util.Map;
 
 public class UnaryOpExpression extends Expression {
     private String operator;
-    private Expression operand;
+    protected Expression operand;
 
     public UnaryOpExpression(String operator, Expression operand, Token tok) {
         super(tok);
@@ -14,6 +14,15 @@ public class UnaryOpExpression extends Expression {
         this.operand = operand;
     }
 
+    /**
+     * For a specialized node that replaces the original.
+     */
+    protected UnaryOpExpression(UnaryOpExpression original) {
+        super(original);
+        this.operator = original.operator;
+        this.operand = original.operand;
+    }
+
     public String getOperator() {
         return operator;
     }
@@ -26,12 +35,12 @@ public class UnaryOpExpression extends Expression {
     public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type operandType = operand.analyzeAndGetType(funcMap, varAndParamMap);
         if (operator.equals("-")) {
-            if (!operandType.equals(Type.INTEGER)) {
+            if (operandType != Type.INTEGER) {
                 throw new SemanticAnalysisException("Unary '-' operator requires an integer operand", getLine(), getColumn());
             }
             return Type.INTEGER;
         } else if (operator.equals("not")) {
-            if (!operandType.equals(Type.BOOLEAN)) {
+            if (operandType != Type.BOOLEAN) {
                 throw new SemanticAnalysisException("Unary 'not' operator requires a boolean operand", getLine(), getColumn());
             }
             return Type.BOOLEAN;
@@ -41,23 +50,61 @@ public class UnaryOpExpression extends Expression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
+    public Expression resolve(FrameLayout layout) {
+        operand = operand.resolve(layout);
+        return specialize(operand.getResolvedType());
+    }
+
+    /**
+     * A copy of this (resolved) expression over another operand,
+     * specialized as resolve() would for its type.
+     */
+    public Expression withOperand(Expression operand) {
+        UnaryOpExpression copy = new UnaryOpExpression(this);
+        copy.operand = operand;
+        return copy.specialize(operand.getResolvedType());
+    }
+
+    // See BinaryOpExpression.specialize()
+    private Expression specialize(Type operandType) {
+        if (operator.equals("-") && operandType == Type.INTEGER) {
+            return new IntNegateNode(this);
+        } else if (operator.equals("not") && operandType == Type.BOOLEAN) {
+            return new BoolNotNode(this);
+        }
+        return this;
+    }
+
+    @Override
+    public Type getResolvedType() {
+        switch (operator) {
+            case "-":
+                return Type.INTEGER;
+            case "not":
+                return Type.BOOLEAN;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) 
             throws ExecutionException {
-        Value operandValue = operand.evaluate(funcMap, varAndParamMap);
+        Value operandValue = operand.evaluate(frame);
         switch (operator) {
             case "-":
                 if (!(operandValue instanceof IntegerValue)) {
                     throw new ExecutionException("Unary '-' operator requires an integer operand", getLine(), getColumn());
                 }
                 int intValue = ((IntegerValue) operandValue).getValue();
-                return new IntegerValue(-intValue);
+                return IntegerValue.of(-intValue);
 
             case "not":
                 if (!(operandValue instanceof BooleanValue)) {
                     throw new ExecutionException("Unary 'not' operator requires a boolean operand", getLine(), getColumn());
                 }
                 boolean boolValue = ((BooleanValue) operandValue).getValue();
-                return new BooleanValue(!boolValue);
+                return BooleanValue.of(!boolValue);
 
             default:
                 throw new ExecutionException("Unsupported unary operator: " + operator, getLine(), getColumn());
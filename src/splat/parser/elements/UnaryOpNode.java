@@ -0,0 +1,21 @@
+package splat.parser.elements;
+
+/**
+ * A UnaryOpExpression specialized by resolve() for one operator.  See
+ * BinaryOpNode.
+ */
+public abstract class UnaryOpNode extends UnaryOpExpression {
+
+    protected UnaryOpNode(UnaryOpExpression original) {
+        super(original);
+    }
+
+    /**
+     * Resolves the operand again, and stays specialized.
+     */
+    @Override
+    public Expression resolve(FrameLayout layout) {
+        operand = operand.resolve(layout);
+        return this;
+    }
+}
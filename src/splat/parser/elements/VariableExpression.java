@@ -7,6 +7,8 @@ import splat.semanticanalyzer.SemanticAnalysisException;
 
 public class VariableExpression extends Expression {
     private String variableName;
+    private int slot = -1;
+    private Type type;
 
     public VariableExpression(String variableName, Token tok) {
         super(tok);
@@ -17,6 +19,13 @@ public class VariableExpression extends Expression {
         return variableName;
     }
 
+    /**
+     * The frame slot resolve() found, or -1.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
     @Override
     public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type variableType = varAndParamMap.get(variableName);
@@ -27,9 +36,21 @@ public class VariableExpression extends Expression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) 
+    public Expression resolve(FrameLayout layout) {
+        slot = layout.slot(variableName);
+        type = layout.type(variableName);
+        return this;
+    }
+
+    @Override
+    public Type getResolvedType() {
+        return type;
+    }
+
+    @Override
+    public Value evaluate(Value[] frame) 
             throws ExecutionException {
-        Value variableValue = varAndParamMap.get(variableName);
+        Value variableValue = slot < 0 ? null : frame[slot];
         if (variableValue == null) {
             throw new ExecutionException("Undefined or uninitialized variable: " + variableName, getLine(), getColumn());
         }
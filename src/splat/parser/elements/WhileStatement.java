@@ -8,6 +8,7 @@ import splat.semanticanalyzer.SemanticAnalysisException;
 
 public class WhileStatement extends Statement {
     private Expression condition;
+    private boolean booleanCondition;
     private List<Statement> body;
 
     public WhileStatement(Expression condition, List<Statement> body, Token tok) {
@@ -16,6 +17,13 @@ public class WhileStatement extends Statement {
         this.body = body;
     }
 
+    private WhileStatement(WhileStatement original, Expression condition) {
+        super(original);
+        this.condition = condition;
+        this.booleanCondition = condition.getResolvedType() == Type.BOOLEAN;
+        this.body = original.body;
+    }
+
     public Expression getCondition() {
         return condition;
     }
@@ -24,10 +32,17 @@ public class WhileStatement extends Statement {
         return body;
     }
 
+    /**
+     * A copy of this (resolved) statement with another condition.
+     */
+    public WhileStatement withCondition(Expression condition) {
+        return new WhileStatement(this, condition);
+    }
+
     @Override
     public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
         Type conditionType = condition.analyzeAndGetType(funcMap, varAndParamMap);
-        if (!conditionType.equals(Type.BOOLEAN)) {
+        if (conditionType != Type.BOOLEAN) {
             throw new SemanticAnalysisException("While loop condition must be of type Boolean", getLine(), getColumn());
         }
 
@@ -37,23 +52,39 @@ public class WhileStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        Value conditionValue = condition.evaluate(funcMap, varAndParamMap);
-
-        if (!(conditionValue instanceof BooleanValue)) {
-            throw new ExecutionException("While loop condition must evaluate to a Boolean value", getLine(), getColumn());
+    public void resolve(FrameLayout layout) {
+        condition = condition.resolve(layout);
+        booleanCondition = condition.getResolvedType() == Type.BOOLEAN;
+        for (Statement stmt : body) {
+            stmt.resolve(layout);
         }
+    }
 
-        while (((BooleanValue) conditionValue).getValue()) {
-            for (Statement stmt : body) {
-                stmt.execute(funcMap, varAndParamMap);
+    @Override
+    public Completion execute(Value[] frame) throws ExecutionException {
+        while (test(frame)) {
+            Completion completion = Statement.execute(body, frame);
+            if (completion != Completion.NORMAL) {
+                return completion;
             }
+        }
+        return Completion.NORMAL;
+    }
 
-            conditionValue = condition.evaluate(funcMap, varAndParamMap);
-            if (!(conditionValue instanceof BooleanValue)) {
-                throw new ExecutionException("While loop condition must evaluate to a Boolean value", getLine(), getColumn());
-            }
+    /**
+     * Evaluates the condition, which decides whether the body runs again.
+     * A condition resolve() typed as Boolean is evaluated unboxed;
+     * anything else is still checked.
+     */
+    public boolean test(Value[] frame) throws ExecutionException {
+        if (booleanCondition) {
+            return condition.evaluateBoolean(frame);
+        }
+        Value conditionValue = condition.evaluate(frame);
+        if (!(conditionValue instanceof BooleanValue)) {
+            throw new ExecutionException("While loop condition must evaluate to a Boolean value", getLine(), getColumn());
         }
+        return ((BooleanValue) conditionValue).getValue();
     }
 
 }
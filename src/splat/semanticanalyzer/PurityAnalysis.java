@@ -0,0 +1,143 @@
+package splat.semanticanalyzer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import splat.parser.elements.AssignmentStatement;
+import splat.parser.elements.BinaryOpExpression;
+import splat.parser.elements.Expression;
+import splat.parser.elements.FunctionCallExpression;
+import splat.parser.elements.FunctionCallStatement;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.IfStatement;
+import splat.parser.elements.PrintLineStatement;
+import splat.parser.elements.PrintStatement;
+import splat.parser.elements.ReturnStatement;
+import splat.parser.elements.Statement;
+import splat.parser.elements.Type;
+import splat.parser.elements.UnaryOpExpression;
+import splat.parser.elements.VariableDecl;
+import splat.parser.elements.WhileStatement;
+
+/**
+ * Finds the pure functions of a program (see FunctionDecl.isPure()).
+ * Each body is looked at as it is analyzed, which may be on several
+ * threads, for whether it prints and which functions it calls.  Once all
+ * of them have been, a function is pure if its own body is, and every
+ * function it calls is pure, which takes going round the call graph until
+ * nothing changes: recursion alone doesn't make a function impure.
+ *
+ * A function whose body is analyzed only when it is first called isn't
+ * pure, since its body isn't known yet.
+ */
+class PurityAnalysis {
+
+    private final Map<String, FunctionDecl> funcMap;
+
+    // The functions called by each body that could be pure
+    private final Map<FunctionDecl, Set<FunctionDecl>> callees = new ConcurrentHashMap<>();
+
+    PurityAnalysis(Map<String, FunctionDecl> funcMap) {
+        this.funcMap = funcMap;
+    }
+
+    /**
+     * Looks at the (analyzed) body of a function.
+     */
+    void addBody(FunctionDecl funcDecl, List<Statement> stmts) {
+        for (VariableDecl param : funcDecl.getParameters()) {
+            Type type = param.getType();
+            if (type != Type.INTEGER && type != Type.BOOLEAN && type != Type.STRING) {
+                return;
+            }
+        }
+        Set<FunctionDecl> called = new HashSet<>();
+        if (addCallees(stmts, called)) {
+            callees.put(funcDecl, called);
+        }
+    }
+
+    /**
+     * Marks each of the functions pure or not.
+     */
+    void markPureFunctions(List<FunctionDecl> funcDecls) {
+        Set<FunctionDecl> pure = new HashSet<>(callees.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (FunctionDecl funcDecl : new ArrayList<>(pure)) {
+                if (!pure.containsAll(callees.get(funcDecl))) {
+                    pure.remove(funcDecl);
+                    changed = true;
+                }
+            }
+        }
+        for (FunctionDecl funcDecl : funcDecls) {
+            funcDecl.setPure(pure.contains(funcDecl));
+        }
+    }
+
+    /*
+     * Adds the functions the statements call to called, and returns false
+     * if they print.
+     */
+    private boolean addCallees(List<Statement> stmts, Set<FunctionDecl> called) {
+        if (stmts == null) {
+            return true;
+        }
+        for (Statement stmt : stmts) {
+            if (!addCallees(stmt, called)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean addCallees(Statement stmt, Set<FunctionDecl> called) {
+        if (stmt instanceof PrintStatement || stmt instanceof PrintLineStatement) {
+            return false;
+        } else if (stmt instanceof AssignmentStatement) {
+            addCallees(((AssignmentStatement) stmt).getExpression(), called);
+        } else if (stmt instanceof ReturnStatement) {
+            Expression returnValue = ((ReturnStatement) stmt).getReturnValue();
+            if (returnValue != null) {
+                addCallees(returnValue, called);
+            }
+        } else if (stmt instanceof FunctionCallStatement) {
+            FunctionCallStatement call = (FunctionCallStatement) stmt;
+            called.add(funcMap.get(call.getFunctionName()));
+            for (Expression argument : call.getArguments()) {
+                addCallees(argument, called);
+            }
+        } else if (stmt instanceof IfStatement) {
+            IfStatement ifStmt = (IfStatement) stmt;
+            addCallees(ifStmt.getCondition(), called);
+            return addCallees(ifStmt.getThenBranch(), called) && addCallees(ifStmt.getElseBranch(), called);
+        } else if (stmt instanceof WhileStatement) {
+            WhileStatement whileStmt = (WhileStatement) stmt;
+            addCallees(whileStmt.getCondition(), called);
+            return addCallees(whileStmt.getBody(), called);
+        }
+        return true;
+    }
+
+    private void addCallees(Expression expr, Set<FunctionDecl> called) {
+        if (expr instanceof FunctionCallExpression) {
+            FunctionCallExpression call = (FunctionCallExpression) expr;
+            called.add(funcMap.get(call.getFunctionName()));
+            for (Expression argument : call.getArguments()) {
+                addCallees(argument, called);
+            }
+        } else if (expr instanceof BinaryOpExpression) {
+            BinaryOpExpression binary = (BinaryOpExpression) expr;
+            addCallees(binary.getLeft(), called);
+            addCallees(binary.getRight(), called);
+        } else if (expr instanceof UnaryOpExpression) {
+            addCallees(((UnaryOpExpression) expr).getOperand(), called);
+        }
+    }
+}
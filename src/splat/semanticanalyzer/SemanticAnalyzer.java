@@ -1,11 +1,18 @@
 package splat.semanticanalyzer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import splat.SplatException;
+import splat.parser.elements.BodyLoadException;
 import splat.parser.elements.Declaration;
 import splat.parser.elements.FunctionDecl;
 import splat.parser.elements.IfStatement;
@@ -17,15 +24,46 @@ import splat.parser.elements.VariableDecl;
 
 public class SemanticAnalyzer {
 
+	// Functions analyzed by one task, as in ParallelParser
+	private static final int BATCH_SIZE = 64;
+
 	private ProgramAST progAST;
 	
 	private Map<String, FunctionDecl> funcMap;
 	private Map<String, Type> progVarMap;
+	private SymbolTable symbols;
+	private PurityAnalysis purity;
+	
+	private boolean analyzeUnloadedBodies;
+	private ExecutorService pool;
 	
 	public SemanticAnalyzer(ProgramAST progAST) {
 		this.progAST = progAST;
 		this.funcMap = new HashMap<>(); // Initialize funcMap
     	this.progVarMap = new HashMap<>(); // Initialize progVarMap
+		this.symbols = new SymbolTable();
+		this.purity = new PurityAnalysis(funcMap);
+	}
+
+	/**
+	 * Analyze the bodies of functions that haven't been loaded yet right
+	 * away, on a copy their loader makes, and leave the functions unloaded.
+	 * This is for loaders that are cheap to run more than once, such as
+	 * the ones CompactAST.decodeLazily() sets up.
+	 */
+	public void setAnalyzeUnloadedBodies(boolean analyzeUnloadedBodies) {
+		this.analyzeUnloadedBodies = analyzeUnloadedBodies;
+	}
+
+	/**
+	 * Analyze the functions on the given pool instead of the calling
+	 * thread.  The error reported is still the one sequential analysis
+	 * would report: that of the first failing function in the source.
+	 * The pool's threads need stacks as deep as the calling thread's,
+	 * such as those of Splat.workerPool().
+	 */
+	public void setPool(ExecutorService pool) {
+		this.pool = pool;
 	}
 
 	public void analyze() throws SemanticAnalysisException {
@@ -36,31 +74,200 @@ public class SemanticAnalyzer {
 		
 		// This sets the maps that will be needed later when we need to
 		// typecheck variable references and function calls in the 
-		// program body
+		// program body, and records every parameter and local variable
+		// in the symbol table for the function label checks
 		setProgVarAndFuncMaps();
 		
-		// Perform semantic analysis on the functions
-		for (FunctionDecl funcDecl : funcMap.values()) {	
-			analyzeFuncDecl(funcDecl);
+		// Perform semantic analysis on the functions, in the order they
+		// are declared.  Bodies that haven't been parsed yet are analyzed
+		// when they are loaded
+		List<FunctionDecl> funcDecls = new ArrayList<>(funcMap.size());
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl) {
+				funcDecls.add((FunctionDecl) decl);
+			}
+		}
+		if (pool != null && funcDecls.size() > BATCH_SIZE) {
+			analyzeInParallel(funcDecls);
+		} else {
+			for (FunctionDecl funcDecl : funcDecls) {
+				analyzeFunction(funcDecl);
+			}
 		}
 		
-		// Perform semantic analysis on the program body
+		// Find the functions whose calls depend only on their arguments,
+		// now that every body they can call has been analyzed
+		purity.markPureFunctions(funcDecls);
+		
+		// Perform semantic analysis on the program body, then give its
+		// variables their slots
 		for (Statement stmt : progAST.getStmts()) {
 			stmt.analyze(funcMap, progVarMap);
 		}
+		progAST.resolve(funcMap);
+		
+	}
+
+	/**
+	 * Does what analyze() does besides checking, for a program that was
+	 * analyzed before, such as one from the program cache: finds the pure
+	 * functions and resolves the program body.  Bodies that haven't been
+	 * loaded are looked at on a copy, as with setAnalyzeUnloadedBodies(),
+	 * and left to be resolved when they are loaded.
+	 */
+	public void restoreAnalysis() {
+		List<FunctionDecl> funcDecls = new ArrayList<>();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl) {
+				FunctionDecl funcDecl = (FunctionDecl) decl;
+				funcMap.put(funcDecl.getLabel(), funcDecl);
+				funcDecls.add(funcDecl);
+			}
+		}
+		for (FunctionDecl funcDecl : funcDecls) {
+			if (funcDecl.isBodyLoaded()) {
+				List<Statement> stmts = funcDecl.getStmts();
+				purity.addBody(funcDecl, stmts);
+				funcDecl.resolve(stmts, funcMap);
+			} else {
+				try {
+					purity.addBody(funcDecl, funcDecl.getBodyLoader().load());
+				} catch (SplatException ex) {
+					throw new BodyLoadException(ex);
+				}
+			}
+		}
+		purity.markPureFunctions(funcDecls);
+		progAST.resolve(funcMap);
+	}
+
+	private void analyzeFunction(FunctionDecl funcDecl) throws SemanticAnalysisException {
+		if (funcDecl.isBodyLoaded()) {
+			analyzeFuncDecl(funcDecl);
+		} else if (analyzeUnloadedBodies) {
+			analyzeUnloadedFuncDecl(funcDecl);
+		} else {
+			deferFuncDecl(funcDecl);
+		}
+	}
+	
+	/*
+	 * Analyzes the functions from up to to.  Functions after one that
+	 * already failed, in this batch or another, can't change the outcome.
+	 */
+	private void analyzeBatch(List<FunctionDecl> funcDecls, Exception[] errors, AtomicInteger firstError,
+			int from, int to) {
+		for (int i = from; i < to && i < firstError.get(); i++) {
+			try {
+				analyzeFunction(funcDecls.get(i));
+			} catch (SemanticAnalysisException | RuntimeException ex) {
+				errors[i] = ex;
+				firstError.accumulateAndGet(i, Math::min);
+			}
+		}
+	}
+	
+	/*
+	 * Analyzes every function, then throws the error of the first one
+	 * that failed, if any.
+	 */
+	private void analyzeInParallel(List<FunctionDecl> funcDecls) throws SemanticAnalysisException {
+		int count = funcDecls.size();
+		Exception[] errors = new Exception[count];
+		AtomicInteger firstError = new AtomicInteger(Integer.MAX_VALUE);
+		List<Future<?>> batches = new ArrayList<>();
+		for (int from = 0; from < count; from += BATCH_SIZE) {
+			int batchFrom = from;
+			int batchTo = Math.min(from + BATCH_SIZE, count);
+			batches.add(pool.submit(() -> analyzeBatch(funcDecls, errors, firstError, batchFrom, batchTo)));
+		}
+		for (Future<?> batch : batches) {
+			await(batch);
+		}
 		
+		int first = firstError.get();
+		if (first == Integer.MAX_VALUE) {
+			return;
+		}
+		if (errors[first] instanceof SemanticAnalysisException) {
+			throw (SemanticAnalysisException) errors[first];
+		}
+		throw (RuntimeException) errors[first];
+	}
+	
+	/*
+	 * Waits for a batch.  Batches catch the errors analysis can make, so
+	 * anything else they throw is passed on.
+	 */
+	private static void await(Future<?> batch) {
+		try {
+			batch.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while analyzing", ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof Error) {
+				throw (Error) ex.getCause();
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
 	}
 
 	private void analyzeFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
 		checkNoDuplicateFuncLabels(funcDecl);
 		
 		Map<String, Type> varAndParamMap = getVarAndParamMap(funcDecl);
-		for (Statement stmt : funcDecl.getStmts()) {
+		List<Statement> stmts = funcDecl.getStmts();
+		analyzeFuncBody(funcDecl, stmts, varAndParamMap);
+		purity.addBody(funcDecl, stmts);
+		funcDecl.resolve(stmts, funcMap);
+	}
+	
+	/*
+	 * Checks the signature of a function now, and its body when the body
+	 * is loaded.
+	 */
+	private void deferFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
+		checkNoDuplicateFuncLabels(funcDecl);
+		
+		Map<String, Type> varAndParamMap = getVarAndParamMap(funcDecl);
+		FunctionDecl.BodyLoader loader = funcDecl.getBodyLoader();
+		funcDecl.setBodyLoader(() -> {
+			List<Statement> stmts = loader.load();
+			analyzeFuncBody(funcDecl, stmts, varAndParamMap);
+			funcDecl.resolve(stmts, funcMap);
+			return stmts;
+		});
+	}
+	
+	/*
+	 * Checks a function and a copy of its body now, without keeping the
+	 * copy.
+	 */
+	private void analyzeUnloadedFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
+		checkNoDuplicateFuncLabels(funcDecl);
+		
+		Map<String, Type> varAndParamMap = getVarAndParamMap(funcDecl);
+		List<Statement> stmts;
+		try {
+			stmts = funcDecl.getBodyLoader().load();
+		} catch (SemanticAnalysisException ex) {
+			throw ex;
+		} catch (SplatException ex) {
+			throw new BodyLoadException(ex);
+		}
+		analyzeFuncBody(funcDecl, stmts, varAndParamMap);
+		purity.addBody(funcDecl, stmts);
+	}
+	
+	private void analyzeFuncBody(FunctionDecl funcDecl, List<Statement> stmts,
+			Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+		for (Statement stmt : stmts) {
 			stmt.analyze(funcMap, varAndParamMap);
 		}
 
-		if (!funcDecl.getReturnType().equals(Type.VOID)) {
-			if (!hasReturnStatement(funcDecl.getStmts())) {
+		if (funcDecl.getReturnType() != Type.VOID) {
+			if (!hasReturnStatement(stmts)) {
 				throw new SemanticAnalysisException(
 					"Non-void function '" + funcDecl.getLabel() + "' must contain a return statement",
 					funcDecl
@@ -113,19 +320,12 @@ public class SemanticAnalyzer {
 			labels.add(localVarLabel);
 		}
 	
-		for (Map.Entry<String, FunctionDecl> entry : funcMap.entrySet()) {
-			FunctionDecl existingFuncDecl = entry.getValue();
-			for (VariableDecl param : existingFuncDecl.getParameters()) {
-				if (param.getLabel().equals(funcDecl.getLabel())) {
-					throw new SemanticAnalysisException("Function name '" + funcDecl.getLabel() + "' conflicts with parameter '" + param.getLabel() + "' in function '" + existingFuncDecl.getLabel() + "'", funcDecl);
-				}
-			}
-	
-			for (VariableDecl localVar : existingFuncDecl.getLocalVars()) {
-				if (localVar.getLabel().equals(funcDecl.getLabel())) {
-					throw new SemanticAnalysisException("Function name '" + funcDecl.getLabel() + "' conflicts with local variable '" + localVar.getLabel() + "' in function '" + existingFuncDecl.getLabel() + "'", funcDecl);
-				}
-			}
+		// The first function in the source with a parameter or local
+		// variable of the same name, if any
+		SymbolTable.Member member = symbols.firstMember(funcDecl.getLabel());
+		if (member != null) {
+			String kind = member.isParameter() ? "parameter" : "local variable";
+			throw new SemanticAnalysisException("Function name '" + funcDecl.getLabel() + "' conflicts with " + kind + " '" + member.getVariable().getLabel() + "' in function '" + member.getFunction().getLabel() + "'", funcDecl);
 		}
 		String funcLabel = funcDecl.getLabel();
 		if (labels.contains(funcLabel)) {
@@ -137,18 +337,11 @@ public class SemanticAnalyzer {
 	
 	private void checkNoDuplicateProgLabels() throws SemanticAnalysisException {
 		
-		Set<String> labels = new HashSet<String>();
-		
- 		for (Declaration decl : progAST.getDecls()) {
- 			String label = decl.getLabel().toString();
- 			
-			if (labels.contains(label)) {
+		for (Declaration decl : progAST.getDecls()) {
+			if (symbols.declare(decl) != null) {
 				throw new SemanticAnalysisException("Cannot have duplicate label '"
-						+ label + "' in program", decl);
-			} else {
-				labels.add(label);
+						+ decl.getLabel() + "' in program", decl);
 			}
-			
 		}
 	}
 	
@@ -161,6 +354,7 @@ public class SemanticAnalyzer {
 			if (decl instanceof FunctionDecl) {
 				FunctionDecl funcDecl = (FunctionDecl)decl;
 				funcMap.put(label, funcDecl);
+				symbols.declareMembers(funcDecl);
 				
 			} else if (decl instanceof VariableDecl) {
 				VariableDecl varDecl = (VariableDecl)decl;
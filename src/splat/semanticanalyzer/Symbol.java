@@ -0,0 +1,30 @@
+package splat.semanticanalyzer;
+
+/**
+ * An interned label.  A SymbolTable hands out exactly one Symbol per
+ * distinct label, numbered from 0 in the order they were first seen, so
+ * symbols can be compared with == and used as array indices.
+ */
+public final class Symbol {
+
+    private final String name;
+    private final int id;
+
+    Symbol(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
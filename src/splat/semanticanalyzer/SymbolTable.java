@@ -0,0 +1,137 @@
+package splat.semanticanalyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.parser.elements.Declaration;
+import splat.parser.elements.FunctionDecl;
+import splat.parser.elements.VariableDecl;
+
+/**
+ * The labels a program declares, and where each one is declared: as a
+ * program variable or function, and as a parameter or local variable of
+ * some function.  Every lookup is a hash of the label and then an index
+ * by its symbol, so checking a label for conflicts costs the same however
+ * many functions the program has.
+ *
+ * The table is filled on one thread before analysis starts, and only
+ * read after that, so parallel analysis can share it.
+ */
+public class SymbolTable {
+
+    /**
+     * A parameter or local variable, and the function it belongs to.
+     */
+    public static final class Member {
+
+        private final FunctionDecl function;
+        private final VariableDecl variable;
+        private final boolean parameter;
+
+        Member(FunctionDecl function, VariableDecl variable, boolean parameter) {
+            this.function = function;
+            this.variable = variable;
+            this.parameter = parameter;
+        }
+
+        public FunctionDecl getFunction() {
+            return function;
+        }
+
+        public VariableDecl getVariable() {
+            return variable;
+        }
+
+        public boolean isParameter() {
+            return parameter;
+        }
+    }
+
+    private final Map<String, Symbol> symbols = new HashMap<>();
+
+    // Indexed by symbol id
+    private final List<Declaration> declarations = new ArrayList<>();
+    private final List<Member> members = new ArrayList<>();
+
+    /**
+     * Returns the symbol for the label, making one if it's new.
+     */
+    public Symbol intern(String label) {
+        Symbol symbol = symbols.get(label);
+        if (symbol == null) {
+            symbol = new Symbol(label, symbols.size());
+            symbols.put(label, symbol);
+            declarations.add(null);
+            members.add(null);
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the symbol for the label, or null if nothing declares it.
+     */
+    public Symbol lookup(String label) {
+        return symbols.get(label);
+    }
+
+    /**
+     * Records a program variable or function.  Returns the declaration
+     * that already had the label, in which case the table is unchanged,
+     * or null.
+     */
+    public Declaration declare(Declaration decl) {
+        Symbol symbol = intern(decl.getLabel());
+        Declaration earlier = declarations.get(symbol.getId());
+        if (earlier == null) {
+            declarations.set(symbol.getId(), decl);
+        }
+        return earlier;
+    }
+
+    /**
+     * The program variable or function with the label, or null.
+     */
+    public Declaration declaration(String label) {
+        Symbol symbol = symbols.get(label);
+        return symbol == null ? null : declarations.get(symbol.getId());
+    }
+
+    /**
+     * Records the parameters and then the local variables of a function.
+     * Only the first member with each label is kept, so functions should
+     * be recorded in the order they are declared.
+     */
+    public void declareMembers(FunctionDecl funcDecl) {
+        for (VariableDecl param : funcDecl.getParameters()) {
+            declareMember(new Member(funcDecl, param, true));
+        }
+        for (VariableDecl localVar : funcDecl.getLocalVars()) {
+            declareMember(new Member(funcDecl, localVar, false));
+        }
+    }
+
+    private void declareMember(Member member) {
+        Symbol symbol = intern(member.getVariable().getLabel());
+        if (members.get(symbol.getId()) == null) {
+            members.set(symbol.getId(), member);
+        }
+    }
+
+    /**
+     * The first parameter or local variable, of any function, with the
+     * label, or null.
+     */
+    public Member firstMember(String label) {
+        Symbol symbol = symbols.get(label);
+        return symbol == null ? null : members.get(symbol.getId());
+    }
+
+    /**
+     * The number of distinct labels.
+     */
+    public int size() {
+        return symbols.size();
+    }
+}